@@ -0,0 +1,14 @@
+package models;
+
+import play.modules.cassandra.MapModel;
+import play.modules.cassandra.annotations.Entity;
+
+@Entity(columnFamily="Goals")
+public class Goals extends MapModel {
+    public Goals() {
+    }
+
+    public Goals(String rowKey, String dictionaryKey) {
+        super(rowKey, dictionaryKey);
+    }
+}
@@ -0,0 +1,232 @@
+import com.netflix.astyanax.ColumnListMutation;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.serializers.BooleanSerializer;
+import com.netflix.astyanax.serializers.DateSerializer;
+import com.netflix.astyanax.serializers.DoubleSerializer;
+import com.netflix.astyanax.serializers.IntegerSerializer;
+import com.netflix.astyanax.serializers.LongSerializer;
+import com.netflix.astyanax.serializers.StringSerializer;
+import com.netflix.astyanax.serializers.UUIDSerializer;
+import com.netflix.astyanax.thrift.model.ThriftColumnImpl;
+import org.joda.time.DateTime;
+import org.junit.Test;
+import play.modules.cassandra.ColumnField;
+import play.modules.cassandra.codecs.ColumnCodec;
+import play.modules.cassandra.codecs.ColumnCodecs;
+import play.test.UnitTest;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+public class ColumnCodecsTest extends UnitTest {
+    public enum Color { RED, GREEN }
+
+    public interface Tagged {}
+    public interface Labelled {}
+    public static class Base {}
+    public static class Sub extends Base implements Labelled, Tagged {}
+    public static class Plain implements Labelled, Tagged {}
+    public static class Registered {}
+    public static class Unknown {}
+
+    public static class Holder {
+        public long count;
+        public int level;
+        public double ratio;
+        public boolean flag;
+        public Long boxed;
+        public String name;
+        public Date when;
+        public DateTime at;
+        public BigDecimal price;
+        public UUID guid;
+        public Color color;
+        public Sub sub;
+        public Plain plain;
+        public Registered registered;
+        public Unknown unknown;
+    }
+
+    /**
+     * Codec which only tells which registration was picked
+     */
+    static class NamedCodec implements ColumnCodec {
+        final String name;
+
+        NamedCodec(String name) {
+            this.name = name;
+        }
+
+        public void write(Object o, ColumnField field, ColumnListMutation<String> mutation) {
+        }
+
+        public void read(Object o, ColumnField field, Column<String> column) {
+        }
+
+        public void readString(Object o, ColumnField field, String value) {
+        }
+    }
+
+    private static ColumnField field(String name) throws Exception {
+        return new ColumnField(Holder.class.getField(name));
+    }
+
+    @Test
+    public void testBuiltInCodecs() throws Exception {
+        assertSame(ColumnCodecs.STRING, ColumnCodecs.codecFor(field("name")));
+        assertSame(ColumnCodecs.ENUM, ColumnCodecs.codecFor(field("color")));
+        assertNotSame(ColumnCodecs.STRING, ColumnCodecs.codecFor(field("count")));
+        // Types without a codec are stored in their string form
+        assertSame(ColumnCodecs.STRING, ColumnCodecs.codecFor(field("unknown")));
+    }
+
+    @Test
+    public void testRegisterReplacesCodec() throws Exception {
+        ColumnField field = field("registered");
+        assertNotNull(field.getCodec());
+
+        int version = ColumnCodecs.version();
+        NamedCodec codec = new NamedCodec("registered");
+        ColumnCodecs.register(Registered.class, codec);
+        assertTrue(ColumnCodecs.version() > version);
+        // Compiled fields pick the new codec up
+        assertSame(codec, field.getCodec());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterRequiresCodec() {
+        ColumnCodecs.register(Registered.class, null);
+    }
+
+    @Test
+    public void testSupertypePrecedence() throws Exception {
+        ColumnCodecs.register(Tagged.class, new NamedCodec("tagged"));
+        ColumnCodecs.register(Labelled.class, new NamedCodec("labelled"));
+        ColumnCodecs.register(Base.class, new NamedCodec("base"));
+
+        // Superclasses come before interfaces
+        assertEquals("base", ((NamedCodec) ColumnCodecs.codecFor(field("sub"))).name);
+        // Interfaces are tried in declaration order
+        assertEquals("labelled", ((NamedCodec) ColumnCodecs.codecFor(field("plain"))).name);
+
+        // The exact type wins over every supertype
+        ColumnCodecs.register(Sub.class, new NamedCodec("sub"));
+        assertEquals("sub", ((NamedCodec) ColumnCodecs.codecFor(field("sub"))).name);
+    }
+
+    @Test
+    public void testColumnRoundTrip() throws Exception {
+        Holder holder = new Holder();
+        holder.count = 1234567890123L;
+        holder.level = 42;
+        holder.ratio = 0.25;
+        holder.flag = true;
+        holder.boxed = 7L;
+        holder.name = "name";
+        holder.when = new Date(1350000000000L);
+        holder.at = new DateTime(1350000000000L);
+        holder.price = new BigDecimal("12.34");
+        holder.guid = UUID.randomUUID();
+        holder.color = Color.GREEN;
+
+        Holder read = new Holder();
+        for ( String name : new String[] { "count", "level", "ratio", "flag", "boxed", "name", "when", "at", "price", "guid", "color" } ) {
+            ColumnField field = field(name);
+            Map<String, ByteBuffer> columns = new HashMap<String, ByteBuffer>();
+            field.getCodec().write(holder, field, mutation(columns));
+            assertTrue(name, columns.containsKey(field.getName()));
+            field.getCodec().read(read, field, column(field.getName(), columns.get(field.getName())));
+        }
+
+        assertEquals(holder.count, read.count);
+        assertEquals(holder.level, read.level);
+        assertEquals(holder.ratio, read.ratio, 0.0);
+        assertEquals(holder.flag, read.flag);
+        assertEquals(holder.boxed, read.boxed);
+        assertEquals(holder.name, read.name);
+        assertEquals(holder.when, read.when);
+        assertEquals(holder.at.getMillis(), read.at.getMillis());
+        assertEquals(holder.price, read.price);
+        assertEquals(holder.guid, read.guid);
+        assertEquals(holder.color, read.color);
+    }
+
+    @Test
+    public void testNullWritesEmptyColumn() throws Exception {
+        Holder holder = new Holder();
+        ColumnField field = field("name");
+        Map<String, ByteBuffer> columns = new HashMap<String, ByteBuffer>();
+        field.getCodec().write(new Holder(), field, mutation(columns));
+        assertEquals(0, columns.get(field.getName()).remaining());
+
+        ColumnField price = field("price");
+        price.getCodec().write(new Holder(), price, mutation(columns));
+        holder.price = new BigDecimal("1.00");
+        price.getCodec().read(holder, price, column(price.getName(), columns.get(price.getName())));
+        // Empty columns leave the field at its value
+        assertEquals(new BigDecimal("1.00"), holder.price);
+    }
+
+    @Test
+    public void testStringRoundTrip() throws Exception {
+        Holder read = new Holder();
+        field("count").getCodec().readString(read, field("count"), "99");
+        field("flag").getCodec().readString(read, field("flag"), "true");
+        field("price").getCodec().readString(read, field("price"), "5.50");
+        field("color").getCodec().readString(read, field("color"), "RED");
+        assertEquals(99L, read.count);
+        assertTrue(read.flag);
+        assertEquals(new BigDecimal("5.50"), read.price);
+        assertEquals(Color.RED, read.color);
+
+        // Unknown constants keep the default
+        field("color").getCodec().readString(read, field("color"), "BLUE");
+        assertEquals(Color.RED, read.color);
+    }
+
+    /**
+     * Mutation recording the serialized value of each column put
+     */
+    @SuppressWarnings("unchecked")
+    private static ColumnListMutation<String> mutation(final Map<String, ByteBuffer> columns) {
+        return (ColumnListMutation<String>) Proxy.newProxyInstance(ColumnCodecsTest.class.getClassLoader(),
+                new Class<?>[] { ColumnListMutation.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = (String) args[0];
+                if ( method.getName().equals("putEmptyColumn") ) {
+                    columns.put(name, ByteBuffer.allocate(0));
+                } else if ( method.getName().equals("putColumn") ) {
+                    columns.put(name, serialize(method.getParameterTypes()[1], args[1]));
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                return proxy;
+            }
+        });
+    }
+
+    private static ByteBuffer serialize(Class<?> type, Object value) {
+        if ( type.equals(String.class) ) return StringSerializer.get().toByteBuffer((String) value);
+        if ( type.equals(Long.TYPE) ) return LongSerializer.get().toByteBuffer((Long) value);
+        if ( type.equals(Integer.TYPE) ) return IntegerSerializer.get().toByteBuffer((Integer) value);
+        if ( type.equals(Double.TYPE) ) return DoubleSerializer.get().toByteBuffer((Double) value);
+        if ( type.equals(Boolean.TYPE) ) return BooleanSerializer.get().toByteBuffer((Boolean) value);
+        if ( type.equals(Date.class) ) return DateSerializer.get().toByteBuffer((Date) value);
+        if ( type.equals(UUID.class) ) return UUIDSerializer.get().toByteBuffer((UUID) value);
+        if ( type.equals(ByteBuffer.class) ) return ((ByteBuffer) value).duplicate();
+        throw new UnsupportedOperationException(type.getName());
+    }
+
+    private static Column<String> column(String name, ByteBuffer value) {
+        org.apache.cassandra.thrift.Column column = new org.apache.cassandra.thrift.Column(StringSerializer.get().toByteBuffer(name));
+        column.setValue(value.duplicate());
+        return new ThriftColumnImpl<String>(name, column);
+    }
+}
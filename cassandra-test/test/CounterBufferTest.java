@@ -0,0 +1,193 @@
+import models.Order;
+import com.netflix.astyanax.connectionpool.exceptions.NoAvailableHostsException;
+import com.netflix.astyanax.connectionpool.exceptions.OperationTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.Play;
+import play.exceptions.DatabaseException;
+import play.modules.cassandra.CassandraDB;
+import play.modules.cassandra.CassandraPlugin;
+import play.modules.cassandra.CounterBuffer;
+import play.modules.cassandra.UnitOfWork;
+import play.test.Fixtures;
+import play.test.UnitTest;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class CounterBufferTest extends UnitTest {
+    private String _interval;
+    private CounterBuffer _buffer;
+
+    @Before
+    public void setup() {
+        // Refresh database prior to each test
+        Fixtures.deleteAllModels();
+        Fixtures.loadModels("initial-data.yml");
+        // Only the flushes of the test run
+        _interval = Play.configuration.getProperty("cassandra.counters.interval");
+        Play.configuration.setProperty("cassandra.counters.interval", "3600000");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if ( null != _buffer ) {
+            _buffer.dispose();
+        }
+        installBuffer(null);
+        if ( null == _interval ) {
+            Play.configuration.remove("cassandra.counters.interval");
+        } else {
+            Play.configuration.setProperty("cassandra.counters.interval", _interval);
+        }
+    }
+
+    @Test
+    public void testGetAddsPendingDelta() throws Exception {
+        _buffer = new CounterBuffer(CassandraPlugin.ds());
+        installBuffer(_buffer);
+
+        Long quantity = Order.get("testfind", "quantity");
+        assertEquals((Long) 5L, quantity);
+
+        Order.increment("testfind", "quantity", 7);
+        Order.decrement("testfind", "quantity", 2);
+        assertEquals(5L, _buffer.getPending(Order.class, "testfind", "quantity"));
+
+        // Read with the delta of this server, not written yet
+        quantity = Order.get("testfind", "quantity");
+        assertEquals((Long) 10L, quantity);
+        assertEquals(5, ((Order) Order.findById("testfind")).quantity);
+
+        _buffer.flush();
+        assertEquals(0L, _buffer.getPending(Order.class, "testfind", "quantity"));
+        assertEquals(10, ((Order) Order.findById("testfind")).quantity);
+        quantity = Order.get("testfind", "quantity");
+        assertEquals((Long) 10L, quantity);
+    }
+
+    @Test
+    public void testFlushSumsIncrements() {
+        FlakyDB ds = new FlakyDB(0, null);
+        _buffer = new CounterBuffer(ds.proxy());
+        _buffer.increment(Order.class, "one", "quantity", 3);
+        _buffer.increment(Order.class, "one", "quantity", 4);
+        _buffer.increment(Order.class, "two", "quantity", -1);
+        assertEquals(2, _buffer.getPendingCounters());
+        assertEquals(3, _buffer.getIncrements());
+
+        _buffer.flush();
+        assertEquals(1, ds.flushed.size());
+        Map<UnitOfWork.RowKey, Map<String, Long>> increments = ds.flushed.get(0).getIncrements();
+        assertEquals((Long) 7L, increments.get(new UnitOfWork.RowKey(Order.class, "one")).get("quantity"));
+        assertEquals((Long) (-1L), increments.get(new UnitOfWork.RowKey(Order.class, "two")).get("quantity"));
+        assertEquals(0, _buffer.getPendingCounters());
+        assertEquals(2, _buffer.getWritten());
+        assertEquals(1, _buffer.getBatches());
+
+        // Nothing pending, nothing written
+        _buffer.flush();
+        assertEquals(1, ds.flushed.size());
+    }
+
+    @Test
+    public void testUnsentFlushKeepsDeltas() {
+        FlakyDB ds = new FlakyDB(1, new NoAvailableHostsException("No hosts"));
+        _buffer = new CounterBuffer(ds.proxy());
+        _buffer.increment(Order.class, "one", "quantity", 3);
+
+        _buffer.flush();
+        assertEquals(1, _buffer.getFailed());
+        assertEquals(0, _buffer.getWritten());
+        assertEquals(0, _buffer.getDropped());
+        assertEquals(3L, _buffer.getPending(Order.class, "one", "quantity"));
+
+        // Increments made after the failure are written with the kept delta
+        _buffer.increment(Order.class, "one", "quantity", 2);
+        _buffer.flush();
+        assertEquals(1, ds.flushed.size());
+        assertEquals((Long) 5L, ds.flushed.get(0).getIncrements().get(new UnitOfWork.RowKey(Order.class, "one")).get("quantity"));
+        assertEquals(0L, _buffer.getPending(Order.class, "one", "quantity"));
+    }
+
+    @Test
+    public void testTimedOutFlushIsNotRetried() {
+        FlakyDB ds = new FlakyDB(1, new OperationTimeoutException("Timed out"));
+        _buffer = new CounterBuffer(ds.proxy());
+        _buffer.increment(Order.class, "one", "quantity", 3);
+
+        // The batch may have been applied, it is not written again
+        _buffer.flush();
+        assertEquals(1, _buffer.getFailed());
+        assertEquals(1, _buffer.getDropped());
+        assertEquals(0L, _buffer.getPending(Order.class, "one", "quantity"));
+
+        _buffer.increment(Order.class, "one", "quantity", 2);
+        _buffer.flush();
+        assertEquals(1, ds.flushed.size());
+        assertEquals((Long) 2L, ds.flushed.get(0).getIncrements().get(new UnitOfWork.RowKey(Order.class, "one")).get("quantity"));
+    }
+
+    @Test
+    public void testPendingCountsDeltaBeingWritten() {
+        final CounterBuffer[] buffer = new CounterBuffer[1];
+        final long[] seen = new long[1];
+        FlakyDB ds = new FlakyDB(0, null) {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                // Read while the batch is being written: counted once, from the buffer
+                seen[0] = buffer[0].getPending(Order.class, "one", "quantity");
+                return super.invoke(proxy, method, args);
+            }
+        };
+        _buffer = buffer[0] = new CounterBuffer(ds.proxy());
+        _buffer.increment(Order.class, "one", "quantity", 3);
+
+        _buffer.flush();
+        assertEquals(3L, seen[0]);
+        assertEquals(0L, _buffer.getPending(Order.class, "one", "quantity"));
+    }
+
+    private static void installBuffer(CounterBuffer buffer) throws Exception {
+        Field field = CassandraPlugin.class.getDeclaredField("_counterBuffer");
+        field.setAccessible(true);
+        field.set(null, buffer);
+    }
+
+    /**
+     * Data store recording the units of work flushed, failing the first flushes with the cause given
+     */
+    static class FlakyDB implements InvocationHandler {
+        final List<UnitOfWork> flushed = new ArrayList<UnitOfWork>();
+        final Throwable cause;
+        int failures;
+
+        FlakyDB(int failures, Throwable cause) {
+            this.failures = failures;
+            this.cause = cause;
+        }
+
+        CassandraDB proxy() {
+            return (CassandraDB) Proxy.newProxyInstance(CounterBufferTest.class.getClassLoader(),
+                    new Class<?>[] { CassandraDB.class }, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ( !method.getName().equals("flush") ) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            if ( failures > 0 ) {
+                failures--;
+                throw new DatabaseException("Flush failed", cause);
+            }
+            flushed.add((UnitOfWork) args[0]);
+            return null;
+        }
+    }
+}
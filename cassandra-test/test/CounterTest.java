@@ -100,4 +100,25 @@ public class CounterTest extends UnitTest {
         expected = new BigDecimal("30.00");
         assertEquals(expected, model.refund);
     }
+
+    @Test
+    public void testSaveCountersWritesTheChange() {
+        Order model = Order.findById("testfind");
+        assertNotNull(model);
+        long read = model.quantity;
+
+        // Incremented elsewhere after the model was read
+        Order.increment("testfind", "quantity", 10);
+
+        model.quantity = read + 3;
+        model.save(true);
+        Long quantity = Order.get("testfind", "quantity");
+        assertEquals((Long) (read + 13), quantity);
+
+        // The next save increments by the change since the previous one
+        model.quantity += 1;
+        model.save(true);
+        quantity = Order.get("testfind", "quantity");
+        assertEquals((Long) (read + 14), quantity);
+    }
 }
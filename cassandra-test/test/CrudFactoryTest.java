@@ -0,0 +1,50 @@
+import models.Order;
+import org.junit.Before;
+import org.junit.Test;
+import play.db.Model;
+import play.test.Fixtures;
+import play.test.UnitTest;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CrudFactoryTest extends UnitTest {
+    private Model.Factory factory;
+
+    @Before
+    public void setup() {
+        // Refresh database prior to each test
+        Fixtures.deleteAllModels();
+        Fixtures.loadModels("initial-data.yml");
+        factory = Model.Manager.factoryFor(Order.class);
+    }
+
+    @Test
+    public void testKeywordsFilterRows() {
+        assertEquals((Long) 2L, factory.count(null, null, null));
+        assertEquals((Long) 1L, factory.count(null, "FINE", null));
+
+        List<Model> orders = factory.fetch(0, 10, null, null, null, "FINE", null);
+        assertEquals(1, orders.size());
+        assertEquals("testfind", ((Order) orders.get(0)).id);
+
+        // Only the searched properties are matched
+        assertEquals((Long) 0L, factory.count(Arrays.asList("appVersion"), "fine", null));
+        assertTrue(factory.fetch(1, 10, null, null, null, "fine", null).isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testWhereIsRejected() {
+        factory.fetch(0, 10, null, null, null, null, "id = 'testfind'");
+    }
+
+    @Test
+    public void testOrderByIsIgnored() {
+        // Clicking a column header of the CRUD list still shows the page, in row key order
+        assertEquals(factory.fetch(0, 10, null, null, null, null, null).size(),
+                factory.fetch(0, 10, "id", "DESC", null, null, null).size());
+        List<Model> orders = factory.fetch(0, 10, "receiptStatus", "ASC", null, "FINE", null);
+        assertEquals(1, orders.size());
+        assertEquals("testfind", ((Order) orders.get(0)).id);
+    }
+}
@@ -0,0 +1,41 @@
+import models.Account;
+import models.Order;
+import org.junit.Before;
+import org.junit.Test;
+import play.modules.cassandra.MultiGetResult;
+import play.test.Fixtures;
+import play.test.UnitTest;
+
+import java.util.Arrays;
+
+public class FindByIdsTest extends UnitTest {
+    @Before
+    public void setup() {
+        // Refresh database prior to each test
+        Fixtures.deleteAllModels();
+        Fixtures.loadModels("initial-data.yml");
+    }
+
+    @Test
+    public void testFindByIdsKeepsOrder() {
+        MultiGetResult<Order> orders = Order.findByIds(Arrays.asList("testfind", "findmenow"));
+        assertEquals(2, orders.size());
+        assertEquals("testfind", orders.get(0).id);
+        assertEquals("findmenow", orders.get(1).id);
+        assertFalse(orders.hasMissing());
+
+        orders = Order.findByIds(Arrays.asList("findmenow", "testfind"));
+        assertEquals("findmenow", orders.get(0).id);
+        assertEquals("testfind", orders.get(1).id);
+    }
+
+    @Test
+    public void testFindByIdsReportsMissing() {
+        MultiGetResult<Account> accounts = Account.findByIds(Arrays.asList("nobody", "5b74e588-2653-4ddb-939e-f03045b214ee", "dummyone"));
+        assertEquals(2, accounts.size());
+        assertEquals("5b74e588-2653-4ddb-939e-f03045b214ee", accounts.get(0).guid);
+        assertEquals((Long) 1238L, accounts.get(0).xp);
+        assertEquals(1, accounts.getMissingIds().size());
+        assertEquals("nobody", accounts.getMissingIds().get(0));
+    }
+}
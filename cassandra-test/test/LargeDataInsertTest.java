@@ -2,9 +2,13 @@ import models.Order;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import play.modules.cassandra.SaveResult;
 import play.test.Fixtures;
 import play.test.UnitTest;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Test the Plugin's Ability to manipulate large data sets, including
  * selection and deletion
@@ -38,4 +42,24 @@ public class LargeDataInsertTest extends UnitTest {
         result = Order.count();
         assertEquals(ordersToCreate, result);
     }
+
+    @Test
+    public void testBatchedInsert() {
+        int ordersToCreate = 1000;
+        String seed = String.valueOf(System.currentTimeMillis());
+        List<Order> orders = new ArrayList<Order>();
+        for ( int i = 0; i < ordersToCreate; i++ ) {
+            Order model = new Order();
+            model.id = seed + String.valueOf(i);
+            orders.add(model);
+        }
+        // Rows without an id fail on their own
+        orders.add(new Order());
+
+        SaveResult result = Order.saveAll(orders);
+        assertEquals(ordersToCreate, result.getSaved());
+        assertEquals(1, result.getFailures().size());
+        assertEquals(ordersToCreate, Order.count());
+        assertFalse(orders.get(0).isNew());
+    }
 }
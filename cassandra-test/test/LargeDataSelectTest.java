@@ -2,10 +2,18 @@ import models.Order;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import play.modules.cassandra.CassandraQuery;
+import play.modules.cassandra.ModelVisitor;
 import play.test.Fixtures;
 import play.test.UnitTest;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Test the Plugin's Ability to manipulate large data sets, including
@@ -45,4 +53,107 @@ public class LargeDataSelectTest extends UnitTest {
         }
         assertEquals(ordersToCreate, found);
     }
+
+    @Test
+    public void testPagedFetch() {
+        int ordersToCreate = 25;
+        String seed = String.valueOf(System.currentTimeMillis());
+        for ( int i = 0; i < ordersToCreate; i++ ) {
+            Order model = new Order();
+            model.id = seed + String.valueOf(i);
+            model.save();
+        }
+
+        // Asking for more than there is returns what there is
+        assertEquals(ordersToCreate, Order.all().fetch(ordersToCreate + 10).size());
+        assertEquals(5, Order.all().offset(20).fetch(10).size());
+
+        Set<String> ids = new HashSet<String>();
+        String token = null;
+        int pages = 0;
+        while ( true ) {
+            CassandraQuery query = Order.all().from(token);
+            List<Order> page = query.fetch(10);
+            if ( page.isEmpty() ) {
+                break;
+            }
+            for ( Order order : page ) {
+                ids.add(order.id);
+            }
+            token = query.getPageToken();
+            pages++;
+        }
+        assertEquals(3, pages);
+        assertEquals(ordersToCreate, ids.size());
+    }
+
+    @Test
+    public void testRandomAccess() {
+        // More rows than one scan page (cassandra.scan.pagesize)
+        int ordersToCreate = 250;
+        String seed = String.valueOf(System.currentTimeMillis());
+        for ( int i = 0; i < ordersToCreate; i++ ) {
+            Order model = new Order();
+            model.id = seed + String.valueOf(i);
+            model.save();
+        }
+
+        List<String> ids = new ArrayList<String>();
+        List<Order> all = Order.all().fetch();
+        for ( Order order : all ) {
+            ids.add(order.id);
+        }
+        assertEquals(ordersToCreate, ids.size());
+
+        // Going back and forth reads the page of the index, not the rows before it
+        List<Order> orders = Order.all().fetch();
+        for ( int i : new int[] { 240, 10, 120, 119, 0, 249, 101, 100, 99 } ) {
+            assertEquals(ids.get(i), orders.get(i).id);
+        }
+    }
+
+    @Test
+    public void testParallelScan() {
+        int ordersToCreate = 50;
+        String seed = String.valueOf(System.currentTimeMillis());
+        for ( int i = 0; i < ordersToCreate; i++ ) {
+            Order model = new Order();
+            model.id = seed + String.valueOf(i);
+            model.save();
+        }
+
+        final Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        long visited = Order.scan(new ModelVisitor<Order>() {
+            @Override
+            public boolean visit(Order order) {
+                ids.add(order.id);
+                return true;
+            }
+        });
+        assertEquals(ordersToCreate, visited);
+        assertEquals(ordersToCreate, ids.size());
+    }
+
+    @Test
+    public void testScanFromVisitor() {
+        int ordersToCreate = 20;
+        String seed = String.valueOf(System.currentTimeMillis());
+        for ( int i = 0; i < ordersToCreate; i++ ) {
+            Order model = new Order();
+            model.id = seed + String.valueOf(i);
+            model.save();
+        }
+
+        // Every scan thread counting from inside a visitor must not starve the nested scans
+        final AtomicLong counted = new AtomicLong();
+        long visited = Order.scan(new ModelVisitor<Order>() {
+            @Override
+            public boolean visit(Order order) {
+                counted.addAndGet(Order.count());
+                return true;
+            }
+        });
+        assertEquals(ordersToCreate, visited);
+        assertEquals(ordersToCreate * ordersToCreate, counted.get());
+    }
 }
@@ -0,0 +1,83 @@
+import models.Account;
+import models.Order;
+import org.junit.Before;
+import org.junit.Test;
+import play.modules.cassandra.MultiGetResult;
+import play.test.Fixtures;
+import play.test.UnitTest;
+
+import java.util.Arrays;
+
+public class LazyRelationTest extends UnitTest {
+    private static final String ACCOUNT_ID = "5b74e588-2653-4ddb-939e-f03045b214ee";
+
+    @Before
+    public void setup() {
+        // Refresh database prior to each test
+        Fixtures.deleteAllModels();
+        Fixtures.loadModels("initial-data.yml");
+    }
+
+    @Test
+    public void testGetterResolvesReference() {
+        Order order = Order.findById("testfind");
+        assertNotNull(order._getLazyRelation("user"));
+
+        Account user = order.user;
+        assertNotNull(user);
+        assertEquals(ACCOUNT_ID, user.guid);
+        assertNull(order._getLazyRelation("user"));
+    }
+
+    @Test
+    public void testSetterDropsReference() {
+        Order order = Order.findById("testfind");
+        assertNotNull(order._getLazyRelation("user"));
+
+        Account other = Account.findById("dummyone");
+        order.user = other;
+        assertNull(order._getLazyRelation("user"));
+        assertEquals("dummyone", order.user.guid);
+
+        order.save();
+        assertEquals("dummyone", ((Order) Order.findById("testfind")).user.guid);
+    }
+
+    @Test
+    public void testSaveKeepsUnreadReference() {
+        Order order = Order.findById("testfind");
+        order.receiptStatus = "changed";
+        order.save();
+        assertNotNull(order._getLazyRelation("user"));
+
+        Order saved = Order.findById("testfind");
+        assertEquals("changed", saved.receiptStatus);
+        assertEquals(ACCOUNT_ID, saved.user.guid);
+
+        // Without a snapshot every column is written, the unread reference writes its key
+        order.delete();
+        order.save();
+        assertNotNull(order._getLazyRelation("user"));
+        saved = Order.findById("testfind");
+        assertEquals(ACCOUNT_ID, saved.user.guid);
+    }
+
+    @Test
+    public void testResultSetSharesOneRead() {
+        Order first = Order.findById("testfind");
+        Order second = new Order();
+        second.id = "lazysecond";
+        second.user = first.user;
+        second.save();
+
+        // Both references are parsed into the same batch
+        MultiGetResult<Order> orders = Order.findByIds(Arrays.asList("testfind", "lazysecond"));
+        assertEquals(2, orders.size());
+        for ( Order order : orders ) {
+            assertNotNull(order._getLazyRelation("user"));
+        }
+        for ( Order order : orders ) {
+            assertEquals(ACCOUNT_ID, order.user.guid);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import com.netflix.astyanax.connectionpool.impl.CountingConnectionPoolMonitor;
+import models.Goals;
+import models.Order;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import play.Play;
+import play.modules.cassandra.CassandraDB;
+import play.modules.cassandra.CassandraPlugin;
+import play.modules.cassandra.providers.CassandraProvider;
+import play.test.Fixtures;
+import play.test.UnitTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class MapModelTest extends UnitTest {
+    private String _pageSize;
+
+    @Before
+    public void setup() {
+        // Refresh database prior to each test
+        Fixtures.deleteAllModels();
+        Fixtures.loadModels("initial-data.yml");
+        CassandraPlugin.deleteMapModels();
+        _pageSize = Play.configuration.getProperty("cassandra.columns.pagesize");
+    }
+
+    @After
+    public void tearDown() {
+        if ( null == _pageSize ) {
+            Play.configuration.remove("cassandra.columns.pagesize");
+        } else {
+            Play.configuration.setProperty("cassandra.columns.pagesize", _pageSize);
+        }
+    }
+
+    @Test
+    public void testSaveWritesOneBatch() {
+        CassandraDB ds = CassandraPlugin.ds();
+        Assume.assumeTrue(ds instanceof CassandraProvider);
+        CountingConnectionPoolMonitor monitor = (CountingConnectionPoolMonitor) ((CassandraProvider) ds).getContext().getConnectionPoolMonitor();
+
+        Goals goals = new Goals("player", "slots");
+        for ( int i = 0; i < 50; i++ ) {
+            goals.put("goal" + i, String.valueOf(i));
+        }
+        long operations = monitor.getOperationSuccessCount();
+        goals.save();
+        // Every entry of the row goes in the same mutation
+        assertEquals(1, monitor.getOperationSuccessCount() - operations);
+        assertFalse(goals.isChanged());
+
+        // Nothing changed, nothing written
+        operations = monitor.getOperationSuccessCount();
+        goals.save();
+        assertEquals(0, monitor.getOperationSuccessCount() - operations);
+
+        Goals saved = Goals.find("player", "slots");
+        assertEquals(50, saved.size());
+        assertEquals("49", saved.get("goal49"));
+    }
+
+    @Test
+    public void testFindReadsOneDictionary() {
+        // Dictionaries whose names extend each other sit next to each other in the row
+        Goals.writeComposite("player", "gam", "k", "gam");
+        Goals.writeComposite("player", "game", "k", "game");
+        Goals.writeComposite("player", "game", "k1", "game1");
+        Goals.writeComposite("player", "game1", "k", "other");
+
+        Goals game = Goals.find("player", "game");
+        assertEquals(2, game.size());
+        assertEquals("game", game.get("k"));
+        assertEquals("game1", game.get("k1"));
+        assertEquals(1, ((Goals) Goals.find("player", "gam")).size());
+        assertEquals("other", ((Goals) Goals.find("player", "game1")).get("k"));
+    }
+
+    @Test
+    public void testDeleteSlicesItsPrefix() {
+        Goals.writeComposite("player", "gam", "k", "gam");
+        Goals.writeComposite("player", "game", "k", "game");
+        Goals.writeComposite("player", "game", "k1", "game1");
+        Goals.writeComposite("player", "game1", "k", "other");
+
+        // The key bound is inclusive on both sides, "k1" is not a column of "k"
+        assertEquals(1, Goals.delete("player", "game", "k"));
+        Goals game = Goals.find("player", "game");
+        assertEquals(1, game.size());
+        assertEquals("game1", game.get("k1"));
+        assertEquals(0, Goals.delete("player", "game", "k"));
+
+        // So is the dictionary bound, "game1" and "gam" are left
+        Goals.writeComposite("player", "game", "k", "game");
+        assertEquals(2, Goals.delete("player", "game"));
+        assertTrue(((Goals) Goals.find("player", "game")).isEmpty());
+        assertEquals("other", ((Goals) Goals.find("player", "game1")).get("k"));
+        assertEquals("gam", ((Goals) Goals.find("player", "gam")).get("k"));
+        assertEquals(0, Goals.delete("player", "game"));
+    }
+
+    @Test
+    public void testDictionaryKeysAcrossPages() {
+        // Pages of three columns: dictionaries of one column and one spanning several pages
+        Play.configuration.setProperty("cassandra.columns.pagesize", "3");
+        Goals.writeComposite("player", "a", "k", "a");
+        Goals.writeComposite("player", "b", "k", "b");
+        for ( int i = 0; i < 7; i++ ) {
+            Goals.writeComposite("player", "c", "k" + i, "c");
+        }
+        Goals.writeComposite("player", "d", "k", "d");
+        Goals.writeComposite("player", "e", "k", "e");
+        Goals.writeComposite("player", "f", "k", "f");
+
+        List<String> expected = Arrays.asList("a", "b", "c", "d", "e", "f");
+        assertEquals(expected, Goals.getDictionaryKeys("player"));
+
+        List<String> keys = new ArrayList<String>();
+        Iterator<String> it = Goals.dictionaryKeys("player").iterator();
+        while ( it.hasNext() ) {
+            // hasNext() reads ahead without skipping or repeating a name
+            assertTrue(it.hasNext());
+            keys.add(it.next());
+        }
+        assertEquals(expected, keys);
+        assertTrue(Goals.getDictionaryKeys("nobody").isEmpty());
+    }
+
+    @Test
+    public void testDictionaryAcrossPages() {
+        Play.configuration.setProperty("cassandra.columns.pagesize", "3");
+        Goals.writeComposite("player", "a", "k", "a");
+        for ( int i = 0; i < 10; i++ ) {
+            Goals.writeComposite("player", "game", "k" + i, String.valueOf(i));
+        }
+        Goals.writeComposite("player", "z", "k", "z");
+
+        Goals game = Goals.find("player", "game");
+        assertEquals(10, game.size());
+        assertEquals("9", game.get("k9"));
+
+        // A dictionary is complete when the columns of the next one start, whichever page they are in
+        List<String> names = new ArrayList<String>();
+        for ( Goals goals : Goals.<Goals>iterate("player") ) {
+            names.add(goals.getKey2());
+            if ( goals.getKey2().equals("game") ) {
+                assertEquals(game, goals);
+            }
+        }
+        assertEquals(Arrays.asList("a", "game", "z"), names);
+
+        List<Goals> all = Goals.findAll("player");
+        assertEquals(3, all.size());
+        assertEquals(10, all.get(1).size());
+        assertEquals(1, all.get(2).size());
+    }
+
+    @Test
+    public void testRowAcrossPages() {
+        Order order = Order.findById("testfind");
+        order.transactionId = "transaction";
+        order.dateInitiated = new Date(1350000000000L);
+        order.dateCompleted = new Date(1350000060000L);
+        order.pricePaid = new BigDecimal("1.99");
+        order.appVersion = "1.0";
+        order.save();
+
+        // More columns than one page, every page is joined into the row
+        Play.configuration.setProperty("cassandra.columns.pagesize", "2");
+        Order read = Order.findById("testfind");
+        assertEquals("transaction", read.transactionId);
+        assertEquals(order.dateInitiated, read.dateInitiated);
+        assertEquals(order.dateCompleted, read.dateCompleted);
+        assertEquals(order.pricePaid, read.pricePaid);
+        assertEquals("1.0", read.appVersion);
+        assertEquals("fine", read.receiptStatus);
+        assertEquals("5b74e588-2653-4ddb-939e-f03045b214ee", read.user.guid);
+        assertEquals(5, read.quantity);
+    }
+
+    @Test
+    public void testPutAfterRemoveIsWritten() {
+        Goals goals = new Goals("player", "slots");
+        goals.put("goal", "first");
+        goals.save();
+
+        goals.remove("goal");
+        goals.put("goal", "second");
+        assertTrue(goals.getPuts().contains("goal"));
+        assertFalse(goals.getRemoves().contains("goal"));
+        goals.save();
+        assertEquals("second", ((Goals) Goals.find("player", "slots")).get("goal"));
+
+        // Removed again, the put made before is dropped
+        goals.put("goal", "third");
+        goals.remove("goal");
+        assertFalse(goals.getPuts().contains("goal"));
+        goals.save();
+        assertTrue(((Goals) Goals.find("player", "slots")).isEmpty());
+    }
+
+    @Test
+    public void testViewChangesAreWritten() {
+        Goals goals = new Goals("player", "slots");
+        goals.put("one", "1");
+        goals.put("two", "2");
+        goals.put("three", "3");
+        goals.save();
+
+        Iterator<String> keys = goals.keySet().iterator();
+        while ( keys.hasNext() ) {
+            if ( keys.next().equals("one") ) {
+                keys.remove();
+            }
+        }
+        goals.values().remove("2");
+        for ( Map.Entry<String, String> entry : goals.entrySet() ) {
+            entry.setValue("three");
+        }
+        assertTrue(goals.isChanged());
+        goals.save();
+
+        Goals saved = Goals.find("player", "slots");
+        assertEquals(1, saved.size());
+        assertEquals("three", saved.get("three"));
+        assertEquals(goals, saved);
+    }
+}
@@ -0,0 +1,146 @@
+import models.Order;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.modules.cassandra.Model;
+import play.modules.cassandra.SaveResult;
+import play.modules.cassandra.UnitOfWork;
+import play.test.Fixtures;
+import play.test.UnitTest;
+
+import java.util.Arrays;
+
+public class UnitOfWorkTest extends UnitTest {
+    @Before
+    public void setup() {
+        // Refresh database prior to each test
+        Fixtures.deleteAllModels();
+    }
+
+    @After
+    public void tearDown() {
+        UnitOfWork.rollback();
+        Fixtures.deleteAllModels();
+    }
+
+    @Test
+    public void testWritesWaitForCommit() {
+        UnitOfWork.begin();
+        for ( int i = 0; i < 10; i++ ) {
+            Order order = new Order();
+            order.id = "uow" + i;
+            order.save();
+        }
+        Order.findById("uow3").delete();
+
+        // Buffered models are visible before the flush, rows are not
+        assertNotNull(Order.findById("uow1"));
+        assertNull(Order.findById("uow3"));
+        assertEquals(0, Order.count());
+
+        UnitOfWork.commit();
+        assertEquals(9, Order.count());
+        assertNull(Order.findById("uow3"));
+    }
+
+    @Test
+    public void testRollbackDiscardsWrites() {
+        UnitOfWork.begin();
+        Order order = new Order();
+        order.id = "uowrollback";
+        order.save();
+        UnitOfWork.rollback();
+
+        assertNull(Order.findById("uowrollback"));
+        assertEquals(0, Order.count());
+    }
+
+    @Test
+    public void testCounterWritesKeepTheirOrder() {
+        Order order = new Order();
+        order.id = "uowcounter";
+        order.save();
+
+        UnitOfWork.begin();
+        Order.increment("uowcounter", "quantity", 5);
+        Order.set("uowcounter", "quantity", 10L);
+        Order.increment("uowcounter", "quantity", 3);
+        UnitOfWork.commit();
+
+        // The increment before the set is overwritten, the one after it is added
+        Long quantity = Order.get("uowcounter", "quantity");
+        assertEquals((Long) 13L, quantity);
+    }
+
+    @Test
+    public void testDeleteDropsIncrements() {
+        Order order = new Order();
+        order.id = "uowdeleted";
+        order.save();
+
+        UnitOfWork.begin();
+        Order.increment("uowdeleted", "quantity", 5);
+        order.delete();
+        UnitOfWork work = UnitOfWork.current();
+        assertTrue(work.getIncrements().isEmpty());
+        assertTrue(work.isDeleted(Order.class, "uowdeleted"));
+        UnitOfWork.commit();
+
+        assertNull(Order.findById("uowdeleted"));
+    }
+
+    @Test
+    public void testSetBeforeSaveIsKept() {
+        Order order = new Order();
+        order.id = "uowset";
+        order.receiptStatus = "saved";
+        order.save();
+
+        UnitOfWork.begin();
+        Order.set("uowset", "receiptStatus", "set");
+        Order.set("uowset", "transactionId", "set");
+        order.transactionId = "changed";
+        order.save();
+        UnitOfWork.commit();
+
+        // The save only writes the column it changed, the other value set still applies
+        Order saved = Order.findById("uowset");
+        assertEquals("set", saved.receiptStatus);
+        assertEquals("changed", saved.transactionId);
+    }
+
+    @Test
+    public void testSaveAllJoinsUnitOfWork() {
+        UnitOfWork.begin();
+        Order deleted = new Order();
+        deleted.id = "uowsaveall";
+        deleted.save();
+        deleted.delete();
+
+        Order first = new Order();
+        first.id = "uowsaveall";
+        Order second = new Order();
+        second.id = "uowsaveall2";
+        SaveResult result = Model.saveAll(Arrays.asList(first, second));
+        assertEquals(2, result.getSaved());
+        assertEquals(0, result.getBatches());
+        assertEquals(0, Order.count());
+
+        // The save replaces the delete buffered before it
+        UnitOfWork.commit();
+        assertEquals(2, Order.count());
+        assertNotNull(Order.findById("uowsaveall"));
+    }
+
+    @Test
+    public void testRollbackDiscardsSaveAll() {
+        UnitOfWork.begin();
+        Order order = new Order();
+        order.id = "uowsaveall";
+        Model.saveAll(Arrays.asList(order));
+        UnitOfWork.rollback();
+
+        assertNull(Order.findById("uowsaveall"));
+        assertEquals(0, Order.count());
+    }
+}
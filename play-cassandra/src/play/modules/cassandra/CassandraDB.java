@@ -3,6 +3,7 @@ package play.modules.cassandra;
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.model.ColumnFamily;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -12,14 +13,26 @@ public interface CassandraDB {
 
     public Model find(Class<? extends play.db.Model> clazz, ColumnFamily<String, String> cf, Object id);
 
-    public List<? extends play.db.Model> all(Class<? extends play.db.Model> clazz);
+    public <T extends play.db.Model> MultiGetResult<T> findMany(Class<? extends play.db.Model> clazz, ColumnFamily<String, String> cf, Collection<?> ids);
+
+    public ModelCursor<? extends play.db.Model> all(Class<? extends play.db.Model> clazz);
+
+    public ModelCursor<? extends play.db.Model> all(Class<? extends play.db.Model> clazz, String pageToken);
+
+    public ModelSpliterator<? extends play.db.Model> spliterator(Class<? extends play.db.Model> clazz);
 
     public void save(Model o, ColumnFamily<String, String> cf);
 
     public void save(Model o, ColumnFamily<String, String> cf, boolean saveCounters);
 
+    public SaveResult saveAll(Collection<? extends Model> models, boolean saveCounters);
+
+    public void flush(UnitOfWork work);
+
     public long count(ColumnFamily<String, String> cf);
 
+    public CountResult count(ColumnFamily<String, String> cf, long timeBudget, CountListener listener);
+
     public boolean increment(String id, String cfName, String columnName, long amount);
 
     public <T> T getColumnValue(String cfName, String id, String columnName);
@@ -31,12 +44,18 @@ public interface CassandraDB {
     // For MapModel
     public List<? extends MapModel> findComposites(Class<? extends MapModel> clazz, String key);
 
+    public <T extends MapModel> Iterable<T> iterateComposites(Class<? extends MapModel> clazz, String key);
+
     public void writeComposite(String cfName, String rowKey, String dictionaryKey, String key, String value, Integer ttl );
 
+    public void writeComposite(MapModel model);
+
     public Map<String, String> findComposite(String cfName, String key, String subkey);
 
     public int deleteComposite(String cfName, String key, String dictionary, String dictKey);
 
+    public Iterable<String> getDictionaryKeys(String cfName, String key);
+
     public List<? extends play.db.Model> findByKey(Class<? extends play.db.Model> clazz, ColumnFamily<String, String> cf, String key, Object value);
 
     public String getProviderType();
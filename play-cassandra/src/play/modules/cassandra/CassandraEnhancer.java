@@ -3,11 +3,26 @@ package play.modules.cassandra;
 import javassist.CtClass;
 import javassist.CtField;
 import javassist.CtMethod;
+import javassist.CtNewConstructor;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import play.Play;
 import play.classloading.ApplicationClasses.ApplicationClass;
 import play.classloading.enhancers.Enhancer;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
 class CassandraEnhancer extends Enhancer {
     private static final String PACKAGE_NAME = "play.modules.cassandra";
+    static final String ACCESSOR_SUFFIX = "$CassandraAccessor";
+    static final String ACCESSOR_FIELD = "_cassandraAccessor";
+    // Redefining a class in the same loader fails, so every enhancement names its accessor anew
+    private static final AtomicInteger _accessorGeneration = new AtomicInteger();
+    static final String LAZY_RELATIONS_FIELD = "_cassandraLazyRelations";
 
 	@Override
 	public void enhanceThisClass(ApplicationClass applicationClass)
@@ -61,6 +76,10 @@ class CassandraEnhancer extends Enhancer {
         CtMethod count = CtMethod.make("public static long count() { play.modules.cassandra.CassandraPlugin.CassandraModelLoader cmf = (play.modules.cassandra.CassandraPlugin.CassandraModelLoader)mf;return cmf.count(); }", ctClass);
         ctClass.addMethod(count);
 
+        // count with time budget
+        CtMethod countBudget = CtMethod.make("public static play.modules.cassandra.CountResult count(long timeBudget, play.modules.cassandra.CountListener listener) { play.modules.cassandra.CassandraPlugin.CassandraModelLoader cmf = (play.modules.cassandra.CassandraPlugin.CassandraModelLoader)mf;return cmf.count(timeBudget, listener); }", ctClass);
+        ctClass.addMethod(countBudget);
+
         // increment
         CtMethod incrementBigDecimal = CtMethod.make("public static boolean increment(String id, String field, java.math.BigDecimal amount) { play.modules.cassandra.CassandraPlugin.CassandraModelLoader cmf = (play.modules.cassandra.CassandraPlugin.CassandraModelLoader)mf;return cmf.increment(id, field, amount); }", ctClass);
         ctClass.addMethod(incrementBigDecimal);
@@ -83,6 +102,10 @@ class CassandraEnhancer extends Enhancer {
         CtMethod findById = CtMethod.make("public static Model findById(Object id) { return (Model)mf.findById(id); }",ctClass);
         ctClass.addMethod(findById);
 
+        // findByIds
+        CtMethod findByIds = CtMethod.make("public static play.modules.cassandra.MultiGetResult findByIds(java.util.Collection ids) { play.modules.cassandra.CassandraPlugin.CassandraModelLoader cmf = (play.modules.cassandra.CassandraPlugin.CassandraModelLoader)mf;return cmf.findByIds(ids); }",ctClass);
+        ctClass.addMethod(findByIds);
+
         // findByKey
         CtMethod findByKey = CtMethod.make("public static java.util.List findByKey(String key, Object value) { play.modules.cassandra.CassandraPlugin.CassandraModelLoader cmf = (play.modules.cassandra.CassandraPlugin.CassandraModelLoader)mf;return cmf.findByKey(key, value); }",ctClass);
         ctClass.addMethod(findByKey);
@@ -95,6 +118,14 @@ class CassandraEnhancer extends Enhancer {
         CtMethod all = CtMethod.make("public static CassandraQuery all() { play.modules.cassandra.CassandraPlugin.CassandraModelLoader cmf = (play.modules.cassandra.CassandraPlugin.CassandraModelLoader)mf;return cmf.findAll(); }",ctClass);
         ctClass.addMethod(all);
 
+        // spliterator
+        CtMethod spliterator = CtMethod.make("public static play.modules.cassandra.ModelSpliterator spliterator() { play.modules.cassandra.CassandraPlugin.CassandraModelLoader cmf = (play.modules.cassandra.CassandraPlugin.CassandraModelLoader)mf;return cmf.spliterator(); }",ctClass);
+        ctClass.addMethod(spliterator);
+
+        // scan
+        CtMethod scan = CtMethod.make("public static long scan(play.modules.cassandra.ModelVisitor visitor) { play.modules.cassandra.CassandraPlugin.CassandraModelLoader cmf = (play.modules.cassandra.CassandraPlugin.CassandraModelLoader)mf;return cmf.scan(visitor); }",ctClass);
+        ctClass.addMethod(scan);
+
         // #--------------------- BEGIN TIMESTAMP ACCESSORS
         CtMethod getCreated = CtMethod.make("public Long getCreated() { return this.created; }", ctClass);
         ctClass.addMethod(getCreated);
@@ -102,10 +133,201 @@ class CassandraEnhancer extends Enhancer {
         ctClass.addMethod(getUpdated);
         // #--------------------- END TIMESTAMP ACCESSORS
 
+        enhanceLazyRelations(ctClass);
+        enhanceModelAccessor(ctClass);
+
         applicationClass.enhancedByteCode = ctClass.toBytecode();
         ctClass.defrost();
     }
 
+    /**
+     * Generates and defines the ModelAccessor implementation for an entity. Failing to
+     * build the accessor is not fatal: ModelReflector falls back to reflection when the
+     * accessor class cannot be found.
+     *
+     * The accessor is defined in the application classloader the entity is loaded by. A DEV
+     * reload or a hotswap enhances the entity again while the accessor of the previous
+     * enhancement may still be defined in that loader, so each accessor gets a name of its
+     * own, published in a static field of the entity read by ModelReflector.
+     *
+     * @param ctClass Entity class being enhanced
+     */
+    private void enhanceModelAccessor(CtClass ctClass) {
+        String entityName = ctClass.getName();
+        String accessorName = entityName + ACCESSOR_SUFFIX + _accessorGeneration.incrementAndGet();
+        try {
+            List<CtField> fields = getAccessorFields(ctClass);
+            CtClass accessor = classPool.makeClass(accessorName);
+            accessor.addInterface(classPool.get("play.modules.cassandra.ModelAccessor"));
+            accessor.addConstructor(CtNewConstructor.defaultConstructor(accessor));
+
+            accessor.addMethod(CtMethod.make("public Object newInstance() { return new " + entityName + "(); }", accessor));
+
+            StringBuilder indexOf = new StringBuilder("public int indexOf(String name) {");
+            for ( int i = 0; i < fields.size(); i++ ) {
+                indexOf.append(String.format(" if (\"%s\".equals(name)) return %d;", fields.get(i).getName(), i));
+            }
+            indexOf.append(" return -1; }");
+            accessor.addMethod(CtMethod.make(indexOf.toString(), accessor));
+
+            StringBuilder get = new StringBuilder();
+            StringBuilder set = new StringBuilder();
+            StringBuilder getLong = new StringBuilder();
+            StringBuilder setLong = new StringBuilder();
+            StringBuilder getInt = new StringBuilder();
+            StringBuilder setInt = new StringBuilder();
+            StringBuilder getDouble = new StringBuilder();
+            StringBuilder setDouble = new StringBuilder();
+            StringBuilder getBoolean = new StringBuilder();
+            StringBuilder setBoolean = new StringBuilder();
+            for ( int i = 0; i < fields.size(); i++ ) {
+                CtField field = fields.get(i);
+                CtClass type = field.getType();
+                String ref = "m." + field.getName();
+                String typeName = type.getName();
+                get.append(String.format(" case %d: return %s;", i, box(type, ref)));
+                set.append(String.format(" case %d: %s = %s; return;", i, ref, unbox(type, "v")));
+
+                if ( typeName.equals("long") ) {
+                    setLong.append(String.format(" case %d: %s = v; return;", i, ref));
+                }
+                if ( typeName.equals("long") || typeName.equals("int") || typeName.equals("short") || typeName.equals("byte") || typeName.equals("char") ) {
+                    getLong.append(String.format(" case %d: return (long)%s;", i, ref));
+                }
+                if ( typeName.equals("int") ) {
+                    setInt.append(String.format(" case %d: %s = v; return;", i, ref));
+                }
+                if ( typeName.equals("int") || typeName.equals("short") || typeName.equals("byte") || typeName.equals("char") ) {
+                    getInt.append(String.format(" case %d: return (int)%s;", i, ref));
+                }
+                if ( typeName.equals("double") ) {
+                    setDouble.append(String.format(" case %d: %s = v; return;", i, ref));
+                }
+                if ( typeName.equals("double") || typeName.equals("float") || typeName.equals("long") || typeName.equals("int") || typeName.equals("short") || typeName.equals("byte") ) {
+                    getDouble.append(String.format(" case %d: return (double)%s;", i, ref));
+                }
+                if ( typeName.equals("boolean") ) {
+                    getBoolean.append(String.format(" case %d: return %s;", i, ref));
+                    setBoolean.append(String.format(" case %d: %s = v; return;", i, ref));
+                }
+            }
+
+            String cast = entityName + " m = (" + entityName + ")o;";
+            String unknown = "throw new IllegalArgumentException(\"Unknown field index \" + index);";
+            accessor.addMethod(CtMethod.make("public Object get(Object o, int index) { " + cast + switchOn(get) + unknown + " }", accessor));
+            accessor.addMethod(CtMethod.make("public void set(Object o, int index, Object v) { " + cast + switchOn(set) + unknown + " }", accessor));
+
+            // Specialized accessors fall back to the boxed ones for non-primitive fields
+            accessor.addMethod(CtMethod.make("public long getLong(Object o, int index) { " + cast + switchOn(getLong) + " return ((Number)get(o, index)).longValue(); }", accessor));
+            accessor.addMethod(CtMethod.make("public void setLong(Object o, int index, long v) { " + cast + switchOn(setLong) + " set(o, index, Long.valueOf(v)); }", accessor));
+            accessor.addMethod(CtMethod.make("public int getInt(Object o, int index) { " + cast + switchOn(getInt) + " return ((Number)get(o, index)).intValue(); }", accessor));
+            accessor.addMethod(CtMethod.make("public void setInt(Object o, int index, int v) { " + cast + switchOn(setInt) + " set(o, index, Integer.valueOf(v)); }", accessor));
+            accessor.addMethod(CtMethod.make("public double getDouble(Object o, int index) { " + cast + switchOn(getDouble) + " return ((Number)get(o, index)).doubleValue(); }", accessor));
+            accessor.addMethod(CtMethod.make("public void setDouble(Object o, int index, double v) { " + cast + switchOn(setDouble) + " set(o, index, Double.valueOf(v)); }", accessor));
+            accessor.addMethod(CtMethod.make("public boolean getBoolean(Object o, int index) { " + cast + switchOn(getBoolean) + " return ((Boolean)get(o, index)).booleanValue(); }", accessor));
+            accessor.addMethod(CtMethod.make("public void setBoolean(Object o, int index, boolean v) { " + cast + switchOn(setBoolean) + " set(o, index, Boolean.valueOf(v)); }", accessor));
+
+            accessor.toClass(Play.classloader, null);
+            accessor.detach();
+            ctClass.addField(CtField.make("public static final String " + ACCESSOR_FIELD + " = \"" + accessorName + "\";", ctClass));
+            CassandraLogger.debug("generated accessor %s", accessorName);
+        } catch ( Throwable e ) {
+            CassandraLogger.warn(e, "Unable to generate accessor for %s - falling back to reflection", entityName);
+        }
+    }
+
+    /**
+     * Hooks the property accessors of fields referencing another model so the reference can be
+     * loaded on first access. The getter resolves a pending reference, the setter drops it. Fields
+     * without both accessors (Play generates them for public fields) keep loading with the row.
+     * The names of the hooked fields are published in a static field read by ModelReflector.
+     *
+     * @param ctClass Class reference being modified
+     */
+    private void enhanceLazyRelations(CtClass ctClass) throws Exception {
+        CtClass relationClass = classPool.get("play.db.Model");
+        StringBuilder lazyRelations = new StringBuilder();
+        for ( CtField field : ctClass.getDeclaredFields() ) {
+            int modifiers = field.getModifiers();
+            if ( !Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers) || hasAnnotation(field, "javax.persistence.Transient") ) {
+                continue;
+            }
+            try {
+                if ( field.getType().isPrimitive() || !field.getType().subtypeOf(relationClass) ) {
+                    continue;
+                }
+            } catch ( NotFoundException e ) {
+                continue;
+            }
+            String property = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+            CtMethod getter = getMethod("get" + property, ctClass);
+            CtMethod setter = getMethod("set" + property, ctClass);
+            if ( null == getter || null == setter ) {
+                continue;
+            }
+            getter.insertBefore("_resolveRelation(\"" + field.getName() + "\");");
+            setter.insertBefore("_clearRelation(\"" + field.getName() + "\");");
+            if ( lazyRelations.length() > 0 ) {
+                lazyRelations.append(",");
+            }
+            lazyRelations.append(field.getName());
+        }
+        if ( lazyRelations.length() > 0 ) {
+            ctClass.addField(CtField.make("public static final String " + LAZY_RELATIONS_FIELD + " = \"" + lazyRelations + "\";", ctClass));
+        }
+    }
+
+    /**
+     * @return Public instance fields of the class and its superclasses, subclass fields first
+     */
+    private List<CtField> getAccessorFields(CtClass ctClass) throws Exception {
+        List<CtField> fields = new ArrayList<CtField>();
+        Set<String> names = new HashSet<String>();
+        CtClass fieldClass = ctClass;
+        while ( null != fieldClass && !fieldClass.getName().equals("java.lang.Object") ) {
+            for ( CtField field : fieldClass.getDeclaredFields() ) {
+                int modifiers = field.getModifiers();
+                if ( Modifier.isPublic(modifiers) && !Modifier.isStatic(modifiers) && names.add(field.getName()) ) {
+                    fields.add(field);
+                }
+            }
+            fieldClass = fieldClass.getSuperclass();
+        }
+        return fields;
+    }
+
+    private static String switchOn(StringBuilder cases) {
+        if ( cases.length() == 0 ) {
+            return "";
+        }
+        return " switch (index) {" + cases + " }";
+    }
+
+    private static String box(CtClass type, String expr) {
+        if ( !type.isPrimitive() ) {
+            return expr;
+        }
+        String name = type.getName();
+        if ( name.equals("boolean") ) return "Boolean.valueOf(" + expr + ")";
+        if ( name.equals("long") ) return "Long.valueOf(" + expr + ")";
+        if ( name.equals("int") ) return "Integer.valueOf(" + expr + ")";
+        if ( name.equals("double") ) return "Double.valueOf(" + expr + ")";
+        if ( name.equals("float") ) return "Float.valueOf(" + expr + ")";
+        if ( name.equals("short") ) return "Short.valueOf(" + expr + ")";
+        if ( name.equals("byte") ) return "Byte.valueOf(" + expr + ")";
+        return "Character.valueOf(" + expr + ")";
+    }
+
+    private static String unbox(CtClass type, String expr) {
+        if ( !type.isPrimitive() ) {
+            return "(" + type.getName() + ")" + expr;
+        }
+        String name = type.getName();
+        if ( name.equals("boolean") ) return "((Boolean)" + expr + ").booleanValue()";
+        if ( name.equals("char") ) return "((Character)" + expr + ").charValue()";
+        return "((Number)" + expr + ")." + name + "Value()";
+    }
+
     private void enhanceMapModelClass(CtClass ctClass, ApplicationClass applicationClass) throws Exception {
         String columnFamilyName = ctClass.getSimpleName();
         String entityName = ctClass.getName();
@@ -117,10 +339,18 @@ class CassandraEnhancer extends Enhancer {
         CtMethod findAll = CtMethod.make("public static java.util.List findAll(String rowKey ) { return  _findAll( \"" + columnFamilyName + "\", rowKey ); }", ctClass);
         ctClass.addMethod(findAll);
 
+        // iterate
+        CtMethod iterate = CtMethod.make("public static java.lang.Iterable iterate(String rowKey ) { return  _iterate( \"" + columnFamilyName + "\", rowKey ); }", ctClass);
+        ctClass.addMethod(iterate);
+
         // getDictionaryKeys
         CtMethod getDictionaryKeys = CtMethod.make("public static java.util.List getDictionaryKeys(String rowKey ) { return  _getDictionaryKeys( \"" + columnFamilyName + "\", rowKey ); }", ctClass);
         ctClass.addMethod(getDictionaryKeys);
 
+        // dictionaryKeys
+        CtMethod dictionaryKeys = CtMethod.make("public static java.lang.Iterable dictionaryKeys(String rowKey ) { return  _dictionaryKeys( \"" + columnFamilyName + "\", rowKey ); }", ctClass);
+        ctClass.addMethod(dictionaryKeys);
+
         // find
         CtMethod find = CtMethod.make("public static MapModel find(String rowKey, String dictionaryKey) { return  _find( \"" + columnFamilyName + "\", rowKey, dictionaryKey); }", ctClass);
         ctClass.addMethod(find);
@@ -14,6 +14,7 @@ import play.exceptions.UnexpectedException;
 import play.modules.cassandra.jetlang.CassandraMonitor;
 import play.modules.cassandra.providers.CassandraProvider;
 import play.modules.cassandra.providers.H2Provider;
+import play.modules.cassandra.providers.ScanEngine;
 
 import javax.persistence.ManyToMany;
 import java.lang.annotation.Annotation;
@@ -28,6 +29,7 @@ public class CassandraPlugin extends PlayPlugin {
 	private final CassandraEnhancer e_ = new CassandraEnhancer();
     private static CassandraDB _instance;
     private static CassandraMonitor _cassandraMonitor;
+    private static CounterBuffer _counterBuffer;
 
     private static CassandraDB initDataStore(Boolean useMemDb) {
         if ( null == _instance ) {
@@ -71,20 +73,76 @@ public class CassandraPlugin extends PlayPlugin {
         sb.append(String.format("Node Discovery Type:       %s\r\n", nodeDiscoveryType.toString()));
         sb.append(String.format("Connection Pool Type:      %s\r\n", connectionPoolType.toString()));
         sb.append("Hosts:\r\n" + _instance.getHosts());
+        if ( null != _cassandraMonitor ) {
+            sb.append("\r\nWrite Behind\r\n");
+            sb.append("~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~\r\n");
+            sb.append(String.format("Queue Depth:               %d / %d\r\n", _cassandraMonitor.getQueueDepth(), _cassandraMonitor.getCapacity()));
+            sb.append(String.format("Fiber Queue Depths:        %s\r\n", Arrays.toString(_cassandraMonitor.getPartitionDepths())));
+            sb.append(String.format("Published:                 %d\r\n", _cassandraMonitor.getPublished()));
+            sb.append(String.format("Written:                   %d in %d batches\r\n", _cassandraMonitor.getWritten(), _cassandraMonitor.getBatches()));
+            sb.append(String.format("Failed:                    %d (%d batches retried)\r\n", _cassandraMonitor.getFailed(), _cassandraMonitor.getRetried()));
+            sb.append(String.format("Lag:                       %dms (max %dms)\r\n", _cassandraMonitor.getLastLag(), _cassandraMonitor.getMaxLag()));
+        }
+        if ( null != _counterBuffer ) {
+            sb.append("\r\nCounter Buffer\r\n");
+            sb.append("~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~\r\n");
+            sb.append(String.format("Pending Counters:          %d\r\n", _counterBuffer.getPendingCounters()));
+            sb.append(String.format("Increments:                %d\r\n", _counterBuffer.getIncrements()));
+            sb.append(String.format("Written:                   %d in %d batches\r\n", _counterBuffer.getWritten(), _counterBuffer.getBatches()));
+            sb.append(String.format("Failed Flushes:            %d\r\n", _counterBuffer.getFailed()));
+            sb.append(String.format("Dropped Deltas:            %d\r\n", _counterBuffer.getDropped()));
+        }
 
         return sb.toString();
     }
 
     @Override
 	public void onApplicationStart() {
-        _cassandraMonitor = new CassandraMonitor(_instance);
+        ModelReflector.clear();
         Boolean useMemDb = Boolean.parseBoolean(Play.configuration.getProperty("cassandra.usememdb", "false"));
         initDataStore(useMemDb);
+        if ( CassandraMonitor.isEnabled() ) {
+            _cassandraMonitor = new CassandraMonitor(_instance);
+        }
+        if ( CounterBuffer.isEnabled() ) {
+            _counterBuffer = new CounterBuffer(_instance);
+        }
+    }
+
+    @Override
+    public void beforeInvocation() {
+        if ( UnitOfWork.isEnabled() ) {
+            UnitOfWork.begin();
+        }
+    }
+
+    @Override
+    public void onInvocationSuccess() {
+        UnitOfWork.commit();
+    }
+
+    @Override
+    public void onInvocationException(Throwable e) {
+        UnitOfWork.rollback();
+    }
+
+    @Override
+    public void invocationFinally() {
+        // Nothing may leak into the next invocation of the thread
+        UnitOfWork.rollback();
     }
 
 	@Override
 	public void onApplicationStop() {
-        _cassandraMonitor.dispose();
+        if ( null != _cassandraMonitor ) {
+            // Writes everything still queued before the application goes away
+            _cassandraMonitor.dispose();
+            _cassandraMonitor = null;
+        }
+        if ( null != _counterBuffer ) {
+            _counterBuffer.dispose();
+            _counterBuffer = null;
+        }
 	}
 	
 	@Override
@@ -96,6 +154,13 @@ public class CassandraPlugin extends PlayPlugin {
     	return initDataStore(false);
     }
 
+    /**
+     * @return Write behind queue; null unless cassandra.writemode=async
+     */
+    static CassandraMonitor writeBehind() {
+        return _cassandraMonitor;
+    }
+
     @Override
     @SuppressWarnings({"unchecked", "deprecation"})
     public Object bind(String name, @SuppressWarnings("rawtypes") Class clazz,
@@ -167,11 +232,16 @@ public class CassandraPlugin extends PlayPlugin {
     	}
 		
 		public void save(play.modules.cassandra.Model o, boolean saveCounters) {
-            //if ( Play.mode == Play.Mode.DEV) {
+            UnitOfWork work = UnitOfWork.current();
+            if ( null != work ) {
+                work.save(o, saveCounters);
+                return;
+            }
+            if ( null != _cassandraMonitor ) {
+                _cassandraMonitor.publishSave(o, saveCounters);
+            } else {
                 ds().save(o, reflector.getColumnFamily(), saveCounters);
-            //} else {
-            //    _cassandraMonitor.publishSave(o, saveCounters);
-            //}
+            }
 		}
 		
 		@Override
@@ -221,7 +291,18 @@ public class CassandraPlugin extends PlayPlugin {
             if ( null == columnField ) {
                 throw new UnexpectedException("Column type is not found");
             }
-            return ds().getColumnValue(reflector.getColumnFamily().getName(), id, columnField.getName());
+            T value = ds().<T>getColumnValue(reflector.getColumnFamily().getName(), id, columnField.getName());
+            if ( null != _counterBuffer && columnField.isCounter() ) {
+                // Increments of this server not written yet
+                long pending = _counterBuffer.getPending(clazz, id, columnField.getName());
+                if ( 0 != pending ) {
+                    // Counter columns are always read as a Long, T is Long here
+                    @SuppressWarnings("unchecked")
+                    T total = (T) Long.valueOf((null == value ? 0L : (Long) value) + pending);
+                    return total;
+                }
+            }
+            return value;
         }
 
         public void setColumnValue(String id, String column, Object value) {
@@ -230,6 +311,16 @@ public class CassandraPlugin extends PlayPlugin {
                 throw new UnexpectedException("Column type is not found");
             }
 
+            UnitOfWork work = UnitOfWork.current();
+            if ( null != work ) {
+                work.set(clazz, id, columnField.getName(), value);
+                return;
+            }
+            if ( null != _cassandraMonitor ) {
+                // Queued behind the saves and deletes of the row already published
+                _cassandraMonitor.publishSet(clazz, id, columnField.getName(), value);
+                return;
+            }
             ds().setColumnValue(reflector.getColumnFamily().getName(), id, columnField.getName(), value);
         }
 
@@ -244,7 +335,20 @@ public class CassandraPlugin extends PlayPlugin {
             }
 
             changeAmount = dbColumn.toLong(amount);
-            return ds().increment(id, reflector.getColumnFamily().getName(), dbColumn.getName(), changeAmount);
+            return increment(dbColumn, id, changeAmount);
+        }
+
+        private boolean increment(ColumnField dbColumn, String id, long amount) {
+            UnitOfWork work = UnitOfWork.current();
+            if ( null != work ) {
+                work.increment(clazz, id, dbColumn.getName(), amount);
+                return true;
+            }
+            if ( null != _counterBuffer ) {
+                _counterBuffer.increment(clazz, id, dbColumn.getName(), amount);
+                return true;
+            }
+            return ds().increment(id, reflector.getColumnFamily().getName(), dbColumn.getName(), amount);
         }
 
         public boolean increment(String id, String column, long amount) {
@@ -255,7 +359,7 @@ public class CassandraPlugin extends PlayPlugin {
             if ( !dbColumn.isCounter()) {
                 throw new UnexpectedException("This column is not a counter type");
             }
-            return ds().increment(id, reflector.getColumnFamily().getName(), dbColumn.getName(), amount);
+            return increment(dbColumn, id, amount);
         }
 
         @Override
@@ -265,6 +369,17 @@ public class CassandraPlugin extends PlayPlugin {
                     return null;
                 }
 
+                UnitOfWork work = UnitOfWork.current();
+                if ( null != work ) {
+                    if ( work.isDeleted(clazz, id) ) {
+                        return null;
+                    }
+                    Model saved = work.getSaved(clazz, id);
+                    if ( null != saved ) {
+                        return saved;
+                    }
+                }
+
                 Model model = ds().find(clazz, reflector.getColumnFamily(), id);
                 if ( null == model ) {
                     return null;
@@ -279,6 +394,17 @@ public class CassandraPlugin extends PlayPlugin {
             }
 		}
 
+        /**
+         * @param ids Ids of the models to load
+         * @return Models found, in the order of their ids, along with the ids which were not found
+         */
+        public <T extends Model> MultiGetResult<T> findByIds(Collection<?> ids) {
+            if ( null == ids ) {
+                return new MultiGetResult<T>();
+            }
+            return ds().findMany(clazz, reflector.getColumnFamily(), ids);
+        }
+
         @SuppressWarnings("unchecked")
         public List<? extends Model> findByKey(String key, Object value) {
             try {
@@ -293,18 +419,102 @@ public class CassandraPlugin extends PlayPlugin {
             }
         }
 
+        /**
+         * Reads only the rows of the requested page. Models come back in row key order; with
+         * keywords the rows are read in order until the page is filled with models having one of
+         * the searched string properties containing the keywords, ignoring case. Column families
+         * can not be sorted or queried, so orderBy and where are rejected.
+         */
 		@Override
+		@SuppressWarnings("unchecked")
 		public List<Model> fetch(int offset, int length, String orderBy,
 				String orderDirection, List<String> properties,
 				String keywords, String where) {
-			return null;
+            if ( null != orderBy && !orderBy.trim().isEmpty() ) {
+                CassandraLogger.debug("Ignoring orderBy %s on %s, rows come back in key order", orderBy, clazz.getSimpleName());
+            }
+            checkWhere(where);
+            if ( null == keywords || keywords.trim().isEmpty() ) {
+                return (List<Model>) ds().all(clazz).fetch(offset, length);
+            }
+            KeywordFilter filter = new KeywordFilter(properties, keywords);
+            List<Model> models = new ArrayList<Model>();
+            int skipped = 0;
+            for ( play.db.Model model : ds().all(clazz) ) {
+                if ( models.size() >= length ) {
+                    break;
+                }
+                if ( !filter.matches(model) ) {
+                    continue;
+                }
+                if ( skipped < offset ) {
+                    skipped++;
+                } else {
+                    models.add(model);
+                }
+            }
+            return models;
 		}
 
+        /**
+         * Counts the models matching the keywords, see {@link #fetch}
+         */
 		@Override
 		public Long count(List<String> properties, String keywords, String where) {
-            return null;
+            checkWhere(where);
+            if ( null == keywords || keywords.trim().isEmpty() ) {
+                return count();
+            }
+            KeywordFilter filter = new KeywordFilter(properties, keywords);
+            long count = 0;
+            for ( play.db.Model model : ds().all(clazz) ) {
+                if ( filter.matches(model) ) {
+                    count++;
+                }
+            }
+            return count;
 		}
 
+        private void checkWhere(String where) {
+            if ( null != where && !where.trim().isEmpty() ) {
+                throw new UnsupportedOperationException("Models of " + clazz.getSimpleName() + " can not be filtered with a where clause");
+            }
+        }
+
+        /**
+         * Matches the models having a string property which contains the keywords, ignoring case
+         */
+        private class KeywordFilter {
+            private final List<ColumnField> fields = new ArrayList<ColumnField>();
+            private final String keywords;
+
+            /**
+             * @param properties Java names of the properties searched; null or empty to search every string property
+             */
+            KeywordFilter(List<String> properties, String keywords) {
+                this.keywords = keywords.trim().toLowerCase();
+                for ( ColumnField field : reflector.getColumnFields() ) {
+                    if ( String.class.equals(field.getType()) && (null == properties || properties.isEmpty() || properties.contains(field.getFieldName())) ) {
+                        fields.add(field);
+                    }
+                }
+            }
+
+            boolean matches(Object model) {
+                try {
+                    for ( ColumnField field : fields ) {
+                        Object value = field.get(model);
+                        if ( null != value && value.toString().toLowerCase().contains(keywords) ) {
+                            return true;
+                        }
+                    }
+                } catch ( IllegalAccessException e ) {
+                    throw new UnexpectedException(e);
+                }
+                return false;
+            }
+        }
+
         public long count() {
             try {
                 return ds().count(reflector.getColumnFamily());
@@ -313,21 +523,60 @@ public class CassandraPlugin extends PlayPlugin {
             }
         }
 
+        /**
+         * @param timeBudget Milliseconds after which counting stops with an estimate; 0 for no limit
+         * @param listener Notified of the progress of the count; may be null
+         * @return Count of the models, approximate if the time budget ran out
+         */
+        public CountResult count(long timeBudget, CountListener listener) {
+            return ds().count(reflector.getColumnFamily(), timeBudget, listener);
+        }
+
         @Override
         public void deleteAll() {
-            //if ( Play.mode == Play.Mode.DEV ) {
+            if ( null != _cassandraMonitor ) {
+                // Ordered after the writes already queued; callers expect the rows gone on return
+                _cassandraMonitor.deleteAll(reflector.getColumnFamily());
+            } else {
                 ds().deleteAll(reflector.getColumnFamily());
-            //} else {
-            //    _cassandraMonitor.publishDelete(reflector.getColumnFamily());
-            //}
+            }
         }
 
         public void delete(play.modules.cassandra.Model model) {
+            // Saving the model again writes the whole row and reads its counters
+            model._setSnapshot(null);
+            model._setCounters(null);
+            UnitOfWork work = UnitOfWork.current();
+            if ( null != work ) {
+                work.delete(clazz, model._key());
+                return;
+            }
+            if ( null != _cassandraMonitor ) {
+                _cassandraMonitor.publishDelete(model);
+                return;
+            }
             ds().delete(clazz, reflector.getColumnFamily(), model._key());
         }
 
-        public CassandraQuery findAll() {
-            return new CassandraQuery(ds().all(clazz));
+        // The class is a Cassandra model, so are the models of its cursor
+        @SuppressWarnings("unchecked")
+        public CassandraQuery<play.modules.cassandra.Model> findAll() {
+            return new CassandraQuery<play.modules.cassandra.Model>((ModelCursor<play.modules.cassandra.Model>) ds().all(clazz));
+        }
+
+        public ModelSpliterator<? extends play.db.Model> spliterator() {
+            return ds().spliterator(clazz);
+        }
+
+        /**
+         * @param visitor Receives every model, concurrently from the scan threads
+         * @return Number of models visited
+         */
+        // The enhanced Model.scan() of the class passes a visitor of the class, the spliterator
+        // returns models of the class
+        @SuppressWarnings("unchecked")
+        public long scan(ModelVisitor<? extends play.db.Model> visitor) {
+            return ScanEngine.visit((ModelSpliterator<play.db.Model>) ds().spliterator(clazz), (ModelVisitor<play.db.Model>) visitor);
         }
 
         @Override
@@ -370,9 +619,8 @@ public class CassandraPlugin extends PlayPlugin {
                         modelProperty.isMultiple = true;
                         modelProperty.relationType = fieldType;
                         modelProperty.choices = new Model.Choices() {
-                            @SuppressWarnings("unchecked")
                             public List<Object> list() {
-                                return (List<Object>) findAll().fetch();
+                                return new ArrayList<Object>(findAll().fetch());
                             }
                         };
                     }
@@ -1,30 +1,98 @@
 package play.modules.cassandra;
 
-import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Query over all the models of a class. Nothing is read until one of the fetch methods
+ * is called, and then only the rows asked for: limits shorten the key range queries and
+ * skipped rows are read as keys only.
+ *
+ * <pre>
+ *     CassandraQuery&lt;Account&gt; query = Account.all().from(token);
+ *     List&lt;Account&gt; page = query.fetch(20);
+ *     String next = query.getPageToken();
+ * </pre>
+ */
 public class CassandraQuery<T extends Model> {
-    private List<T> _results;
+    private ModelCursor<T> _cursor;
+    private int _offset = 0;
+    private int _limit = -1;
+
+    public CassandraQuery(ModelCursor<T> cursor) {
+        _cursor = cursor;
+    }
 
     public CassandraQuery(List<T> models) {
-        _results = models;
+        this(new ListModelCursor<T>(models));
+    }
+
+    /**
+     * @param pageToken Token from {@link #getPageToken()} of a previous query; null to start from the beginning
+     * @return This query, continuing after the model the token was taken at
+     */
+    public CassandraQuery<T> from(String pageToken) {
+        _cursor = _cursor.resume(pageToken);
+        return this;
+    }
+
+    /**
+     * @param offset Number of models skipped before the first one fetched
+     * @return This query
+     */
+    public CassandraQuery<T> offset(int offset) {
+        _offset = Math.max(0, offset);
+        return this;
+    }
+
+    /**
+     * @param limit Maximum number of models fetched
+     * @return This query
+     */
+    public CassandraQuery<T> limit(int limit) {
+        _limit = Math.max(0, limit);
+        return this;
     }
 
+    /**
+     * @return Models of the query; without offset or limit the rows are streamed page by page as the list is iterated
+     */
     public List<T> fetch() {
-        return _results;
+        if ( _limit < 0 && _offset == 0 ) {
+            return _cursor;
+        }
+        return _cursor.fetch(_offset, _limit < 0 ? Integer.MAX_VALUE : _limit);
     }
 
+    /**
+     * @param max Maximum number of models to return
+     * @return Up to max models, reading about max rows
+     */
     public List<T> fetch(int max) {
-        if ( _results.isEmpty() ) {
-            return new ArrayList<T>();
-        }
-        return  _results.subList(0, Math.max(_results.size(), max));
+        return _cursor.fetch(_offset, _limit < 0 ? max : Math.min(max, _limit));
+    }
+
+    /**
+     * @param page Page number, starting at 1
+     * @param length Number of models per page
+     * @return Models of the page
+     */
+    public List<T> fetch(int page, int length) {
+        int offset = _offset + Math.max(0, page - 1) * length;
+        return _cursor.fetch(offset, length);
     }
 
     public T first() {
-        if ( _results.isEmpty()) {
+        List<T> models = _cursor.fetch(_offset, 1);
+        if ( models.isEmpty() ) {
             return null;
         }
-        return _results.get(0);
+        return models.get(0);
+    }
+
+    /**
+     * @return Token positioned after the last model fetched, for {@link #from(String)}; null if none was
+     */
+    public String getPageToken() {
+        return _cursor.getPageToken();
     }
 }
@@ -3,12 +3,19 @@ package play.modules.cassandra;
 import com.netflix.astyanax.mapping.Column;
 import com.netflix.astyanax.mapping.Id;
 import net.sf.oval.constraint.NotNull;
+import org.joda.time.DateTime;
 import play.exceptions.UnexpectedException;
+import play.modules.cassandra.codecs.ColumnCodec;
+import play.modules.cassandra.codecs.ColumnCodecs;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 
 import static play.modules.cassandra.CassandraLogger.trace;
 
@@ -20,17 +27,28 @@ import static play.modules.cassandra.CassandraLogger.trace;
  * Time: 12:55 PM
  */
 public class ColumnField {
+    /**
+     * Snapshot of a value which can not be compared, such as a mutable object; always changed
+     */
+    public static final Object DIRTY = new Object();
+
     private String _name;
     private Boolean _idField;
     private Boolean _counter;
     private Boolean _decimal;
     private Boolean _isList;
     private Boolean _isIndex;
+    private Boolean _isRelation;
+    private Boolean _isMapModelList;
+    private boolean _lazy = false;
     private Integer _scale;
     private Class<?> _type;
     private Class<?> _genericType;
     private Boolean _allowNull;
     private Field _sourceField;
+    private ModelAccessor _accessor;
+    private int _index = -1;
+    private volatile CompiledCodec _codec;
 
 
     public ColumnField(Field field) {
@@ -62,6 +80,9 @@ public class ColumnField {
             _genericType = (Class<?>) listType.getActualTypeArguments()[0];
         }
 
+        _isRelation = play.db.Model.class.isAssignableFrom(_genericType);
+        _isMapModelList = _isList && MapModel.class.isAssignableFrom(_genericType);
+
         if ( _counter && _decimal) {
             try {
                 play.modules.cassandra.annotations.Counter counterAnnotation = field.getAnnotation(play.modules.cassandra.annotations.Counter.class);
@@ -89,6 +110,35 @@ public class ColumnField {
         return _isList;
     }
 
+    /**
+     * @return TRUE if the column references another model, either directly or through a list
+     */
+    public Boolean isRelation() {
+        return _isRelation;
+    }
+
+    /**
+     * @return TRUE if the referenced model is loaded on first access instead of with the row
+     */
+    public boolean isLazy() {
+        return _lazy;
+    }
+
+    void setLazy(boolean lazy) {
+        _lazy = lazy && _isRelation && !_isList;
+    }
+
+    /**
+     * @return Java name of the field
+     */
+    public String getFieldName() {
+        return _sourceField.getName();
+    }
+
+    public Boolean isMapModelList() {
+        return _isMapModelList;
+    }
+
     public Boolean isCounter() {
         return _counter;
     }
@@ -119,30 +169,196 @@ public class ColumnField {
         return _sourceField.getModifiers();
     }
 
+    /**
+     * Routes field reads and writes through the model's accessor instead of reflection
+     *
+     * @param accessor Accessor for the class owning this field
+     */
+    void bind(ModelAccessor accessor) {
+        int index = accessor.indexOf(_sourceField.getName());
+        if ( index >= 0 ) {
+            _accessor = accessor;
+            _index = index;
+        }
+    }
+
+    /**
+     * Codec resolved for a revision of the registry. Published as one object so a reader never
+     * pairs the version of one resolution with the codec of another.
+     */
+    private static class CompiledCodec {
+        final ColumnCodec codec;
+        final int version;
+
+        CompiledCodec(ColumnCodec codec, int version) {
+            this.codec = codec;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Resolves the codec used to store this column
+     */
+    void compileCodec() {
+        int version = ColumnCodecs.version();
+        _codec = new CompiledCodec(ColumnCodecs.codecFor(this), version);
+    }
+
+    /**
+     * @return Codec storing this column; resolved again only if codecs were registered since
+     */
+    public ColumnCodec getCodec() {
+        CompiledCodec compiled = _codec;
+        if ( null == compiled || compiled.version != ColumnCodecs.version() ) {
+            compileCodec();
+            compiled = _codec;
+        }
+        return compiled.codec;
+    }
+
     public void set(Object o, Object val) throws IllegalAccessException {
-        _sourceField.set(o, val);
+        if ( null != _accessor ) {
+            try {
+                _accessor.set(o, _index, val);
+            } catch ( ClassCastException e ) {
+                throw illegalValue(val, e);
+            } catch ( NullPointerException e ) {
+                throw illegalValue(val, e);
+            }
+        } else {
+            _sourceField.set(o, val);
+        }
     }
 
     public Object get(Object o) throws IllegalAccessException {
+        if ( null != _accessor ) {
+            try {
+                return _accessor.get(o, _index);
+            } catch ( ClassCastException e ) {
+                throw illegalTarget(o, e);
+            }
+        }
         return _sourceField.get(o);
     }
 
     public long getLong(Object o) throws IllegalAccessException {
+        if ( null != _accessor ) {
+            try {
+                return _accessor.getLong(o, _index);
+            } catch ( ClassCastException e ) {
+                throw illegalTarget(o, e);
+            } catch ( NullPointerException e ) {
+                throw illegalTarget(o, e);
+            }
+        }
         return _sourceField.getLong(o);
     }
 
+    public void setLong(Object o, long val) throws IllegalAccessException {
+        if ( null != _accessor ) {
+            try {
+                _accessor.setLong(o, _index, val);
+            } catch ( ClassCastException e ) {
+                throw illegalValue(val, e);
+            }
+        } else {
+            _sourceField.setLong(o, val);
+        }
+    }
+
     public boolean getBoolean(Object o ) throws IllegalAccessException {
+        if ( null != _accessor ) {
+            try {
+                return _accessor.getBoolean(o, _index);
+            } catch ( ClassCastException e ) {
+                throw illegalTarget(o, e);
+            } catch ( NullPointerException e ) {
+                throw illegalTarget(o, e);
+            }
+        }
         return _sourceField.getBoolean(o);
     }
 
+    public void setBoolean(Object o, boolean val) throws IllegalAccessException {
+        if ( null != _accessor ) {
+            try {
+                _accessor.setBoolean(o, _index, val);
+            } catch ( ClassCastException e ) {
+                throw illegalValue(val, e);
+            }
+        } else {
+            _sourceField.setBoolean(o, val);
+        }
+    }
+
     public double getDouble(Object o) throws IllegalAccessException {
+        if ( null != _accessor ) {
+            try {
+                return _accessor.getDouble(o, _index);
+            } catch ( ClassCastException e ) {
+                throw illegalTarget(o, e);
+            } catch ( NullPointerException e ) {
+                throw illegalTarget(o, e);
+            }
+        }
         return _sourceField.getDouble(o);
     }
 
+    public void setDouble(Object o, double val) throws IllegalAccessException {
+        if ( null != _accessor ) {
+            try {
+                _accessor.setDouble(o, _index, val);
+            } catch ( ClassCastException e ) {
+                throw illegalValue(val, e);
+            }
+        } else {
+            _sourceField.setDouble(o, val);
+        }
+    }
+
     public int getInt(Object o) throws IllegalAccessException {
+        if ( null != _accessor ) {
+            try {
+                return _accessor.getInt(o, _index);
+            } catch ( ClassCastException e ) {
+                throw illegalTarget(o, e);
+            } catch ( NullPointerException e ) {
+                throw illegalTarget(o, e);
+            }
+        }
         return _sourceField.getInt(o);
     }
 
+    public void setInt(Object o, int val) throws IllegalAccessException {
+        if ( null != _accessor ) {
+            try {
+                _accessor.setInt(o, _index, val);
+            } catch ( ClassCastException e ) {
+                throw illegalValue(val, e);
+            }
+        } else {
+            _sourceField.setInt(o, val);
+        }
+    }
+
+    // The generated accessor casts where java.lang.reflect.Field checks; callers expect the
+    // IllegalArgumentException thrown by Field
+    private IllegalArgumentException illegalValue(Object val, RuntimeException cause) {
+        IllegalArgumentException e = new IllegalArgumentException(String.format("Can not set %s field %s.%s to %s",
+                _sourceField.getType().getName(), _sourceField.getDeclaringClass().getName(), _sourceField.getName(),
+                null == val ? "null value" : val.getClass().getName()));
+        e.initCause(cause);
+        return e;
+    }
+
+    private IllegalArgumentException illegalTarget(Object o, RuntimeException cause) {
+        IllegalArgumentException e = new IllegalArgumentException(String.format("Can not read %s field %s.%s from %s",
+                _sourceField.getType().getName(), _sourceField.getDeclaringClass().getName(), _sourceField.getName(),
+                null == o ? "null" : o.getClass().getName()));
+        e.initCause(cause);
+        return e;
+    }
+
 
     /**
      * Converts a value to long based on the properties of this column
@@ -173,6 +389,66 @@ public class ColumnField {
         return targetValue;
     }
 
+    /**
+     * Captures the value of this field in a form which can be compared after the model was
+     * changed. Immutable values are kept as they are, dates as their time, relations as the
+     * keys of the related models (pending lazy references and relation lists are not loaded).
+     *
+     * @param o Model owning the field
+     * @return Comparable form of the value; {@link #DIRTY} if the value can not be compared
+     */
+    public Object snapshot(Object o) throws IllegalAccessException {
+        Object value = get(o);
+        if ( _isRelation ) {
+            if ( _isList ) {
+                if ( value instanceof RelationList ) {
+                    return new ArrayList<Object>(((RelationList<?>) value).getIds());
+                }
+                if ( null == value ) {
+                    return null;
+                }
+                List<Object> ids = new ArrayList<Object>();
+                for ( Object model : (Collection<?>) value ) {
+                    if ( null != model && null != ((play.db.Model) model)._key() ) {
+                        ids.add(((play.db.Model) model)._key().toString());
+                    }
+                }
+                return ids;
+            }
+            if ( null == value ) {
+                LazyRelation relation = o instanceof Model ? ((Model) o)._getLazyRelation(getFieldName()) : null;
+                return null == relation ? null : relation.getId();
+            }
+            Object key = ((play.db.Model) value)._key();
+            return null == key ? DIRTY : key.toString();
+        }
+        if ( null == value ) {
+            return null;
+        }
+        if ( value instanceof Date ) {
+            return ((Date) value).getTime();
+        }
+        if ( value instanceof String || value instanceof Integer || value instanceof Long || value instanceof Double
+                || value instanceof Float || value instanceof Short || value instanceof Byte || value instanceof BigDecimal
+                || value instanceof Boolean || value instanceof Character || value instanceof Enum
+                || value instanceof UUID || value instanceof DateTime ) {
+            return value;
+        }
+        return DIRTY;
+    }
+
+    /**
+     * @param before Snapshot taken when the model was read or last saved
+     * @param after Snapshot of the current value
+     * @return TRUE if the column must be written again
+     */
+    public static boolean isChanged(Object before, Object after) {
+        if ( DIRTY == before || DIRTY == after ) {
+            return true;
+        }
+        return null == before ? null != after : !before.equals(after);
+    }
+
     public boolean isIndex() {
         return _isIndex;
     }
@@ -0,0 +1,14 @@
+package play.modules.cassandra;
+
+/**
+ * Receives the progress of a count or scan while it runs. Calls come from the threads
+ * scanning the column family, one after every page of rows.
+ */
+public interface CountListener {
+    /**
+     * @param counted Rows counted so far
+     * @param rangesDone Token ranges fully counted
+     * @param rangesTotal Token ranges being counted
+     */
+    public void progress(long counted, int rangesDone, int rangesTotal);
+}
@@ -0,0 +1,62 @@
+package play.modules.cassandra;
+
+/**
+ * Outcome of a count. A count stopped by its time budget is not complete; its
+ * estimate extrapolates the rows counted to the part of the ring not reached.
+ */
+public class CountResult {
+    private final long _count;
+    private final long _estimate;
+    private final boolean _complete;
+    private final long _elapsed;
+    private final int _rangesDone;
+    private final int _rangesTotal;
+
+    public CountResult(long count, long estimate, boolean complete, long elapsed, int rangesDone, int rangesTotal) {
+        _count = count;
+        _estimate = estimate;
+        _complete = complete;
+        _elapsed = elapsed;
+        _rangesDone = rangesDone;
+        _rangesTotal = rangesTotal;
+    }
+
+    /**
+     * @return Rows counted; exact when the count is complete
+     */
+    public long getCount() {
+        return _count;
+    }
+
+    /**
+     * @return Approximate number of rows in the column family; equals the count when complete
+     */
+    public long getEstimate() {
+        return _estimate;
+    }
+
+    public boolean isComplete() {
+        return _complete;
+    }
+
+    /**
+     * @return Time spent counting, in milliseconds
+     */
+    public long getElapsed() {
+        return _elapsed;
+    }
+
+    public int getRangesDone() {
+        return _rangesDone;
+    }
+
+    public int getRangesTotal() {
+        return _rangesTotal;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CountResult[count=%d,estimate=%d,complete=%s,elapsed=%dms,ranges=%d/%d]",
+                _count, _estimate, _complete, _elapsed, _rangesDone, _rangesTotal);
+    }
+}
@@ -0,0 +1,340 @@
+package play.modules.cassandra;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.astyanax.connectionpool.exceptions.MaxConnsPerHostReachedException;
+import com.netflix.astyanax.connectionpool.exceptions.NoAvailableHostsException;
+import com.netflix.astyanax.connectionpool.exceptions.PoolTimeoutException;
+import com.netflix.astyanax.connectionpool.exceptions.ThrottledException;
+import play.Play;
+
+import java.net.ConnectException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates counter increments in memory and writes them periodically.
+ *
+ * With cassandra.counters.buffer=true Model.increment() and Model.decrement() only add the
+ * amount to a pending delta kept per counter column. Every cassandra.counters.interval
+ * milliseconds, or as soon as cassandra.counters.maxpending increments are pending, the deltas
+ * are written with one counter batch, so a hot counter costs one write per interval instead
+ * of one per increment. Model.get() of a counter adds the pending delta of this server to the
+ * stored value; models read with findById() and the reads of other servers only see what was
+ * written.
+ *
+ * Counter increments are not idempotent, so a failed flush is only written again when the error
+ * shows the batch never reached Cassandra (no host available, connection pool exhausted, connection
+ * refused); its deltas are kept for the next flush. After any other error the batch may have been
+ * applied, its deltas are logged and dropped instead of risking counting them twice. Increments
+ * still pending when the application stops are written first; increments of a server which dies
+ * are lost.
+ */
+public class CounterBuffer {
+    private final CassandraDB _ds;
+    private final ConcurrentMap<CounterKey, Delta> _pending = new ConcurrentHashMap<CounterKey, Delta>();
+    private final ScheduledExecutorService _scheduler;
+    private final int _maxPending;
+    private final AtomicLong _pendingIncrements = new AtomicLong();
+    private final AtomicBoolean _flushQueued = new AtomicBoolean();
+
+    private final AtomicLong _increments = new AtomicLong();
+    private final AtomicLong _written = new AtomicLong();
+    private final AtomicLong _batches = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+    private final AtomicLong _dropped = new AtomicLong();
+
+    /**
+     * Counter column of a row
+     */
+    static class CounterKey {
+        final UnitOfWork.RowKey row;
+        final String column;
+
+        CounterKey(Class<?> type, Object id, String column) {
+            this.row = new UnitOfWork.RowKey(type, id);
+            this.column = column;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if ( !(o instanceof CounterKey) ) {
+                return false;
+            }
+            CounterKey other = (CounterKey) o;
+            return row.equals(other.row) && column.equals(other.column);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * row.hashCode() + column.hashCode();
+        }
+    }
+
+    /**
+     * Delta of a counter column: the increments not written yet and the part of them taken by the
+     * flush running now. Both are changed under the same lock, so getPending() never sees a delta
+     * in neither or in both.
+     */
+    static class Delta {
+        private long pending;
+        private long writing;
+        // Removed from the map, increments must go to its replacement
+        private boolean removed;
+
+        synchronized boolean add(long amount) {
+            if ( removed ) {
+                return false;
+            }
+            pending += amount;
+            return true;
+        }
+
+        synchronized long get() {
+            return pending + writing;
+        }
+
+        synchronized long getPending() {
+            return pending;
+        }
+
+        /**
+         * @return Delta moved from pending to writing
+         */
+        synchronized long take() {
+            long delta = pending;
+            writing += delta;
+            pending = 0;
+            return delta;
+        }
+
+        /**
+         * The delta taken is in Cassandra, or given up
+         */
+        synchronized void written(long delta) {
+            writing -= delta;
+        }
+
+        /**
+         * The delta taken was not sent, it goes back to pending
+         */
+        synchronized void restore(long delta) {
+            writing -= delta;
+            pending += delta;
+        }
+
+        /**
+         * @return TRUE if the counter had no delta and takes no more increments
+         */
+        synchronized boolean remove() {
+            if ( 0 != pending || 0 != writing ) {
+                return false;
+            }
+            removed = true;
+            return true;
+        }
+    }
+
+    public CounterBuffer(CassandraDB ds) {
+        _ds = ds;
+        _maxPending = Math.max(1, Integer.parseInt(Play.configuration.getProperty("cassandra.counters.maxpending", "10000")));
+        long interval = Math.max(1, Long.parseLong(Play.configuration.getProperty("cassandra.counters.interval", "1000")));
+        _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cassandra-counters-%d")
+                .setDaemon(true)
+                .build());
+        _scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return TRUE if increments are aggregated before they are written (cassandra.counters.buffer)
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(Play.configuration.getProperty("cassandra.counters.buffer", "false"));
+    }
+
+    /**
+     * Adds an increment to the pending delta of the counter
+     *
+     * @param type Model class
+     * @param id Key of the row
+     * @param column Counter column name
+     * @param amount Amount to add, negative to decrement
+     */
+    public void increment(Class<?> type, Object id, String column, long amount) {
+        add(new CounterKey(type, id, column), amount);
+        _increments.incrementAndGet();
+        if ( _pendingIncrements.incrementAndGet() >= _maxPending && _flushQueued.compareAndSet(false, true) ) {
+            _scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+        }
+    }
+
+    private void add(CounterKey key, long amount) {
+        while ( true ) {
+            Delta counter = _pending.get(key);
+            if ( null == counter ) {
+                counter = new Delta();
+                Delta existing = _pending.putIfAbsent(key, counter);
+                if ( null != existing ) {
+                    counter = existing;
+                }
+            }
+            if ( counter.add(amount) ) {
+                return;
+            }
+            _pending.remove(key, counter);
+        }
+    }
+
+    /**
+     * @return Delta added to the counter on this server and not written yet
+     */
+    public long getPending(Class<?> type, Object id, String column) {
+        Delta counter = _pending.get(new CounterKey(type, id, column));
+        return null == counter ? 0L : counter.get();
+    }
+
+    /**
+     * Writes every pending delta with one counter batch. Counters without a pending delta
+     * since the previous flush are dropped from the buffer.
+     */
+    public synchronized void flush() {
+        _flushQueued.set(false);
+        _pendingIncrements.set(0);
+        UnitOfWork work = new UnitOfWork();
+        Map<CounterKey, Long> deltas = new HashMap<CounterKey, Long>();
+        for ( Map.Entry<CounterKey, Delta> entry : _pending.entrySet() ) {
+            Delta counter = entry.getValue();
+            long delta = counter.take();
+            if ( 0 != delta ) {
+                CounterKey key = entry.getKey();
+                work.increment(key.row.getType(), key.row.getId(), key.column, delta);
+                deltas.put(key, delta);
+            } else if ( counter.remove() ) {
+                _pending.remove(entry.getKey(), counter);
+            }
+        }
+        if ( deltas.isEmpty() ) {
+            return;
+        }
+        try {
+            _ds.flush(work);
+        } catch (RuntimeException e) {
+            _failed.incrementAndGet();
+            if ( notSent(e) ) {
+                CassandraLogger.error(e, "Could not write %d counter deltas, keeping them for the next flush", deltas.size());
+                for ( Map.Entry<CounterKey, Long> delta : deltas.entrySet() ) {
+                    _pending.get(delta.getKey()).restore(delta.getValue());
+                }
+                return;
+            }
+            // The batch may have been applied, writing it again could count it twice
+            CassandraLogger.error(e, "Counter batch of %d deltas failed and may have been applied, it is not written again", deltas.size());
+            for ( Map.Entry<CounterKey, Long> delta : deltas.entrySet() ) {
+                CounterKey key = delta.getKey();
+                CassandraLogger.error("Counter delta possibly lost: %s:%s %s %d", key.row.getType().getSimpleName(), key.row.getId(), key.column, delta.getValue());
+                _pending.get(key).written(delta.getValue());
+            }
+            _dropped.addAndGet(deltas.size());
+            return;
+        }
+        for ( Map.Entry<CounterKey, Long> delta : deltas.entrySet() ) {
+            _pending.get(delta.getKey()).written(delta.getValue());
+        }
+        _written.addAndGet(deltas.size());
+        _batches.incrementAndGet();
+    }
+
+    /**
+     * @return TRUE if the error shows the batch was never sent to Cassandra
+     */
+    static boolean notSent(Throwable e) {
+        for ( Throwable cause = e; null != cause; cause = cause.getCause() ) {
+            if ( cause instanceof NoAvailableHostsException
+                    || cause instanceof PoolTimeoutException
+                    || cause instanceof MaxConnsPerHostReachedException
+                    || cause instanceof ThrottledException
+                    || cause instanceof ConnectException ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Counters with a delta not written yet
+     */
+    public int getPendingCounters() {
+        int pending = 0;
+        for ( Delta counter : _pending.values() ) {
+            if ( 0 != counter.getPending() ) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * @return Increments received
+     */
+    public long getIncrements() {
+        return _increments.get();
+    }
+
+    /**
+     * @return Counter deltas written, one per counter and flush
+     */
+    public long getWritten() {
+        return _written.get();
+    }
+
+    public long getBatches() {
+        return _batches.get();
+    }
+
+    /**
+     * @return Flushes which failed
+     */
+    public long getFailed() {
+        return _failed.get();
+    }
+
+    /**
+     * @return Counter deltas not written again after a failure which may have applied them
+     */
+    public long getDropped() {
+        return _dropped.get();
+    }
+
+    /**
+     * Stops the periodic flush and writes the deltas still pending
+     */
+    public void dispose() {
+        _scheduler.shutdown();
+        try {
+            _scheduler.awaitTermination(Long.parseLong(Play.configuration.getProperty("cassandra.counters.stoptimeout", "30000")), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if ( getPendingCounters() > 0 ) {
+            CassandraLogger.error("Counter buffer: %d counters were not written before stopping", getPendingCounters());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package play.modules.cassandra;
+
+/**
+ * Handle to a model referenced by a column which has not been loaded yet.
+ * The referenced model is read by its {@link RelationBatch}, together with the
+ * other references of the same result set, the first time one of them is used.
+ */
+public class LazyRelation {
+    private final RelationBatch _batch;
+    private final ColumnField _field;
+    private final String _id;
+
+    LazyRelation(RelationBatch batch, ColumnField field, String id) {
+        _batch = batch;
+        _field = field;
+        _id = id;
+    }
+
+    /**
+     * @return Column field holding the reference
+     */
+    public ColumnField getField() {
+        return _field;
+    }
+
+    /**
+     * @return Key of the referenced model
+     */
+    public String getId() {
+        return _id;
+    }
+
+    /**
+     * @return Referenced model; null if it does not exist
+     */
+    public play.db.Model get() {
+        return _batch.get(_field, _id);
+    }
+
+    /**
+     * Gives the reference up without loading it, the field was assigned another value
+     */
+    public void release() {
+        _batch.release(_field, _id);
+    }
+}
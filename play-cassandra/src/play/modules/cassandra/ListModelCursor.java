@@ -0,0 +1,65 @@
+package play.modules.cassandra;
+
+import java.util.*;
+
+/**
+ * ModelCursor over models already held in memory. Page tokens are offsets into the list.
+ */
+public class ListModelCursor<T extends play.db.Model> extends AbstractList<T> implements ModelCursor<T> {
+    private final List<T> _models;
+    private final int _offset;
+    private int _position = -1;
+
+    public ListModelCursor(List<T> models) {
+        this(models, 0);
+    }
+
+    private ListModelCursor(List<T> models, int offset) {
+        _models = models;
+        _offset = offset;
+    }
+
+    @Override
+    public T get(int i) {
+        T model = _models.get(_offset + i);
+        _position = Math.max(_position, i);
+        return model;
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, _models.size() - _offset);
+    }
+
+    @Override
+    public List<T> fetch(int max) {
+        return fetch(0, max);
+    }
+
+    @Override
+    public List<T> fetch(int offset, int max) {
+        List<T> models = new ArrayList<T>();
+        int end = (int) Math.min((long) offset + max, size());
+        for ( int i = Math.max(0, offset); i < end; i++ ) {
+            models.add(get(i));
+        }
+        return models;
+    }
+
+    @Override
+    public String getPageToken() {
+        return _position < 0 ? null : String.valueOf(_offset + _position + 1);
+    }
+
+    @Override
+    public ModelCursor<T> resume(String pageToken) {
+        if ( null == pageToken ) {
+            return new ListModelCursor<T>(_models, 0);
+        }
+        try {
+            return new ListModelCursor<T>(_models, Integer.parseInt(pageToken));
+        } catch ( NumberFormatException e ) {
+            throw new IllegalArgumentException("Invalid page token: " + pageToken);
+        }
+    }
+}
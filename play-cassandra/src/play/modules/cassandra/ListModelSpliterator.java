@@ -0,0 +1,57 @@
+package play.modules.cassandra;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * ModelSpliterator over models already held in memory, split by index.
+ */
+public class ListModelSpliterator<T extends play.db.Model> implements ModelSpliterator<T> {
+    private final List<T> _models;
+    private int _index;
+    private int _end;
+
+    public ListModelSpliterator(List<T> models) {
+        this(models, 0, models.size());
+    }
+
+    private ListModelSpliterator(List<T> models, int index, int end) {
+        _models = models;
+        _index = index;
+        _end = end;
+    }
+
+    @Override
+    public ModelSpliterator<T> trySplit() {
+        int middle = (_index + _end) >>> 1;
+        if ( middle <= _index ) {
+            return null;
+        }
+        ModelSpliterator<T> split = new ListModelSpliterator<T>(_models, middle, _end);
+        _end = middle;
+        return split;
+    }
+
+    @Override
+    public long estimateSize() {
+        return _end - _index;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return _index < _end;
+    }
+
+    @Override
+    public T next() {
+        if ( _index >= _end ) {
+            throw new NoSuchElementException();
+        }
+        return _models.get(_index++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
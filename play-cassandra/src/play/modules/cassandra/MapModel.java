@@ -5,16 +5,19 @@ import play.exceptions.DatabaseException;
 import play.modules.cassandra.providers.CassandraProvider;
 import play.modules.cassandra.providers.H2Provider;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * Defines a mapping model (composite column)
+ *
+ * The keys put and removed since the map was read or last written are tracked, saving it
+ * writes those columns and deletes the removed ones. The keySet(), values() and entrySet()
+ * views track their removals and Map.Entry.setValue() as well.
  */
 public class MapModel extends HashMap<String, String> {
     private Boolean _changed = false;
+    private final Set<String> _puts = new HashSet<String>();
+    private final Set<String> _removes = new HashSet<String>();
     private String _key1;
     private String _key2;
     private static CassandraDB _db=null;
@@ -63,11 +66,29 @@ public class MapModel extends HashMap<String, String> {
                 "Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
     }
 
+    /**
+     * @param rowKey Row holding the dictionaries
+     * @return Dictionary names, read page by page while iterating; no values are kept
+     */
+    public static Iterable<String> dictionaryKeys(String rowKey) {
+        throw new UnsupportedOperationException(
+                "Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
+    }
+
     public static <T extends MapModel> List<T> findAll(String key) {
         throw new UnsupportedOperationException(
                 "Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
     }
 
+    /**
+     * @param key Row holding the dictionaries
+     * @return Dictionaries of the row, read page by page while iterating instead of all at once
+     */
+    public static <T extends MapModel> Iterable<T> iterate(String key) {
+        throw new UnsupportedOperationException(
+                "Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
+    }
+
     public static <T extends MapModel> T find(String rowKey, String dictionaryKey) {
         throw new UnsupportedOperationException(
                 "Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
@@ -93,23 +114,34 @@ public class MapModel extends HashMap<String, String> {
 
     protected static List<String> _getDictionaryKeys(String cfName, String rowKey) {
         List<String> keys = new ArrayList<String>();
-        List<? extends MapModel> models = _findAll(cfName, rowKey);
-        for ( MapModel model : models ) {
-            keys.add(model.getKey2());
+        for ( String key : _dictionaryKeys(cfName, rowKey) ) {
+            keys.add(key);
         }
         return keys;
     }
 
+    protected static Iterable<String> _dictionaryKeys(String cfName, String rowKey) {
+        return ds().getDictionaryKeys(cfName, rowKey);
+    }
+
     protected static List<? extends MapModel> _findAll(String cfName, String rowKey) {
+        return ds().findComposites(mapModelClass(cfName), rowKey);
+    }
+
+    protected static <T extends MapModel> Iterable<T> _iterate(String cfName, String rowKey) {
+        return ds().<T>iterateComposites(mapModelClass(cfName), rowKey);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends MapModel> mapModelClass(String cfName) {
         String vType = cfName;
         if (!vType.startsWith("models.")) {
             vType = "models." + vType;
         }
         try {
-            Class<? extends MapModel> clazz = (Class<? extends MapModel>)Play.classloader.loadClass(vType);
-            return ds().findComposites(clazz, rowKey);
+            return (Class<? extends MapModel>)Play.classloader.loadClass(vType);
         } catch (ClassNotFoundException e) {
-            throw new DatabaseException("ClassNotFound while performing MapModel _findAll", e);
+            throw new DatabaseException("ClassNotFound while loading MapModel class " + vType, e);
         }
     }
 
@@ -135,19 +167,285 @@ public class MapModel extends HashMap<String, String> {
         }
     }
 
+    /**
+     * Writes every entry of this map with a single mutation
+     */
+    public void save() {
+        ds().writeComposite(this);
+    }
+
     public boolean isChanged() {
         return _changed;
     }
 
+    /**
+     * @return Keys put since the map was read or last written
+     */
+    public Set<String> getPuts() {
+        return Collections.unmodifiableSet(_puts);
+    }
+
+    /**
+     * @return Keys removed since the map was read or last written
+     */
+    public Set<String> getRemoves() {
+        return Collections.unmodifiableSet(_removes);
+    }
+
+    /**
+     * @return Copy of the map with its keys and the changes not written yet
+     */
+    public MapModel _copy() {
+        MapModel copy;
+        try {
+            copy = getClass().getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new DatabaseException("Could not copy MapModel " + getClass().getName(), e);
+        }
+        copy._key1 = _key1;
+        copy._key2 = _key2;
+        copy.putAll(this, false);
+        copy._puts.addAll(_puts);
+        copy._removes.addAll(_removes);
+        copy._changed = _changed;
+        return copy;
+    }
+
+    /**
+     * Forgets the tracked changes. Called by the providers once the map was read or written.
+     */
+    public void _clearChanges() {
+        _puts.clear();
+        _removes.clear();
+        _changed = false;
+    }
+
     @Override
     public String put(String s, String s1) {
+        boolean present = containsKey(s);
+        String previous = super.put(s, s1);
+        if ( !present || (null == previous ? null != s1 : !previous.equals(s1)) ) {
+            _puts.add(s);
+            _removes.remove(s);
+            _changed = true;
+        }
+        return previous;
+    }
+
+    @Override
+    public String remove(Object o) {
+        if ( !containsKey(o) ) {
+            return null;
+        }
+        removed((String) o);
+        return super.remove(o);
+    }
+
+    private void removed(String key) {
+        _puts.remove(key);
+        _removes.add(key);
         _changed = true;
-        return super.put(s, s1);
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new TrackingIterator<Map.Entry<String, String>>() {
+                    @Override
+                    Map.Entry<String, String> view(Map.Entry<String, String> entry) {
+                        return new TrackingEntry(entry);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return MapModel.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if ( !(o instanceof Map.Entry) ) {
+                    return false;
+                }
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                return containsKey(entry.getKey()) && eq(get(entry.getKey()), entry.getValue());
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                if ( !contains(o) ) {
+                    return false;
+                }
+                MapModel.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+
+            @Override
+            public void clear() {
+                MapModel.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new TrackingIterator<String>() {
+                    @Override
+                    String view(Map.Entry<String, String> entry) {
+                        return entry.getKey();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return MapModel.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                if ( !containsKey(o) ) {
+                    return false;
+                }
+                MapModel.this.remove(o);
+                return true;
+            }
+
+            @Override
+            public void clear() {
+                MapModel.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Collection<String> values() {
+        return new AbstractCollection<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new TrackingIterator<String>() {
+                    @Override
+                    String view(Map.Entry<String, String> entry) {
+                        return entry.getValue();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return MapModel.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsValue(o);
+            }
+
+            @Override
+            public void clear() {
+                MapModel.this.clear();
+            }
+        };
+    }
+
+    private static boolean eq(Object a, Object b) {
+        return null == a ? null == b : a.equals(b);
+    }
+
+    /**
+     * Iterator of a view, a removal is tracked as a remove of its key
+     */
+    private abstract class TrackingIterator<E> implements Iterator<E> {
+        private final Iterator<Map.Entry<String, String>> _entries = MapModel.super.entrySet().iterator();
+        private Map.Entry<String, String> _last = null;
+
+        abstract E view(Map.Entry<String, String> entry);
+
+        @Override
+        public boolean hasNext() {
+            return _entries.hasNext();
+        }
+
+        @Override
+        public E next() {
+            _last = _entries.next();
+            return view(_last);
+        }
+
+        @Override
+        public void remove() {
+            if ( null == _last ) {
+                throw new IllegalStateException();
+            }
+            removed(_last.getKey());
+            _entries.remove();
+            _last = null;
+        }
+    }
+
+    /**
+     * Entry of entrySet(), setting its value is tracked as a put
+     */
+    private class TrackingEntry implements Map.Entry<String, String> {
+        private final Map.Entry<String, String> _entry;
+
+        TrackingEntry(Map.Entry<String, String> entry) {
+            _entry = entry;
+        }
+
+        @Override
+        public String getKey() {
+            return _entry.getKey();
+        }
+
+        @Override
+        public String getValue() {
+            return _entry.getValue();
+        }
+
+        @Override
+        public String setValue(String value) {
+            return put(_entry.getKey(), value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if ( !(o instanceof Map.Entry) ) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            return eq(getKey(), other.getKey()) && eq(getValue(), other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return (null == getKey() ? 0 : getKey().hashCode()) ^ (null == getValue() ? 0 : getValue().hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
     }
 
     @Override
     public void clear() {
-        _changed = true;
+        if ( !isEmpty() ) {
+            _removes.addAll(super.keySet());
+            _puts.clear();
+            _changed = true;
+        }
         super.clear();
     }
 
@@ -158,13 +456,20 @@ public class MapModel extends HashMap<String, String> {
 
     /**
      * @param map Source map
-     * @param setChangedStatus Set to TRUE if this should toggle the changed status
+     * @param setChangedStatus TRUE to track the entries as puts, FALSE for entries read from the data store
      */
     protected void putAll(Map<? extends String, ? extends String> map, boolean setChangedStatus) {
-        if ( map.size() > 0 ) {
-            // Do not turn off the changed boolean if it is already on
-            _changed = _changed || setChangedStatus;
+        if ( setChangedStatus ) {
+            for ( Map.Entry<? extends String, ? extends String> entry : map.entrySet() ) {
+                put(entry.getKey(), entry.getValue());
+            }
+        } else {
+            // Entries read from the data store, nothing to write. HashMap.putAll() may call put()
+            for ( Map.Entry<? extends String, ? extends String> entry : map.entrySet() ) {
+                super.put(entry.getKey(), entry.getValue());
+                _puts.remove(entry.getKey());
+                _removes.remove(entry.getKey());
+            }
         }
-        super.putAll(map);
     }
 }
\ No newline at end of file
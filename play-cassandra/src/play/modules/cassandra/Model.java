@@ -4,7 +4,9 @@ import org.joda.time.DateTime;
 import play.Play;
 import play.data.binding.BeanWrapper;
 import play.data.validation.Validation;
+import play.exceptions.DatabaseException;
 import play.exceptions.UnexpectedException;
+import play.modules.cassandra.jetlang.CassandraMonitor;
 
 import javax.persistence.ManyToMany;
 import javax.persistence.Transient;
@@ -45,6 +47,99 @@ public class Model implements Serializable, play.db.Model
         return !saved_;
     }
 
+    // References to other models which are loaded on first access, by field name
+    @Transient
+    private transient Map<String, LazyRelation> _lazyRelations = null;
+
+    /**
+     * Defers loading of a referenced model until its getter is called
+     *
+     * @param relation Pending reference
+     */
+    public void _setLazyRelation(LazyRelation relation) {
+        if ( null == _lazyRelations ) {
+            _lazyRelations = new HashMap<String, LazyRelation>();
+        }
+        _lazyRelations.put(relation.getField().getFieldName(), relation);
+    }
+
+    /**
+     * @param fieldName Java name of the field
+     * @return Pending reference held by the field; null if the field is loaded
+     */
+    public LazyRelation _getLazyRelation(String fieldName) {
+        return null == _lazyRelations ? null : _lazyRelations.get(fieldName);
+    }
+
+    /**
+     * Loads a pending reference into its field. Called by the enhanced getter.
+     *
+     * @param fieldName Java name of the field
+     */
+    public void _resolveRelation(String fieldName) {
+        if ( null == _lazyRelations ) {
+            return;
+        }
+        LazyRelation relation = _lazyRelations.remove(fieldName);
+        if ( null != relation ) {
+            try {
+                relation.getField().set(this, relation.get());
+            } catch ( IllegalAccessException e ) {
+                throw new UnexpectedException(e);
+            }
+        }
+    }
+
+    /**
+     * Drops a pending reference when its field is assigned. Called by the enhanced setter.
+     *
+     * @param fieldName Java name of the field
+     */
+    public void _clearRelation(String fieldName) {
+        if ( null != _lazyRelations ) {
+            LazyRelation relation = _lazyRelations.remove(fieldName);
+            if ( null != relation ) {
+                relation.release();
+            }
+        }
+    }
+
+    // Column values as last read or written, see ModelReflector.snapshot()
+    @Transient
+    private transient Object[] _snapshot = null;
+
+    /**
+     * @return Snapshot of the columns as last read or written; null if the model was never read or written
+     */
+    public Object[] _getSnapshot() {
+        return _snapshot;
+    }
+
+    /**
+     * @param snapshot Snapshot of the columns now stored; null to write every column on the next save
+     */
+    public void _setSnapshot(Object[] snapshot) {
+        _snapshot = snapshot;
+    }
+
+    // Counter values as last read or written, see ModelReflector.counterValues()
+    @Transient
+    private transient long[] _counters = null;
+
+    /**
+     * @return Counters as last read or written, in counter field order; null if they are not known
+     */
+    public long[] _getCounters() {
+        return _counters;
+    }
+
+    /**
+     * @param counters Counters now stored; null to read them again before setting them on save
+     */
+    public void _setCounters(long[] counters) {
+        _counters = counters;
+    }
+
     // Event triggers when model is loaded from ORM
     public void onLoad() {
         setSaved_();
@@ -88,6 +183,67 @@ public class Model implements Serializable, play.db.Model
         return (T) this;
     }
 
+    /**
+     * Saves the models in batches, see cassandra.batch.* in application.conf. A model which
+     * could not be written does not stop the others, it is reported in the result instead.
+     * Inside a unit of work the models are recorded with it like save() does, and written
+     * in order with its other changes when it commits. With cassandra.writemode=async they
+     * are published to the write behind queue, behind the writes of their rows already queued.
+     *
+     * @param models Models to save, of any entity class
+     * @return Number of models saved and the models which failed
+     */
+    public static SaveResult saveAll(Collection<? extends Model> models) {
+        long now = DateTime.now().getMillis();
+        for ( Model model : models ) {
+            if ( null == model ) continue;
+            if ( model.isNew() ) model.created = now;
+            model.updated = now;
+        }
+        UnitOfWork work = UnitOfWork.current();
+        CassandraMonitor monitor = CassandraPlugin.writeBehind();
+        if ( null != work || null != monitor ) {
+            SaveResult result = new SaveResult();
+            int queued = 0;
+            for ( Model model : models ) {
+                if ( null == model ) continue;
+                if ( null != work ) {
+                    work.save(model, model.isNew());
+                } else {
+                    try {
+                        monitor.publishSave(model, model.isNew());
+                    } catch (DatabaseException e) {
+                        result.addFailure(model, e);
+                        continue;
+                    }
+                }
+                if ( model.isNew() ) model.setSaved_();
+                queued++;
+            }
+            result.addQueued(queued);
+            return result;
+        }
+        // Counters are set for new models only, as save() does
+        List<Model> newModels = new ArrayList<Model>();
+        List<Model> savedModels = new ArrayList<Model>();
+        for ( Model model : models ) {
+            if ( null != model && model.isNew() ) {
+                newModels.add(model);
+            } else {
+                savedModels.add(model);
+            }
+        }
+        SaveResult result = CassandraPlugin.ds().saveAll(newModels, true);
+        result.merge(CassandraPlugin.ds().saveAll(savedModels, false));
+        Map<play.db.Model, Throwable> failures = result.getFailures();
+        for ( Model model : models ) {
+            if ( null != model && model.isNew() && !failures.containsKey(model) ) {
+                model.setSaved_();
+            }
+        }
+        return result;
+    }
+
     // -- porting from play.db.GenericModel
     @SuppressWarnings("unchecked")
     public static <T extends Model> T create(Class<T> type, String name,
@@ -195,6 +351,11 @@ public class Model implements Serializable, play.db.Model
         throw new UnsupportedOperationException("count: Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
     }
 
+    @SuppressWarnings("UnusedParameters")
+    public static CountResult count(long timeBudget, CountListener listener) {
+        throw new UnsupportedOperationException("count: Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
+    }
+
     @SuppressWarnings("UnusedParameters")
     public static <T> T get(String id, String field) {
         throw new UnsupportedOperationException("Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
@@ -225,6 +386,11 @@ public class Model implements Serializable, play.db.Model
         throw new UnsupportedOperationException("Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
     }
 
+    @SuppressWarnings("UnusedParameters")
+    public static <T extends Model> MultiGetResult<T> findByIds(Collection<?> ids) {
+        throw new UnsupportedOperationException("Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
+    }
+
     @SuppressWarnings("UnusedParameters")
     public static <T extends Model> List<T> findByKey(String key, Object value) {
         throw new UnsupportedOperationException("Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
@@ -234,6 +400,24 @@ public class Model implements Serializable, play.db.Model
         throw new UnsupportedOperationException("Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
     }
 
+    /**
+     * @return Spliterator over all models, which can be split by token range and read on several threads
+     */
+    public static <T extends Model> ModelSpliterator<T> spliterator() {
+        throw new UnsupportedOperationException("Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
+    }
+
+    /**
+     * Visits all models in parallel on the scan threads (cassandra.scan.threads)
+     *
+     * @param visitor Receives every model; must be thread-safe
+     * @return Number of models visited
+     */
+    @SuppressWarnings("UnusedParameters")
+    public static <T extends Model> long scan(ModelVisitor<T> visitor) {
+        throw new UnsupportedOperationException("Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
+    }
+
     @SuppressWarnings({"rawtypes", "UnusedParameters"})
     public static <T extends Model> List<T> findAll(){
         throw new UnsupportedOperationException("Please annotate your model with @play.modules.cassandra.annotations.Entity annotation.");
@@ -0,0 +1,45 @@
+package play.modules.cassandra;
+
+/**
+ * Direct access to the column fields of a model class.
+ *
+ * CassandraEnhancer generates one implementation per entity (named
+ * <code>EntityName$CassandraAccessorN</code>, N counting enhancements so a reloaded entity
+ * gets a new class; the name is kept in the static <code>_cassandraAccessor</code> field of
+ * the entity) which reads and writes the public fields
+ * without going through java.lang.reflect. Field positions are resolved once with
+ * {@link #indexOf(String)}; the primitive getters and setters avoid boxing for
+ * primitive fields.
+ */
+public interface ModelAccessor {
+    /**
+     * @return New instance of the model, built with its no-arg constructor
+     */
+    public Object newInstance();
+
+    /**
+     * @param fieldName Java name of the field
+     * @return Position of the field for the other accessor calls; -1 if the field is unknown
+     */
+    public int indexOf(String fieldName);
+
+    public Object get(Object o, int index);
+
+    public void set(Object o, int index, Object value);
+
+    public long getLong(Object o, int index);
+
+    public void setLong(Object o, int index, long value);
+
+    public int getInt(Object o, int index);
+
+    public void setInt(Object o, int index, int value);
+
+    public double getDouble(Object o, int index);
+
+    public void setDouble(Object o, int index, double value);
+
+    public boolean getBoolean(Object o, int index);
+
+    public void setBoolean(Object o, int index, boolean value);
+}
@@ -0,0 +1,36 @@
+package play.modules.cassandra;
+
+import java.util.List;
+
+/**
+ * Read-only list over the models of a column family, read page by page as it is iterated.
+ *
+ * Only the current page is held in memory. Every model handed out by the cursor moves its
+ * page token; a cursor created from that token with {@link #resume(String)} continues
+ * with the following model.
+ */
+public interface ModelCursor<T extends play.db.Model> extends List<T> {
+    /**
+     * @param max Maximum number of models to return
+     * @return Up to max models from the start of the cursor
+     */
+    public List<T> fetch(int max);
+
+    /**
+     * @param offset Number of models skipped; only their keys are read
+     * @param max Maximum number of models to return
+     * @return Up to max models following the first offset models of the cursor
+     */
+    public List<T> fetch(int offset, int max);
+
+    /**
+     * @return Opaque token positioned after the last model handed out by the cursor; null if none was
+     */
+    public String getPageToken();
+
+    /**
+     * @param pageToken Token obtained from {@link #getPageToken()}; null to start from the beginning
+     * @return New cursor starting after the model the token was taken at
+     */
+    public ModelCursor<T> resume(String pageToken);
+}
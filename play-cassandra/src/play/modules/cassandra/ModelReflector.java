@@ -1,6 +1,5 @@
 package play.modules.cassandra;
 
-import com.netflix.astyanax.mapping.Column;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.serializers.StringSerializer;
 import play.Play;
@@ -9,47 +8,92 @@ import javax.persistence.Transient;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Provides reflection of Cassandra models for consumption by
  * data provider classes.
  *
+ * The schema of a model (its column fields and the groups they fall into) is
+ * compiled once when the reflector is created and never changes afterwards, so
+ * providers can ask for it on every row without paying for reflection again.
+ *
  * User: mwilson
  * Date: 12-04-26
  * Time: 10:37 AM
  */
 public class ModelReflector {
-    private static final Map<String, ModelReflector> classMap = new HashMap<String,ModelReflector>();
+    private static final ConcurrentMap<Class<?>, ModelReflector> _byClass = new ConcurrentHashMap<Class<?>, ModelReflector>();
+    private static final ConcurrentMap<String, ModelReflector> _byName = new ConcurrentHashMap<String, ModelReflector>();
     private Class<? extends Model> clazz;
     private final ColumnFamily<String, String> _columnFamily;
     private final ColumnFamily<String, String> _counterColumnFamily;
 
+    // Compiled schema
+    private final List<ColumnField> _fields;
+    private final Map<String, ColumnField> _fieldsByName;
+    private final Map<String, Field> _sourceFieldsByName;
+    private final List<ColumnField> _valueFields;
+    private final List<ColumnField> _counterFields;
+    private final Set<ColumnField> _indexFields;
+    private final List<ColumnField> _relationFields;
+    private final List<ColumnField> _mapModelFields;
+    private final List<String> _counterColumnNames;
+    private final ColumnField _identityField;
+    private final ModelAccessor _accessor;
+
     /**
      * Allow instantiation without a class object - we can infer it
-     * from the class name
+     * from the class name. Accepts the simple name (which is also the column
+     * family name), the name relative to the models package or the full class
+     * name; only the first lookup of a name goes through the classloader.
      *
      * @param className Name of class being reflected
      * @return Model Reflector for class
      */
     @SuppressWarnings("unchecked")
     static public ModelReflector reflectorFor(String className) {
+        ModelReflector reflector = _byName.get(className);
+        if ( null != reflector ) {
+            return reflector;
+        }
         try {
             String vType = className;
             if (!vType.startsWith("models.")) {
                 vType = "models." + vType;
             }
             Class<? extends Model> vClazz = (Class<? extends Model>) Play.classloader.loadClass(vType);
-            if ( !classMap.containsKey(vClazz.getName()) ) {
-                classMap.put(vClazz.getName(), new ModelReflector(vClazz));
-            }
-            return classMap.get(vClazz.getName());
+            reflector = reflectorFor(vClazz);
+            _byName.putIfAbsent(className, reflector);
+            return reflector;
         } catch ( ClassNotFoundException e ) {
             return  null;
         }
     }
 
+    @SuppressWarnings("unchecked")
     static public ModelReflector reflectorFor(Class<?> clazz) {
-        return reflectorFor(clazz.getName());
+        ModelReflector reflector = _byClass.get(clazz);
+        if ( null == reflector ) {
+            reflector = new ModelReflector((Class<? extends Model>) clazz);
+            ModelReflector existing = _byClass.putIfAbsent(clazz, reflector);
+            if ( null != existing ) {
+                return existing;
+            }
+            _byName.putIfAbsent(clazz.getName(), reflector);
+            _byName.putIfAbsent(clazz.getSimpleName(), reflector);
+        }
+        return reflector;
+    }
+
+    /**
+     * Forgets every compiled reflector. Called when the application starts so classes
+     * reloaded in DEV mode are reflected again.
+     */
+    static void clear() {
+        _byClass.clear();
+        _byName.clear();
     }
 
     private ModelReflector(Class<? extends Model> clazz) {
@@ -66,113 +110,296 @@ public class ModelReflector {
                         StringSerializer.get()
                 );
 
+        _accessor = accessorFor(clazz);
+
+        List<ColumnField> fields = new ArrayList<ColumnField>();
+        Map<String, ColumnField> fieldsByName = new HashMap<String, ColumnField>();
+        Map<String, Field> sourceFieldsByName = new HashMap<String, Field>();
+        List<ColumnField> valueFields = new ArrayList<ColumnField>();
+        List<ColumnField> counterFields = new ArrayList<ColumnField>();
+        Set<ColumnField> indexFields = new LinkedHashSet<ColumnField>();
+        List<ColumnField> relationFields = new ArrayList<ColumnField>();
+        List<ColumnField> mapModelFields = new ArrayList<ColumnField>();
+        List<String> counterColumnNames = new ArrayList<String>();
+        ColumnField identityField = null;
+        Set<String> lazyRelations = getLazyRelations(clazz);
+
+        for ( Field field : getPublicFields() ) {
+            ColumnField columnField = buildColumnField(field);
+            String javaName = field.getName().toUpperCase();
+            if ( !sourceFieldsByName.containsKey(javaName) ) {
+                sourceFieldsByName.put(javaName, field);
+            }
+            if ( !sourceFieldsByName.containsKey(columnField.getName()) ) {
+                sourceFieldsByName.put(columnField.getName(), field);
+            }
+
+            // Transient and static fields are not considered column fields
+            if ( null != field.getAnnotation(Transient.class) || Modifier.isStatic(field.getModifiers()) ) {
+                continue;
+            }
+            // Fields hidden by a subclass field of the same column name are skipped
+            if ( fieldsByName.containsKey(columnField.getName()) ) {
+                continue;
+            }
+
+            columnField.bind(_accessor);
+            columnField.compileCodec();
+            columnField.setLazy(lazyRelations.contains(field.getName()));
+            fields.add(columnField);
+            fieldsByName.put(columnField.getName(), columnField);
+            if ( !fieldsByName.containsKey(columnField.getName().toUpperCase()) ) {
+                fieldsByName.put(columnField.getName().toUpperCase(), columnField);
+            }
+
+            if ( columnField.isIdentity() && null == identityField ) {
+                identityField = columnField;
+            }
+            if ( columnField.isIndex() ) {
+                indexFields.add(columnField);
+            }
+            if ( columnField.isCounter() ) {
+                counterFields.add(columnField);
+                counterColumnNames.add(columnField.getName());
+            } else if ( columnField.isMapModelList() ) {
+                mapModelFields.add(columnField);
+            } else {
+                valueFields.add(columnField);
+                if ( columnField.isRelation() ) {
+                    relationFields.add(columnField);
+                }
+            }
+        }
+
+        _fields = Collections.unmodifiableList(fields);
+        _fieldsByName = fieldsByName;
+        _sourceFieldsByName = sourceFieldsByName;
+        _valueFields = Collections.unmodifiableList(valueFields);
+        _counterFields = Collections.unmodifiableList(counterFields);
+        _indexFields = Collections.unmodifiableSet(indexFields);
+        _relationFields = Collections.unmodifiableList(relationFields);
+        _mapModelFields = Collections.unmodifiableList(mapModelFields);
+        _counterColumnNames = Collections.unmodifiableList(counterColumnNames);
+        _identityField = identityField;
+    }
 
+    /**
+     * Uses the accessor generated by CassandraEnhancer when one was defined for the class,
+     * reflection otherwise
+     */
+    private static ModelAccessor accessorFor(Class<?> clazz) {
+        String accessorName;
+        try {
+            accessorName = (String) clazz.getDeclaredField(CassandraEnhancer.ACCESSOR_FIELD).get(null);
+        } catch ( Throwable e ) {
+            CassandraLogger.trace("No generated accessor for %s, using reflection", clazz.getName());
+            return new ReflectionModelAccessor(clazz);
+        }
+        try {
+            Class<?> accessorClazz = Class.forName(accessorName, true, clazz.getClassLoader());
+            return (ModelAccessor) accessorClazz.getDeclaredConstructor().newInstance();
+        } catch ( Throwable e ) {
+            CassandraLogger.warn(e, "Could not load accessor %s generated for %s, using reflection", accessorName, clazz.getName());
+            return new ReflectionModelAccessor(clazz);
+        }
+    }
+
+    /**
+     * Relation fields whose getters were hooked by CassandraEnhancer can be loaded lazily;
+     * other fields are always loaded with the row
+     *
+     * @return Java names of the fields loaded on first access
+     */
+    private static Set<String> getLazyRelations(Class<?> clazz) {
+        Set<String> lazyRelations = new HashSet<String>();
+        if ( !Boolean.parseBoolean(Play.configuration.getProperty("cassandra.relations.lazy", "true")) ) {
+            return lazyRelations;
+        }
+        Class<?> fieldClazz = clazz;
+        while ( null != fieldClazz && !fieldClazz.equals(Object.class) ) {
+            try {
+                Field marker = fieldClazz.getDeclaredField(CassandraEnhancer.LAZY_RELATIONS_FIELD);
+                String names = (String) marker.get(null);
+                for ( String name : names.split(",") ) {
+                    if ( !name.trim().isEmpty() ) {
+                        lazyRelations.add(name.trim());
+                    }
+                }
+            } catch ( NoSuchFieldException e ) {
+                // Not enhanced for lazy relations
+            } catch ( IllegalAccessException e ) {
+                CassandraLogger.warn("Unable to read lazy relations of %s", fieldClazz.getName());
+            }
+            fieldClazz = fieldClazz.getSuperclass();
+        }
+        return lazyRelations;
     }
 
     public Class<? extends Model> getType() {
         return this.clazz;
     }
 
+    /**
+     * @return New, empty instance of the reflected class
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T newInstance() {
+        return (T) _accessor.newInstance();
+    }
+
     /**
      * Given the model field's name for the column, return the DB internall column name
      *
-     * TODO: Cache the results of this so we don't have to repeat the check every time
-     *
      * @param columnName Model-class name of column being queried
      * @return Database-friendly name of column; null if column not found in model
      */
     public ColumnField getColumnField(String columnName) {
-        columnName = columnName.toUpperCase();
-        for (ColumnField field : getColumnFields() ) {
-            if ( field.getName().equals(columnName)) {
-                return field;
-            }
+        ColumnField field = _fieldsByName.get(columnName);
+        if ( null == field ) {
+            field = _fieldsByName.get(columnName.toUpperCase());
         }
-        return null;
+        return field;
     }
 
     public Set<ColumnField> getIndexFields() {
-        Set<ColumnField> fields = getColumnFields();
-        Set<ColumnField> indexFields = new HashSet<ColumnField>();
-        for ( ColumnField field : fields ) {
-            if ( field.isIndex() ) {
-                indexFields.add(field);
-            }
-        }
-        return indexFields;
+        return _indexFields;
     }
 
-    /**
-     * TODO: Cache the result of this
-     * @return
-     */
     public String getIdentityField() {
-        for ( ColumnField field : getColumnFields() ) {
-            if ( field.isIdentity()) {
-                return field.getName();
-            }
-        }
-        return null;
+        return null == _identityField ? null : _identityField.getName();
+    }
+
+    public ColumnField getIdentityColumnField() {
+        return _identityField;
     }
 
     public Field getFieldByName(String fieldName) {
-        String ucFieldName = fieldName.toUpperCase();
-        for ( Field field : getPublicFields() ) {
-            ColumnField columnField = buildColumnField(field);
-            if (field.getName().toUpperCase().equals(ucFieldName) || columnField.getName().equals(ucFieldName)) {
-                return field;
-            }
-        }
-        return null;
+        return _sourceFieldsByName.get(fieldName.toUpperCase());
     }
-    private Set<Field> getPublicFields() {
-        Set<Field> fields = new HashSet<Field>();
+
+    private List<Field> getPublicFields() {
+        List<Field> fields = new ArrayList<Field>();
         Class<?> columnClazz = this.clazz;
         while (!columnClazz.equals(Object.class)) {
-            Collections.addAll(fields, columnClazz.getDeclaredFields());
-            columnClazz = columnClazz.getSuperclass();
-        }
-        // Drop private fields
-        for ( Iterator<Field> iter = fields.iterator(); iter.hasNext(); ) {
-            Field field = iter.next();
-            if ( !Modifier.isPublic(field.getModifiers())) {
-                iter.remove();
+            for ( Field field : columnClazz.getDeclaredFields() ) {
+                // Drop private fields
+                if ( Modifier.isPublic(field.getModifiers()) ) {
+                    fields.add(field);
+                }
             }
+            columnClazz = columnClazz.getSuperclass();
         }
         return fields;
     }
 
-    public Set<ColumnField> getColumnFields() {
-        Set<ColumnField> fields = new HashSet<ColumnField>();
-        for ( Field field : getPublicFields()) {
-            // Transient fields are not considered column fields
-            if (null == field.getAnnotation(Transient.class)) {
-                fields.add(buildColumnField(field));
+    /**
+     * @return Every column field of the model, subclass fields first in declaration order
+     */
+    public List<ColumnField> getColumnFields() {
+        return _fields;
+    }
+
+    /**
+     * @return Fields stored as columns of the model's own row (no counters, no MapModel lists)
+     */
+    public List<ColumnField> getValueFields() {
+        return _valueFields;
+    }
+
+    /**
+     * Snapshot of the value fields, compared on save to write only the columns which changed.
+     * The last element is the row key, a snapshot of another row never matches.
+     *
+     * @param o Model of the reflected class
+     * @return One element per value field (see ColumnField.snapshot()) followed by the row key
+     */
+    public Object[] snapshot(Object o) throws IllegalAccessException {
+        Object[] snapshot = new Object[_valueFields.size() + 1];
+        for ( int i = 0; i < _valueFields.size(); i++ ) {
+            snapshot[i] = _valueFields.get(i).snapshot(o);
+        }
+        Object key = ((play.db.Model) o)._key();
+        snapshot[_valueFields.size()] = null == key ? null : key.toString();
+        return snapshot;
+    }
+
+    /**
+     * Copy of a model holding what its row would be written with; changes made to the model
+     * afterwards do not show in the copy. Dates, lists and MapModels are copied, the models
+     * referenced are not, only their keys are written. The copy keeps the unread references,
+     * the snapshot and the counters of the model.
+     *
+     * @param o Model of the reflected class
+     * @return Copy to write in place of the model
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Model> T detach(Model o) throws IllegalAccessException {
+        Model copy = newInstance();
+        for ( ColumnField field : _fields ) {
+            Object value = field.get(o);
+            if ( value instanceof Date ) {
+                value = ((Date) value).clone();
+            } else if ( value instanceof RelationList ) {
+                value = ((RelationList<?>) value).copyIds();
+            } else if ( field.isMapModelList() && null != value ) {
+                List<MapModel> maps = new ArrayList<MapModel>();
+                for ( MapModel map : (List<MapModel>) value ) {
+                    maps.add(null == map ? null : map._copy());
+                }
+                value = maps;
+            } else if ( value instanceof List ) {
+                value = new ArrayList<Object>((List<Object>) value);
+            }
+            field.set(copy, value);
+            if ( field.isRelation() && null == value ) {
+                LazyRelation relation = o._getLazyRelation(field.getFieldName());
+                if ( null != relation ) {
+                    copy._setLazyRelation(relation);
+                }
             }
         }
-        return fields;
+        Object[] snapshot = o._getSnapshot();
+        copy._setSnapshot(null == snapshot ? null : snapshot.clone());
+        long[] counters = o._getCounters();
+        copy._setCounters(null == counters ? null : counters.clone());
+        return (T) copy;
+    }
+
+    /**
+     * @param o Model of the reflected class
+     * @return Value of each counter field as stored in the counter column family; 0 for null values
+     */
+    public long[] counterValues(Object o) throws IllegalAccessException {
+        long[] values = new long[_counterFields.size()];
+        for ( int i = 0; i < _counterFields.size(); i++ ) {
+            ColumnField field = _counterFields.get(i);
+            Long value = field.toLong(field.get(o));
+            values[i] = null == value ? 0L : value;
+        }
+        return values;
+    }
+
+    public List<ColumnField> getCounterFields() {
+        return _counterFields;
+    }
+
+    /**
+     * @return Fields referencing other models, either directly or through a list
+     */
+    public List<ColumnField> getRelationFields() {
+        return _relationFields;
+    }
+
+    public List<ColumnField> getMapModelFields() {
+        return _mapModelFields;
     }
 
     public Boolean hasCounters() {
-        return getCounterColumnNames().size() > 0;
+        return !_counterFields.isEmpty();
     }
 
-    // TODO: Column name is NOT DRY
     public List<String> getCounterColumnNames() {
-        ArrayList<String> counters = new ArrayList<String>();
-        for ( Field field : clazz.getFields() ) {
-            if ( Modifier.isStatic(field.getModifiers()) ) continue;
-
-            if ( null != field.getAnnotation(play.modules.cassandra.annotations.Counter.class)) {
-                String columnName = field.getName().toUpperCase();
-                Column columnAnnotation = field.getAnnotation(Column.class);
-                if ( null != columnAnnotation && null != columnAnnotation.value() ) {
-                    columnName = columnAnnotation.value().toString();
-                }
-                counters.add(columnName);
-            }
-        }
-        return counters;
+        return _counterColumnNames;
     }
 
     /**
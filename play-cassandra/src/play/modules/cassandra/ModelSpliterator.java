@@ -0,0 +1,25 @@
+package play.modules.cassandra;
+
+import java.util.Iterator;
+
+/**
+ * Iterator over a part of a column family which can hand half of what it has left to
+ * another spliterator, so the parts can be read on different threads. Splitting the
+ * spliterator of a whole column family divides its token ranges; rows are read one page
+ * at a time and each model is parsed when next() hands it out, on the thread calling it.
+ *
+ * Modeled on java.util.Spliterator; see Model.scan(ModelVisitor) for a parallel scan
+ * which does the splitting and threading.
+ */
+public interface ModelSpliterator<T extends play.db.Model> extends Iterator<T> {
+    /**
+     * @return Spliterator covering about half of the models this one has not handed out yet,
+     *         which this one will no longer return; null if it can not be split
+     */
+    public ModelSpliterator<T> trySplit();
+
+    /**
+     * @return Number of models left, Long.MAX_VALUE if it is unknown
+     */
+    public long estimateSize();
+}
@@ -0,0 +1,13 @@
+package play.modules.cassandra;
+
+/**
+ * Receives the models of a parallel scan, see {@link ModelSpliterator}. Models are
+ * visited concurrently from the scan threads, so implementations must be thread-safe.
+ */
+public interface ModelVisitor<T extends play.db.Model> {
+    /**
+     * @param model Model read by the scan
+     * @return FALSE to stop the scan
+     */
+    public boolean visit(T model);
+}
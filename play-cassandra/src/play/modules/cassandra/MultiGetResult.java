@@ -0,0 +1,38 @@
+package play.modules.cassandra;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Models returned by a multi-get, in the order their ids were requested.
+ * Ids with no matching row are not part of the list; they are reported by
+ * {@link #getMissingIds()} instead.
+ */
+public class MultiGetResult<T extends play.db.Model> extends ArrayList<T> {
+    private static final long serialVersionUID = 2815533024957632914L;
+    private final List<Object> _missingIds = new ArrayList<Object>();
+
+    public MultiGetResult() {
+        super();
+    }
+
+    public MultiGetResult(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    public void addMissing(Object id) {
+        _missingIds.add(id);
+    }
+
+    /**
+     * @return Requested ids which did not match any row, in request order
+     */
+    public List<Object> getMissingIds() {
+        return Collections.unmodifiableList(_missingIds);
+    }
+
+    public boolean hasMissing() {
+        return !_missingIds.isEmpty();
+    }
+}
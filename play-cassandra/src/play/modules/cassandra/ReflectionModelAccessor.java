@@ -0,0 +1,147 @@
+package play.modules.cassandra;
+
+import play.exceptions.DatabaseException;
+import play.exceptions.UnexpectedException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fallback accessor used when no generated accessor exists for a class (MapModels,
+ * precompiled applications, or classes the enhancer could not process).
+ */
+class ReflectionModelAccessor implements ModelAccessor {
+    private final Class<?> _clazz;
+    private final List<Field> _fields = new ArrayList<Field>();
+    private Constructor<?> _constructor;
+
+    ReflectionModelAccessor(Class<?> clazz) {
+        _clazz = clazz;
+        Class<?> fieldClazz = clazz;
+        while ( null != fieldClazz && !fieldClazz.equals(Object.class) ) {
+            for ( Field field : fieldClazz.getDeclaredFields() ) {
+                if ( Modifier.isPublic(field.getModifiers()) && !Modifier.isStatic(field.getModifiers()) ) {
+                    _fields.add(field);
+                }
+            }
+            fieldClazz = fieldClazz.getSuperclass();
+        }
+    }
+
+    @Override
+    public Object newInstance() {
+        try {
+            if ( null == _constructor ) {
+                Constructor<?> constructor = _clazz.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                _constructor = constructor;
+            }
+            return _constructor.newInstance();
+        } catch (Exception e) {
+            throw new DatabaseException("Instantiation exception: " + _clazz.getName(), e);
+        }
+    }
+
+    @Override
+    public int indexOf(String fieldName) {
+        for ( int i = 0; i < _fields.size(); i++ ) {
+            if ( _fields.get(i).getName().equals(fieldName) ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Object get(Object o, int index) {
+        try {
+            return _fields.get(index).get(o);
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    @Override
+    public void set(Object o, int index, Object value) {
+        try {
+            _fields.get(index).set(o, value);
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    @Override
+    public long getLong(Object o, int index) {
+        try {
+            return _fields.get(index).getLong(o);
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    @Override
+    public void setLong(Object o, int index, long value) {
+        try {
+            _fields.get(index).setLong(o, value);
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    @Override
+    public int getInt(Object o, int index) {
+        try {
+            return _fields.get(index).getInt(o);
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    @Override
+    public void setInt(Object o, int index, int value) {
+        try {
+            _fields.get(index).setInt(o, value);
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    @Override
+    public double getDouble(Object o, int index) {
+        try {
+            return _fields.get(index).getDouble(o);
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    @Override
+    public void setDouble(Object o, int index, double value) {
+        try {
+            _fields.get(index).setDouble(o, value);
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    @Override
+    public boolean getBoolean(Object o, int index) {
+        try {
+            return _fields.get(index).getBoolean(o);
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    @Override
+    public void setBoolean(Object o, int index, boolean value) {
+        try {
+            _fields.get(index).setBoolean(o, value);
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+}
@@ -4,7 +4,9 @@ import play.Play;
 
 /**
  * Implements a proxy class for Cassandra-based model relations.
- * This is intended to provide
+ * This is intended to provide lazy loading of related models; relations
+ * attached to a {@link RelationBatch} are loaded together with the other
+ * relations of the batch.
  *
  * User: mwilson
  * Date: 12-04-11
@@ -14,24 +16,64 @@ public class Relation<T extends Model> {
     private Object _id;
     private T _model;
     private String _className;
+    private RelationBatch _batch;
+    private Class<?> _type;
+    private boolean _loaded;
 
     public Relation(String className, String id) {
         _id = id;
         _model = null;
         _className = className;
+        _loaded = false;
     }
 
     public Relation(T t) {
         _className = t.getClass().getName();
         _id = t.getId();
         _model = t;
+        _loaded = true;
     }
 
-    public T get() throws ClassNotFoundException {
-        if ( null == _model ) {
-            Class<T> vClazz = (Class<T>)Play.classloader.loadClass(_className);
+    public Object getId() {
+        return _id;
+    }
+
+    public String getClassName() {
+        return _className;
+    }
+
+    /**
+     * @return TRUE if the related model has been read (or was given on creation)
+     */
+    public boolean isLoaded() {
+        return _loaded;
+    }
 
-            _model = (T) play.db.Model.Manager.factoryFor(vClazz).findById(_id);
+    /**
+     * Defers loading to the batch; has no effect on loaded relations or relations already attached to a batch
+     *
+     * @param batch Batch loading the relation
+     * @param type Class of the related model
+     */
+    void batchWith(RelationBatch batch, Class<?> type) {
+        if ( !_loaded && null == _batch && null != _id ) {
+            _batch = batch;
+            _type = type;
+            batch.add(type, _id.toString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get() throws ClassNotFoundException {
+        if ( !_loaded ) {
+            if ( null != _batch ) {
+                _model = (T) _batch.get(_type, _id.toString());
+                _batch = null;
+            } else {
+                Class<T> vClazz = (Class<T>)Play.classloader.loadClass(_className);
+                _model = (T) play.db.Model.Manager.factoryFor(vClazz).findById(_id);
+            }
+            _loaded = true;
         }
 
         return _model;
@@ -0,0 +1,142 @@
+package play.modules.cassandra;
+
+import java.util.*;
+
+/**
+ * Collects the model references of a result set so they can be loaded together.
+ *
+ * Providers register every reference they parse with {@link #add(ColumnField, String)}
+ * instead of loading it, and every RelationList they parse with
+ * {@link RelationList#batchWith(RelationBatch)}. The first time a reference is used, all
+ * pending references to the same model class are read with a single multi-get.
+ *
+ * The batch only keeps a loaded model until every reference registered for it has been
+ * handed out or dropped, so models kept from a result set do not keep the models referenced
+ * by the rest of it in memory.
+ */
+public class RelationBatch {
+    private final Map<Class<?>, Set<String>> _pending = new HashMap<Class<?>, Set<String>>();
+    private final Map<Class<?>, Map<String, play.db.Model>> _resolved = new HashMap<Class<?>, Map<String, play.db.Model>>();
+    // References registered and not handed out yet, by class and key
+    private final Map<Class<?>, Map<String, Integer>> _references = new HashMap<Class<?>, Map<String, Integer>>();
+
+    /**
+     * @param field Column field holding the reference
+     * @param id Key of the referenced model
+     * @return Handle resolving the reference on first use
+     */
+    public LazyRelation add(ColumnField field, String id) {
+        add(field.getType(), id);
+        return new LazyRelation(this, field, id);
+    }
+
+    /**
+     * Registers a reference to be loaded with the next resolution of its class
+     *
+     * @param type Class of the referenced model
+     * @param id Key of the referenced model
+     */
+    public synchronized void add(Class<?> type, String id) {
+        Map<String, Integer> references = _references.get(type);
+        if ( null == references ) {
+            references = new HashMap<String, Integer>();
+            _references.put(type, references);
+        }
+        Integer count = references.get(id);
+        references.put(id, null == count ? 1 : count + 1);
+
+        Map<String, play.db.Model> models = _resolved.get(type);
+        if ( null != models && models.containsKey(id) ) {
+            return;
+        }
+        Set<String> ids = _pending.get(type);
+        if ( null == ids ) {
+            ids = new LinkedHashSet<String>();
+            _pending.put(type, ids);
+        }
+        ids.add(id);
+    }
+
+    synchronized play.db.Model get(ColumnField field, String id) {
+        return get(field.getType(), id);
+    }
+
+    /**
+     * Hands out a registered reference
+     *
+     * @param type Class of the referenced model
+     * @param id Key of the referenced model
+     * @return Referenced model, loading every pending reference of its class if needed; null if it does not exist
+     */
+    synchronized play.db.Model get(Class<?> type, String id) {
+        Set<String> ids = _pending.get(type);
+        if ( null != ids && ids.contains(id) ) {
+            resolve(type, ids);
+        }
+        Map<String, play.db.Model> models = _resolved.get(type);
+        play.db.Model model = null == models ? null : models.get(id);
+        release(type, id);
+        return model;
+    }
+
+    synchronized void release(ColumnField field, String id) {
+        release(field.getType(), id);
+    }
+
+    /**
+     * Drops a registered reference; the model is forgotten once no reference to it is left
+     *
+     * @param type Class of the referenced model
+     * @param id Key of the referenced model
+     */
+    synchronized void release(Class<?> type, String id) {
+        Map<String, Integer> references = _references.get(type);
+        Integer count = null == references ? null : references.get(id);
+        if ( null == count ) {
+            return;
+        }
+        if ( count > 1 ) {
+            references.put(id, count - 1);
+            return;
+        }
+        references.remove(id);
+        Map<String, play.db.Model> models = _resolved.get(type);
+        if ( null != models ) {
+            models.remove(id);
+        }
+        // Nobody needs it any more, it is not read with the others
+        Set<String> ids = _pending.get(type);
+        if ( null != ids ) {
+            ids.remove(id);
+            if ( ids.isEmpty() ) {
+                _pending.remove(type);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resolve(Class<?> type, Set<String> ids) {
+        _pending.remove(type);
+        Map<String, play.db.Model> models = _resolved.get(type);
+        if ( null == models ) {
+            models = new HashMap<String, play.db.Model>();
+            _resolved.put(type, models);
+        }
+
+        play.db.Model.Factory factory = play.db.Model.Manager.factoryFor((Class<? extends play.db.Model>) type);
+        if ( factory instanceof CassandraPlugin.CassandraModelLoader ) {
+            CassandraLogger.trace("Resolving %d %s relations", ids.size(), type.getName());
+            MultiGetResult<Model> found = ((CassandraPlugin.CassandraModelLoader) factory).findByIds(ids);
+            for ( Model model : found ) {
+                models.put(model._key().toString(), model);
+            }
+            for ( Object missing : found.getMissingIds() ) {
+                models.put(missing.toString(), null);
+            }
+        } else {
+            for ( String id : ids ) {
+                models.put(id, factory.findById(id));
+            }
+        }
+    }
+}
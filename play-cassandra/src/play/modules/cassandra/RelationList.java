@@ -1,13 +1,95 @@
 package play.modules.cassandra;
 
+import play.Play;
+
 import java.util.*;
 
+/**
+ * List of related models, read on first access.
+ *
+ * The first iteration (or get/toArray) loads every relation of the list which has not been
+ * read yet with a single multi-get. Lists parsed together are attached to the same
+ * {@link RelationBatch}, in which case the first list used loads the relations of all of them.
+ */
 public class RelationList<T extends Model> implements List<T> {
     private ArrayList<Relation<T>> _relations;
 
     public RelationList() {
         _relations = new ArrayList<Relation<T>>();
     }
+    /**
+     * Defers loading of the relations not read yet to a batch shared with other lists
+     *
+     * @param batch Batch loading the relations
+     */
+    public void batchWith(RelationBatch batch) {
+        Map<String, Class<?>> types = new HashMap<String, Class<?>>();
+        for ( Relation<T> relation : _relations ) {
+            if ( relation.isLoaded() ) {
+                continue;
+            }
+            Class<?> type = types.get(relation.getClassName());
+            if ( null == type ) {
+                try {
+                    type = Play.classloader.loadClass(relation.getClassName());
+                    types.put(relation.getClassName(), type);
+                } catch ( ClassNotFoundException e ) {
+                    continue;
+                }
+            }
+            relation.batchWith(batch, type);
+        }
+    }
+
+    /**
+     * @return Keys of the related models, in list order; nothing is loaded
+     */
+    public List<Object> getIds() {
+        List<Object> ids = new ArrayList<Object>(_relations.size());
+        for ( Relation<T> relation : _relations ) {
+            ids.add(relation.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * @return List of the same related models, none of them loaded
+     */
+    public RelationList<T> copyIds() {
+        RelationList<T> copy = new RelationList<T>();
+        for ( Relation<T> relation : _relations ) {
+            copy.add(new Relation<T>(relation.getClassName(), null == relation.getId() ? null : relation.getId().toString()));
+        }
+        return copy;
+    }
+
+    /**
+     * Loads every relation of the list not read yet with one multi-get per related class
+     *
+     * @return This list
+     */
+    public RelationList<T> prefetch() {
+        boolean pending = false;
+        for ( Relation<T> relation : _relations ) {
+            if ( !relation.isLoaded() ) {
+                pending = true;
+                break;
+            }
+        }
+        if ( !pending ) {
+            return this;
+        }
+        batchWith(new RelationBatch());
+        for ( Relation<T> relation : _relations ) {
+            try {
+                relation.get();
+            } catch ( ClassNotFoundException e ) {
+                // Left unloaded, get() returns null for it
+            }
+        }
+        return this;
+    }
+
     @Override
     public int size() {
         return _relations.size();
@@ -25,11 +107,13 @@ public class RelationList<T extends Model> implements List<T> {
 
     @Override
     public Iterator<T> iterator() {
+        prefetch();
         return new RelationIterator<T>(_relations);
     }
 
     @Override
     public Object[] toArray() {
+        prefetch();
         ArrayList<T> realItems = new ArrayList<T>();
         for ( Relation<T> relation : _relations) {
             try {
@@ -92,6 +176,7 @@ public class RelationList<T extends Model> implements List<T> {
 
     @Override
     public T get(int i) {
+        prefetch();
         try {
             Relation<T> relation = _relations.get(i);
             return relation.get();
@@ -130,6 +215,7 @@ public class RelationList<T extends Model> implements List<T> {
 
     @Override
     public ListIterator<T> listIterator() {
+        prefetch();
         return new RelationListIterator<T>(_relations);
     }
 
@@ -0,0 +1,22 @@
+package play.modules.cassandra;
+
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.model.Row;
+
+import java.util.List;
+
+/**
+ * Receives the rows of a column family scan, one page at a time.
+ *
+ * Pages of different token ranges are visited concurrently from the scan threads, so
+ * implementations must be thread-safe. A page is read only after the visitor returns
+ * from the previous page of the same range, so slow visitors slow the scan down instead
+ * of letting rows pile up in memory.
+ */
+public interface RowVisitor {
+    /**
+     * @param rows Non-empty rows of one page, all from the same token range
+     * @return FALSE to stop the scan; pages already being read are still visited
+     */
+    public boolean visit(List<Row<String, String>> rows) throws ConnectionException;
+}
@@ -0,0 +1,82 @@
+package play.modules.cassandra;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a batched save. Models which could not be written are reported with
+ * the error which stopped them; every other model of the batch was saved. A model
+ * whose counters failed is reported too, although its row was written: its counters
+ * may have been incremented in part, and saving it again repeats every increment.
+ */
+public class SaveResult {
+    private int _saved = 0;
+    private int _batches = 0;
+    private final Map<play.db.Model, Throwable> _failures = new LinkedHashMap<play.db.Model, Throwable>();
+
+    public synchronized void addSaved(int saved) {
+        _saved += saved;
+        _batches++;
+    }
+
+    /**
+     * @param unchanged Models counted as saved without writing them, no column of theirs changed
+     */
+    public synchronized void addUnchanged(int unchanged) {
+        _saved += unchanged;
+    }
+
+    /**
+     * @param queued Models counted as saved which are written later, when the unit of work
+     *               holding them commits or by the write behind queue
+     */
+    public synchronized void addQueued(int queued) {
+        _saved += queued;
+    }
+
+    public synchronized void addFailure(play.db.Model model, Throwable error) {
+        _failures.put(model, error);
+    }
+
+    /**
+     * Adds the outcome of another save to this one
+     */
+    public synchronized void merge(SaveResult other) {
+        synchronized (other) {
+            _saved += other._saved;
+            _batches += other._batches;
+            _failures.putAll(other._failures);
+        }
+    }
+
+    /**
+     * @return Number of models written
+     */
+    public synchronized int getSaved() {
+        return _saved;
+    }
+
+    /**
+     * @return Number of mutation batches executed
+     */
+    public synchronized int getBatches() {
+        return _batches;
+    }
+
+    /**
+     * @return Models which were not saved, with the error which stopped each of them
+     */
+    public synchronized Map<play.db.Model, Throwable> getFailures() {
+        return Collections.unmodifiableMap(new LinkedHashMap<play.db.Model, Throwable>(_failures));
+    }
+
+    public synchronized boolean isSuccess() {
+        return _failures.isEmpty();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("SaveResult[saved=%d,batches=%d,failed=%d]", _saved, _batches, _failures.size());
+    }
+}
@@ -0,0 +1,278 @@
+package play.modules.cassandra;
+
+import play.Play;
+import play.exceptions.UnexpectedException;
+
+import java.util.*;
+
+/**
+ * Writes buffered for the current thread and flushed together.
+ *
+ * With cassandra.unitofwork=true the plugin opens a unit of work before every invocation,
+ * flushes it when the invocation succeeds and discards it when it fails. Models may also
+ * open one explicitly, in jobs for instance, with {@link #begin()} and {@link #commit()}.
+ *
+ * While a unit of work is open save(), set(), increment() and delete() only record the write.
+ * Writes to the same row are coalesced: the last save of a row wins, a delete drops the
+ * writes before it, increments of a counter are summed. A value set before a save is kept
+ * unless the save writes that column too. A counter set drops the increments
+ * before it and the increments after it are added to the value set, so a counter ends as if
+ * the writes were applied in order. On commit the deletes, the saves, the column sets and the
+ * increments are each written with as few mutation batches as possible, in that order.
+ *
+ * The flush is not atomic: a failing batch stops it and the DatabaseException it throws
+ * names the phases which were written before. Deletes, saves and sets can be written again
+ * safely; increments cannot, a unit of work which failed in its increments must not be
+ * replayed as a whole.
+ *
+ * Models saved in the unit of work are returned by findById() before they are flushed;
+ * other reads, counts and scans only see what was flushed.
+ */
+public class UnitOfWork {
+    private static final ThreadLocal<UnitOfWork> _current = new ThreadLocal<UnitOfWork>();
+
+    private final Set<RowKey> _deletes = new LinkedHashSet<RowKey>();
+    private final Map<RowKey, Model> _saves = new LinkedHashMap<RowKey, Model>();
+    private final Set<RowKey> _saveCounters = new HashSet<RowKey>();
+    private final Map<RowKey, Map<String, Object>> _columns = new LinkedHashMap<RowKey, Map<String, Object>>();
+    private final Map<RowKey, Map<String, Long>> _increments = new LinkedHashMap<RowKey, Map<String, Long>>();
+
+    /**
+     * Row of a model class
+     */
+    public static class RowKey {
+        private final Class<?> _type;
+        private final String _id;
+
+        public RowKey(Class<?> type, Object id) {
+            _type = type;
+            _id = id.toString();
+        }
+
+        public Class<?> getType() {
+            return _type;
+        }
+
+        public String getId() {
+            return _id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if ( !(o instanceof RowKey) ) {
+                return false;
+            }
+            RowKey other = (RowKey) o;
+            return _type.equals(other._type) && _id.equals(other._id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * _type.hashCode() + _id.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return _type.getSimpleName() + ":" + _id;
+        }
+    }
+
+    /**
+     * @return TRUE if the plugin opens a unit of work for every invocation (cassandra.unitofwork)
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(Play.configuration.getProperty("cassandra.unitofwork", "false"));
+    }
+
+    /**
+     * @return Unit of work of the current thread, opening one if there is none
+     */
+    public static UnitOfWork begin() {
+        UnitOfWork work = _current.get();
+        if ( null == work ) {
+            work = new UnitOfWork();
+            _current.set(work);
+        }
+        return work;
+    }
+
+    /**
+     * @return Unit of work of the current thread; null if none is open
+     */
+    public static UnitOfWork current() {
+        return _current.get();
+    }
+
+    /**
+     * Flushes and closes the unit of work of the current thread, if there is one. It is
+     * closed even when the flush fails.
+     */
+    public static void commit() {
+        UnitOfWork work = _current.get();
+        if ( null == work ) {
+            return;
+        }
+        _current.remove();
+        if ( !work.isEmpty() ) {
+            CassandraLogger.debug("Flushing unit of work: %s", work);
+            CassandraPlugin.ds().flush(work);
+        }
+    }
+
+    /**
+     * Drops the writes of the unit of work of the current thread and closes it
+     */
+    public static void rollback() {
+        UnitOfWork work = _current.get();
+        if ( null != work ) {
+            _current.remove();
+            CassandraLogger.debug("Discarding unit of work: %s", work);
+        }
+    }
+
+    public void save(Model model, boolean saveCounters) {
+        RowKey key = new RowKey(model.getClass(), model.getId());
+        _deletes.remove(key);
+        // The save writes the columns changed since the snapshot of the model, every column
+        // without one. Values set before it on the other columns and on counters still apply.
+        Map<String, Object> columns = _columns.get(key);
+        if ( null != columns ) {
+            ModelReflector reflector = ModelReflector.reflectorFor(model.getClass());
+            List<ColumnField> valueFields = reflector.getValueFields();
+            Object[] before = model._getSnapshot();
+            Object[] after;
+            try {
+                after = null == before ? null : reflector.snapshot(model);
+            } catch (IllegalAccessException e) {
+                throw new UnexpectedException(e);
+            }
+            // The last element of a snapshot is the row key
+            boolean changedOnly = null != before && before.length == after.length
+                    && !ColumnField.isChanged(before[before.length - 1], after[after.length - 1]);
+            for ( Iterator<String> it = columns.keySet().iterator(); it.hasNext(); ) {
+                ColumnField field = reflector.getColumnField(it.next());
+                if ( null == field ) {
+                    it.remove();
+                } else if ( !field.isCounter() ) {
+                    int i = valueFields.indexOf(field);
+                    if ( !changedOnly || i < 0 || ColumnField.isChanged(before[i], after[i]) ) {
+                        it.remove();
+                    }
+                }
+            }
+            if ( columns.isEmpty() ) {
+                _columns.remove(key);
+            }
+        }
+        _saves.put(key, model);
+        if ( saveCounters ) {
+            _saveCounters.add(key);
+        }
+    }
+
+    public void set(Class<?> type, String id, String column, Object value) {
+        RowKey key = new RowKey(type, id);
+        Map<String, Object> columns = _columns.get(key);
+        if ( null == columns ) {
+            columns = new LinkedHashMap<String, Object>();
+            _columns.put(key, columns);
+        }
+        columns.put(column, value);
+        // The value set replaces whatever the increments before it added
+        Map<String, Long> increments = _increments.get(key);
+        if ( null != increments && isCounter(type, column) ) {
+            increments.remove(column);
+            if ( increments.isEmpty() ) {
+                _increments.remove(key);
+            }
+        }
+    }
+
+    public void increment(Class<?> type, String id, String column, long amount) {
+        RowKey key = new RowKey(type, id);
+        // Sets are written before increments, an increment after a set goes into the value set
+        Map<String, Object> columns = _columns.get(key);
+        if ( null != columns && columns.containsKey(column) && isCounter(type, column) ) {
+            ColumnField field = ModelReflector.reflectorFor(type).getColumnField(column);
+            columns.put(column, field.toLong(columns.get(column)) + amount);
+            return;
+        }
+        Map<String, Long> increments = _increments.get(key);
+        if ( null == increments ) {
+            increments = new LinkedHashMap<String, Long>();
+            _increments.put(key, increments);
+        }
+        Long total = increments.get(column);
+        increments.put(column, null == total ? amount : total + amount);
+    }
+
+    public void delete(Class<?> type, Object id) {
+        RowKey key = new RowKey(type, id);
+        _saves.remove(key);
+        _saveCounters.remove(key);
+        _columns.remove(key);
+        _increments.remove(key);
+        _deletes.add(key);
+    }
+
+    private static boolean isCounter(Class<?> type, String column) {
+        ColumnField field = ModelReflector.reflectorFor(type).getColumnField(column);
+        return null != field && field.isCounter();
+    }
+
+    /**
+     * @return Model saved in this unit of work; null if the row was not saved in it
+     */
+    public Model getSaved(Class<?> type, Object id) {
+        return _saves.get(new RowKey(type, id));
+    }
+
+    /**
+     * @return TRUE if the row was deleted in this unit of work and not saved again
+     */
+    public boolean isDeleted(Class<?> type, Object id) {
+        return _deletes.contains(new RowKey(type, id));
+    }
+
+    public Set<RowKey> getDeletes() {
+        return Collections.unmodifiableSet(_deletes);
+    }
+
+    /**
+     * @param saveCounters TRUE for the models whose counters are set explicitly, FALSE for the others
+     * @return Models saved in this unit of work
+     */
+    public List<Model> getSaves(boolean saveCounters) {
+        List<Model> models = new ArrayList<Model>();
+        for ( Map.Entry<RowKey, Model> entry : _saves.entrySet() ) {
+            if ( saveCounters == _saveCounters.contains(entry.getKey()) ) {
+                models.add(entry.getValue());
+            }
+        }
+        return models;
+    }
+
+    /**
+     * @return Values set with Model.set(), by row and column name
+     */
+    public Map<RowKey, Map<String, Object>> getColumns() {
+        return Collections.unmodifiableMap(_columns);
+    }
+
+    /**
+     * @return Summed increments, by row and counter column name
+     */
+    public Map<RowKey, Map<String, Long>> getIncrements() {
+        return Collections.unmodifiableMap(_increments);
+    }
+
+    public boolean isEmpty() {
+        return _deletes.isEmpty() && _saves.isEmpty() && _columns.isEmpty() && _increments.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UnitOfWork[deletes=%d,saves=%d,sets=%d,increments=%d]",
+                _deletes.size(), _saves.size(), _columns.size(), _increments.size());
+    }
+}
@@ -0,0 +1,42 @@
+package play.modules.cassandra.codecs;
+
+import com.netflix.astyanax.ColumnListMutation;
+import com.netflix.astyanax.model.Column;
+import play.modules.cassandra.ColumnField;
+
+/**
+ * Converts a model field to and from its stored column value.
+ *
+ * One codec is resolved per column field when the model schema is compiled (see
+ * {@link ColumnCodecs#codecFor(ColumnField)}), so providers never inspect the field
+ * type while reading or writing rows. Implementations must be stateless - the same
+ * instance is shared by every field of the type it handles.
+ */
+public interface ColumnCodec {
+    /**
+     * Adds the value of the field to the row mutation
+     *
+     * @param o Model being saved
+     * @param field Field being written
+     * @param mutation Row mutation the column is added to
+     */
+    public void write(Object o, ColumnField field, ColumnListMutation<String> mutation) throws IllegalAccessException;
+
+    /**
+     * Sets the field from a column read from Cassandra
+     *
+     * @param o Model being loaded
+     * @param field Field being read
+     * @param column Column holding the stored value
+     */
+    public void read(Object o, ColumnField field, Column<String> column) throws IllegalAccessException;
+
+    /**
+     * Sets the field from its string form, as stored by the H2 provider
+     *
+     * @param o Model being loaded
+     * @param field Field being read
+     * @param value Stored value; null when the column is NULL
+     */
+    public void readString(Object o, ColumnField field, String value) throws IllegalAccessException;
+}
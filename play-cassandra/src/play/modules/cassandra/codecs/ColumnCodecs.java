@@ -0,0 +1,573 @@
+package play.modules.cassandra.codecs;
+
+import com.google.gson.Gson;
+import com.netflix.astyanax.ColumnListMutation;
+import com.netflix.astyanax.model.Column;
+import org.joda.time.DateTime;
+import play.modules.cassandra.ColumnField;
+import play.modules.cassandra.LazyRelation;
+import play.modules.cassandra.Model;
+import play.modules.cassandra.Relation;
+import play.modules.cassandra.RelationList;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of column codecs.
+ *
+ * Codecs are looked up by field type in this order: codecs registered for the exact type,
+ * relations to other models, lists, enums, codecs registered for a supertype and finally
+ * the string codec. Supertypes are tried nearest first: the superclasses, then the
+ * interfaces of the type and of its superclasses in declaration order. Applications can add codecs for their own types with
+ * {@link #register(Class, ColumnCodec)}; a registered codec replaces the built-in one for
+ * the same type.
+ */
+public class ColumnCodecs {
+    private static final Map<Class<?>, ColumnCodec> _codecs = new ConcurrentHashMap<Class<?>, ColumnCodec>();
+    private static final AtomicInteger _version = new AtomicInteger();
+
+    public static final ColumnCodec STRING = new StringCodec();
+    public static final ColumnCodec RELATION = new RelationCodec();
+    public static final ColumnCodec RELATION_LIST = new RelationListCodec();
+    public static final ColumnCodec ENUM = new EnumCodec();
+    public static final ColumnCodec NONE = new NoneCodec();
+
+    static {
+        _codecs.put(String.class, STRING);
+        _codecs.put(Boolean.TYPE, new BooleanCodec());
+        _codecs.put(Boolean.class, new BoxedCodec(Boolean.class));
+        _codecs.put(Integer.TYPE, new IntegerCodec());
+        _codecs.put(Integer.class, new BoxedCodec(Integer.class));
+        _codecs.put(Long.TYPE, new LongCodec());
+        _codecs.put(Long.class, new BoxedCodec(Long.class));
+        _codecs.put(Double.TYPE, new DoubleCodec());
+        _codecs.put(Double.class, new BoxedCodec(Double.class));
+        _codecs.put(Date.class, new DateCodec());
+        _codecs.put(DateTime.class, new DateTimeCodec());
+        _codecs.put(BigDecimal.class, new BigDecimalCodec());
+        _codecs.put(UUID.class, new UUIDCodec());
+        _codecs.put(ByteBuffer.class, new ByteBufferCodec());
+    }
+
+    /**
+     * Registers the codec used for fields of the given type. Models already loaded pick the
+     * new codec up on their next read or write.
+     *
+     * @param type Field type handled by the codec
+     * @param codec Codec to use for the type
+     */
+    public static void register(Class<?> type, ColumnCodec codec) {
+        if ( null == type || null == codec ) {
+            throw new IllegalArgumentException("Codec registration requires a type and a codec");
+        }
+        _codecs.put(type, codec);
+        _version.incrementAndGet();
+    }
+
+    /**
+     * @return Revision of the registry; changes every time a codec is registered
+     */
+    public static int version() {
+        return _version.get();
+    }
+
+    /**
+     * Resolves the codec for a column field. MapModel lists are stored outside of the
+     * model's row and have no codec.
+     *
+     * @param field Column field being compiled
+     * @return Codec used to read and write the field
+     */
+    public static ColumnCodec codecFor(ColumnField field) {
+        Class<?> type = field.getType();
+        ColumnCodec codec = _codecs.get(type);
+        if ( null != codec ) {
+            return codec;
+        }
+        if ( field.isList() ) {
+            if ( field.isMapModelList() ) {
+                return NONE;
+            }
+            return field.isRelation() ? RELATION_LIST : NONE;
+        }
+        if ( field.isRelation() ) {
+            return RELATION;
+        }
+        if ( type.isEnum() ) {
+            return ENUM;
+        }
+        codec = codecForSupertype(type);
+        return null == codec ? STRING : codec;
+    }
+
+    /**
+     * @return Codec registered for the nearest superclass, else for the first interface found
+     *         breadth first from the type up; null if no supertype has a codec
+     */
+    private static ColumnCodec codecForSupertype(Class<?> type) {
+        List<Class<?>> interfaces = new ArrayList<Class<?>>();
+        for ( Class<?> superclass = type; null != superclass; superclass = superclass.getSuperclass() ) {
+            ColumnCodec codec = _codecs.get(superclass);
+            if ( null != codec ) {
+                return codec;
+            }
+            interfaces.addAll(Arrays.asList(superclass.getInterfaces()));
+        }
+        Set<Class<?>> seen = new HashSet<Class<?>>();
+        for ( int i = 0; i < interfaces.size(); i++ ) {
+            Class<?> iface = interfaces.get(i);
+            if ( !seen.add(iface) ) {
+                continue;
+            }
+            ColumnCodec codec = _codecs.get(iface);
+            if ( null != codec ) {
+                return codec;
+            }
+            interfaces.addAll(Arrays.asList(iface.getInterfaces()));
+        }
+        return null;
+    }
+
+    /**
+     * Base for codecs of reference types: null values are written as empty columns and
+     * empty columns leave the field at its default value
+     */
+    public static abstract class ObjectCodec implements ColumnCodec {
+        @Override
+        public void write(Object o, ColumnField field, ColumnListMutation<String> mutation) throws IllegalAccessException {
+            Object value = field.get(o);
+            if ( null == value ) {
+                mutation.putEmptyColumn(field.getName(), null);
+            } else {
+                writeValue(field.getName(), value, mutation);
+            }
+        }
+
+        @Override
+        public void read(Object o, ColumnField field, Column<String> column) throws IllegalAccessException {
+            if ( column.hasValue() ) {
+                field.set(o, readValue(field, column));
+            }
+        }
+
+        @Override
+        public void readString(Object o, ColumnField field, String value) throws IllegalAccessException {
+            field.set(o, parse(field, value));
+        }
+
+        protected abstract void writeValue(String columnName, Object value, ColumnListMutation<String> mutation);
+
+        protected abstract Object readValue(ColumnField field, Column<String> column);
+
+        protected abstract Object parse(ColumnField field, String value);
+    }
+
+    static class StringCodec extends ObjectCodec {
+        @Override
+        public void read(Object o, ColumnField field, Column<String> column) throws IllegalAccessException {
+            field.set(o, column.getStringValue());
+        }
+
+        @Override
+        protected void writeValue(String columnName, Object value, ColumnListMutation<String> mutation) {
+            mutation.putColumn(columnName, value.toString(), null);
+        }
+
+        @Override
+        protected Object readValue(ColumnField field, Column<String> column) {
+            return column.getStringValue();
+        }
+
+        @Override
+        protected Object parse(ColumnField field, String value) {
+            return value;
+        }
+    }
+
+    static class NoneCodec implements ColumnCodec {
+        @Override
+        public void write(Object o, ColumnField field, ColumnListMutation<String> mutation) {
+        }
+
+        @Override
+        public void read(Object o, ColumnField field, Column<String> column) {
+        }
+
+        @Override
+        public void readString(Object o, ColumnField field, String value) {
+        }
+    }
+
+    static class BooleanCodec implements ColumnCodec {
+        @Override
+        public void write(Object o, ColumnField field, ColumnListMutation<String> mutation) throws IllegalAccessException {
+            mutation.putColumn(field.getName(), field.getBoolean(o), null);
+        }
+
+        @Override
+        public void read(Object o, ColumnField field, Column<String> column) throws IllegalAccessException {
+            if ( column.hasValue() ) {
+                field.setBoolean(o, column.getBooleanValue());
+            }
+        }
+
+        @Override
+        public void readString(Object o, ColumnField field, String value) throws IllegalAccessException {
+            field.setBoolean(o, null != value && Boolean.parseBoolean(value));
+        }
+    }
+
+    static class IntegerCodec implements ColumnCodec {
+        @Override
+        public void write(Object o, ColumnField field, ColumnListMutation<String> mutation) throws IllegalAccessException {
+            mutation.putColumn(field.getName(), field.getInt(o), null);
+        }
+
+        @Override
+        public void read(Object o, ColumnField field, Column<String> column) throws IllegalAccessException {
+            if ( column.hasValue() ) {
+                field.setInt(o, column.getIntegerValue());
+            }
+        }
+
+        @Override
+        public void readString(Object o, ColumnField field, String value) throws IllegalAccessException {
+            field.setInt(o, null == value ? 0 : Integer.parseInt(value));
+        }
+    }
+
+    static class LongCodec implements ColumnCodec {
+        @Override
+        public void write(Object o, ColumnField field, ColumnListMutation<String> mutation) throws IllegalAccessException {
+            mutation.putColumn(field.getName(), field.getLong(o), null);
+        }
+
+        @Override
+        public void read(Object o, ColumnField field, Column<String> column) throws IllegalAccessException {
+            if ( column.hasValue() ) {
+                field.setLong(o, column.getLongValue());
+            }
+        }
+
+        @Override
+        public void readString(Object o, ColumnField field, String value) throws IllegalAccessException {
+            field.setLong(o, null == value ? 0L : Long.parseLong(value));
+        }
+    }
+
+    static class DoubleCodec implements ColumnCodec {
+        @Override
+        public void write(Object o, ColumnField field, ColumnListMutation<String> mutation) throws IllegalAccessException {
+            mutation.putColumn(field.getName(), field.getDouble(o), null);
+        }
+
+        @Override
+        public void read(Object o, ColumnField field, Column<String> column) throws IllegalAccessException {
+            if ( column.hasValue() ) {
+                field.setDouble(o, column.getDoubleValue());
+            }
+        }
+
+        @Override
+        public void readString(Object o, ColumnField field, String value) throws IllegalAccessException {
+            field.setDouble(o, null == value ? 0.0 : Double.parseDouble(value));
+        }
+    }
+
+    /**
+     * Wrapper types share the encoding of their primitive, H2 defaults nulls the same way
+     */
+    static class BoxedCodec extends ObjectCodec {
+        private final Class<?> _type;
+
+        BoxedCodec(Class<?> type) {
+            _type = type;
+        }
+
+        @Override
+        protected void writeValue(String columnName, Object value, ColumnListMutation<String> mutation) {
+            if ( Boolean.class.equals(_type) ) {
+                mutation.putColumn(columnName, (Boolean) value, null);
+            } else if ( Integer.class.equals(_type) ) {
+                mutation.putColumn(columnName, (Integer) value, null);
+            } else if ( Long.class.equals(_type) ) {
+                mutation.putColumn(columnName, (Long) value, null);
+            } else {
+                mutation.putColumn(columnName, (Double) value, null);
+            }
+        }
+
+        @Override
+        protected Object readValue(ColumnField field, Column<String> column) {
+            if ( Boolean.class.equals(_type) ) {
+                return column.getBooleanValue();
+            } else if ( Integer.class.equals(_type) ) {
+                return column.getIntegerValue();
+            } else if ( Long.class.equals(_type) ) {
+                return column.getLongValue();
+            }
+            return column.getDoubleValue();
+        }
+
+        @Override
+        protected Object parse(ColumnField field, String value) {
+            if ( Boolean.class.equals(_type) ) {
+                return null != value && Boolean.parseBoolean(value);
+            } else if ( Integer.class.equals(_type) ) {
+                return null == value ? 0 : Integer.parseInt(value);
+            } else if ( Long.class.equals(_type) ) {
+                return null == value ? 0L : Long.parseLong(value);
+            }
+            return null == value ? 0.0 : Double.parseDouble(value);
+        }
+    }
+
+    static class DateCodec extends ObjectCodec {
+        private static final String H2_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
+
+        @Override
+        protected void writeValue(String columnName, Object value, ColumnListMutation<String> mutation) {
+            mutation.putColumn(columnName, (Date) value, null);
+        }
+
+        @Override
+        protected Object readValue(ColumnField field, Column<String> column) {
+            return column.getDateValue();
+        }
+
+        /**
+         * H2 stores dates with Date.toString()
+         */
+        @Override
+        protected Object parse(ColumnField field, String value) {
+            if ( null == value || value.isEmpty() ) {
+                return null;
+            }
+            try {
+                return new SimpleDateFormat(H2_FORMAT, Locale.US).parse(value);
+            } catch ( ParseException e ) {
+                return null;
+            }
+        }
+    }
+
+    static class DateTimeCodec extends ObjectCodec {
+        @Override
+        public void read(Object o, ColumnField field, Column<String> column) throws IllegalAccessException {
+            field.set(o, readValue(field, column));
+        }
+
+        @Override
+        protected void writeValue(String columnName, Object value, ColumnListMutation<String> mutation) {
+            mutation.putColumn(columnName, value.toString(), null);
+        }
+
+        @Override
+        protected Object readValue(ColumnField field, Column<String> column) {
+            String value = column.getStringValue();
+            return value.isEmpty() ? null : DateTime.parse(value);
+        }
+
+        @Override
+        protected Object parse(ColumnField field, String value) {
+            return null == value ? new DateTime(0L) : DateTime.parse(value);
+        }
+    }
+
+    static class BigDecimalCodec extends ObjectCodec {
+        @Override
+        public void read(Object o, ColumnField field, Column<String> column) throws IllegalAccessException {
+            try {
+                super.read(o, field, column);
+            } catch ( NumberFormatException e ) {
+                // Let it slide, Model constructor generates default value
+            }
+        }
+
+        @Override
+        protected void writeValue(String columnName, Object value, ColumnListMutation<String> mutation) {
+            mutation.putColumn(columnName, value.toString(), null);
+        }
+
+        @Override
+        protected Object readValue(ColumnField field, Column<String> column) {
+            return new BigDecimal(column.getStringValue());
+        }
+
+        @Override
+        protected Object parse(ColumnField field, String value) {
+            return null == value ? null : new BigDecimal(value);
+        }
+    }
+
+    /**
+     * UUIDs are stored in their string form; 16 byte binary values are read as well
+     */
+    static class UUIDCodec extends ObjectCodec {
+        @Override
+        protected void writeValue(String columnName, Object value, ColumnListMutation<String> mutation) {
+            mutation.putColumn(columnName, value.toString(), null);
+        }
+
+        @Override
+        protected Object readValue(ColumnField field, Column<String> column) {
+            ByteBuffer raw = column.getByteBufferValue();
+            if ( null != raw && raw.remaining() == 16 ) {
+                return column.getUUIDValue();
+            }
+            return UUID.fromString(column.getStringValue());
+        }
+
+        @Override
+        protected Object parse(ColumnField field, String value) {
+            return null == value || value.isEmpty() ? null : UUID.fromString(value);
+        }
+    }
+
+    static class ByteBufferCodec extends ObjectCodec {
+        @Override
+        protected void writeValue(String columnName, Object value, ColumnListMutation<String> mutation) {
+            mutation.putColumn(columnName, ((ByteBuffer) value).duplicate(), null);
+        }
+
+        @Override
+        protected Object readValue(ColumnField field, Column<String> column) {
+            return column.getByteBufferValue();
+        }
+
+        /**
+         * Binary values have no string form in H2
+         */
+        @Override
+        protected Object parse(ColumnField field, String value) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static class EnumCodec extends ObjectCodec {
+        /**
+         * Unknown constants leave the field at its default value
+         */
+        @Override
+        public void readString(Object o, ColumnField field, String value) throws IllegalAccessException {
+            Object constant = parse(field, value);
+            if ( null != constant ) {
+                field.set(o, constant);
+            }
+        }
+
+        @Override
+        public void read(Object o, ColumnField field, Column<String> column) throws IllegalAccessException {
+            readString(o, field, column.getStringValue());
+        }
+
+        @Override
+        protected void writeValue(String columnName, Object value, ColumnListMutation<String> mutation) {
+            mutation.putColumn(columnName, ((Enum) value).name(), null);
+        }
+
+        @Override
+        protected Object readValue(ColumnField field, Column<String> column) {
+            return parse(field, column.getStringValue());
+        }
+
+        @Override
+        protected Object parse(ColumnField field, String value) {
+            if ( null == value || value.isEmpty() ) {
+                return null;
+            }
+            try {
+                return Enum.valueOf((Class<Enum>) field.getType(), value);
+            } catch ( IllegalArgumentException e ) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Single relations are stored as the key of the referenced model
+     */
+    @SuppressWarnings("unchecked")
+    static class RelationCodec extends ObjectCodec {
+        /**
+         * A reference which was never loaded keeps its stored key
+         */
+        @Override
+        public void write(Object o, ColumnField field, ColumnListMutation<String> mutation) throws IllegalAccessException {
+            if ( null == field.get(o) && o instanceof Model ) {
+                LazyRelation relation = ((Model) o)._getLazyRelation(field.getFieldName());
+                if ( null != relation ) {
+                    mutation.putColumn(field.getName(), relation.getId(), null);
+                    return;
+                }
+            }
+            super.write(o, field, mutation);
+        }
+
+        @Override
+        protected void writeValue(String columnName, Object value, ColumnListMutation<String> mutation) {
+            mutation.putColumn(columnName, ((play.db.Model) value)._key().toString(), null);
+        }
+
+        @Override
+        protected Object readValue(ColumnField field, Column<String> column) {
+            return parse(field, column.getStringValue());
+        }
+
+        @Override
+        protected Object parse(ColumnField field, String value) {
+            Class<? extends play.db.Model> type = (Class<? extends play.db.Model>) field.getType();
+            return play.db.Model.Manager.factoryFor(type).findById(value);
+        }
+    }
+
+    /**
+     * Lists of models are stored as a JSON array of keys and loaded as a RelationList
+     */
+    @SuppressWarnings("unchecked")
+    static class RelationListCodec extends ObjectCodec {
+        @Override
+        protected void writeValue(String columnName, Object value, ColumnListMutation<String> mutation) {
+            List<String> idList = new ArrayList<String>();
+            if ( value instanceof RelationList ) {
+                // Relations not read yet keep their keys, iterating would load them
+                for ( Object id : ((RelationList) value).getIds() ) {
+                    if ( null != id ) {
+                        idList.add(id.toString());
+                    }
+                }
+            } else {
+                for ( play.db.Model model : (Collection<play.db.Model>) value ) {
+                    if ( null != model && null != model._key() ) {
+                        idList.add(model._key().toString());
+                    }
+                }
+            }
+            mutation.putColumn(columnName, new Gson().toJson(idList), null);
+        }
+
+        @Override
+        protected Object readValue(ColumnField field, Column<String> column) {
+            return parse(field, column.getStringValue());
+        }
+
+        @Override
+        protected Object parse(ColumnField field, String value) {
+            RelationList list = new RelationList();
+            String [] ids = new Gson().fromJson(value, String[].class);
+            if ( null != ids ) {
+                for ( String id : ids ) {
+                    list.add(new Relation(field.genericType().getName(), id));
+                }
+            }
+            return list;
+        }
+    }
+}
@@ -1,82 +1,457 @@
 package play.modules.cassandra.jetlang;
 
 import com.netflix.astyanax.model.ColumnFamily;
+import org.jetlang.channels.BatchSubscriber;
 import org.jetlang.channels.Channel;
 import org.jetlang.channels.MemoryChannel;
 import org.jetlang.core.Callback;
 import org.jetlang.core.Disposable;
 import org.jetlang.fibers.Fiber;
 import org.jetlang.fibers.ThreadFiber;
+import play.Play;
+import play.exceptions.DatabaseException;
+import play.exceptions.UnexpectedException;
 import play.modules.cassandra.CassandraDB;
+import play.modules.cassandra.CassandraLogger;
+import play.modules.cassandra.ColumnField;
 import play.modules.cassandra.Model;
 import play.modules.cassandra.ModelReflector;
+import play.modules.cassandra.UnitOfWork;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class implements JetLang monitors for the parallelization of Cassandra reads
  * and writes.
  *
+ * With cassandra.writemode=async saves, deletes, column sets and Model.saveAll() are published
+ * to a write channel and return right away. A save publishes a copy of the model taken on the calling thread, so
+ * the model may be changed again while it is written; the counters it sets are considered
+ * written once published. There are cassandra.writebehind.fibers write fibers, each with its own
+ * channel; the row key of a write picks its fiber, so the writes of a row stay in order while
+ * different rows are written concurrently. Each fiber receives its writes in batches every
+ * cassandra.writebehind.interval milliseconds, coalesces the writes of each row (see UnitOfWork)
+ * and writes the batch with as few mutation batches as it can. Deleting all the rows of a
+ * column family publishes a barrier to every fiber: each one writes what was queued before
+ * it and holds its later writes until the rows are deleted.
+ *
+ * At most cassandra.writebehind.capacity writes wait to be written. When the queue is full
+ * publishing blocks for up to cassandra.writebehind.timeout milliseconds
+ * (cassandra.writebehind.overflow=block) or fails right away (overflow=fail). A batch which
+ * fails is written again up to cassandra.writebehind.retries times, unless it writes counters:
+ * increments applied in part would be counted twice. Writes still failing are logged, counted
+ * and handed to the DeadLetterHandler named by cassandra.writebehind.deadletter, if any.
+ *
  * User: mwilson
  * Date: 12-05-11
  * Time: 1:54 PM
  */
 public class CassandraMonitor implements Disposable {
-    private Fiber _writeFiber;
-    private Channel<WriteEvent> _writeChannel;
-    private Channel<play.modules.cassandra.jetlang.DeleteEvent> _deleteChannel;
-    private Fiber _deleteFiber;
+    private final Partition[] _partitions;
     private CassandraDB _ds;
 
+    private final int _capacity;
+    private final Semaphore _queue;
+    private final boolean _failOnOverflow;
+    private final long _timeout;
+    private final int _retries;
+    private final DeadLetterHandler _deadLetters;
+    private volatile boolean _disposed = false;
+
+    private final AtomicLong _published = new AtomicLong();
+    private final AtomicLong _written = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+    private final AtomicLong _retried = new AtomicLong();
+    private final AtomicLong _batches = new AtomicLong();
+    private final AtomicLong _lastLag = new AtomicLong();
+    private final AtomicLong _maxLag = new AtomicLong();
+
     public CassandraMonitor(CassandraDB ds) {
         _ds = ds;
+        _capacity = Math.max(1, Integer.parseInt(Play.configuration.getProperty("cassandra.writebehind.capacity", "10000")));
+        _queue = new Semaphore(_capacity);
+        _failOnOverflow = "fail".equalsIgnoreCase(Play.configuration.getProperty("cassandra.writebehind.overflow", "block"));
+        _timeout = Long.parseLong(Play.configuration.getProperty("cassandra.writebehind.timeout", "5000"));
+        int interval = Math.max(1, Integer.parseInt(Play.configuration.getProperty("cassandra.writebehind.interval", "100")));
+        int fibers = Math.max(1, Integer.parseInt(Play.configuration.getProperty("cassandra.writebehind.fibers", "4")));
+        _retries = Math.max(0, Integer.parseInt(Play.configuration.getProperty("cassandra.writebehind.retries", "2")));
+        _deadLetters = deadLetterHandler(Play.configuration.getProperty("cassandra.writebehind.deadletter"));
+
+        _partitions = new Partition[fibers];
+        for ( int i = 0; i < fibers; i++ ) {
+            _partitions[i] = new Partition(interval);
+        }
+    }
+
+    private static DeadLetterHandler deadLetterHandler(String className) {
+        if ( null == className || className.trim().length() == 0 ) {
+            return null;
+        }
+        try {
+            return (DeadLetterHandler) Play.classloader.loadClass(className.trim()).getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new UnexpectedException(String.format("Could not create the write behind dead letter handler %s", className), e);
+        }
+    }
+
+    /**
+     * Write fiber with its channel; writes of a row always go to the same partition
+     */
+    private class Partition {
+        final Fiber fiber = new ThreadFiber();
+        final Channel<WriteEvent> channel = new MemoryChannel<WriteEvent>();
+        final AtomicInteger depth = new AtomicInteger();
+
+        Partition(int interval) {
+            fiber.start();
+            Callback<List<WriteEvent>> onMsgs = new Callback<List<WriteEvent>>() {
+                @Override
+                public void onMessage(List<WriteEvent> writeEvents) {
+                    int events = 0;
+                    for ( WriteEvent event : writeEvents ) {
+                        if ( !event.isBarrier() ) {
+                            events++;
+                        }
+                    }
+                    try {
+                        write(writeEvents);
+                    } finally {
+                        depth.addAndGet(-events);
+                        _queue.release(events);
+                    }
+                }
+            };
+            channel.subscribe(new BatchSubscriber<WriteEvent>(fiber, onMsgs, interval, TimeUnit.MILLISECONDS));
+        }
+
+        void publish(WriteEvent event) {
+            if ( !event.isBarrier() ) {
+                depth.incrementAndGet();
+            }
+            channel.publish(event);
+        }
+    }
+
+    private Partition partitionFor(UnitOfWork.RowKey key) {
+        int hash = key.hashCode();
+        return _partitions[(hash & Integer.MAX_VALUE) % _partitions.length];
+    }
+
+    /**
+     * @return TRUE if saves and deletes are written behind (cassandra.writemode=async)
+     */
+    public static boolean isEnabled() {
+        return "async".equalsIgnoreCase(Play.configuration.getProperty("cassandra.writemode", "sync"));
+    }
+
+    private void write(List<WriteEvent> writeEvents) {
+        long oldest = Long.MAX_VALUE;
+        List<WriteEvent> coalesced = new ArrayList<WriteEvent>();
+        for ( WriteEvent event : writeEvents ) {
+            if ( event.isBarrier() ) {
+                writeCoalesced(coalesced);
+                coalesced = new ArrayList<WriteEvent>();
+                event.barrier.run();
+                continue;
+            }
+            oldest = Math.min(oldest, event.getPublished());
+            coalesced.add(event);
+        }
+        writeCoalesced(coalesced);
+        if ( Long.MAX_VALUE == oldest ) {
+            return;
+        }
+
+        long lag = System.currentTimeMillis() - oldest;
+        _lastLag.set(lag);
+        long max = _maxLag.get();
+        while ( lag > max && !_maxLag.compareAndSet(max, lag) ) {
+            max = _maxLag.get();
+        }
+    }
+
+    /**
+     * Coalesces the events into one unit of work and writes it
+     */
+    private void writeCoalesced(List<WriteEvent> events) {
+        if ( events.isEmpty() ) {
+            return;
+        }
+        UnitOfWork work = new UnitOfWork();
+        // Counters as known to the first save of each row, the saves coalesced after it set theirs from there
+        Map<UnitOfWork.RowKey, long[]> counters = new HashMap<UnitOfWork.RowKey, long[]>();
+        for ( WriteEvent event : events ) {
+            UnitOfWork.RowKey key = event.getKey();
+            if ( event.isDelete() ) {
+                work.delete(key.getType(), key.getId());
+            } else if ( event.isSet() ) {
+                work.set(key.getType(), key.getId(), event.getColumn(), event.getValue());
+            } else {
+                if ( event.isSaveCounters() ) {
+                    if ( counters.containsKey(key) ) {
+                        event.getModel()._setCounters(counters.get(key));
+                    } else {
+                        counters.put(key, event.getModel()._getCounters());
+                    }
+                }
+                work.save(event.getModel(), event.isSaveCounters());
+            }
+        }
+        flush(work, events);
+    }
+
+    /**
+     * @param events Events coalesced into the unit of work
+     */
+    private void flush(UnitOfWork work, List<WriteEvent> events) {
+        if ( work.isEmpty() ) {
+            return;
+        }
+        // Writing deletes and saves again is harmless, increments are not
+        int attempts = writesCounters(work) ? 1 : 1 + _retries;
+        for ( int attempt = 1; ; attempt++ ) {
+            try {
+                _ds.flush(work);
+                _written.addAndGet(events.size());
+                _batches.incrementAndGet();
+                return;
+            } catch (RuntimeException e) {
+                if ( attempt < attempts ) {
+                    CassandraLogger.warn("Write behind: could not write %d events (%s), attempt %d of %d: %s", events.size(), work, attempt, attempts, e.getMessage());
+                    _retried.incrementAndGet();
+                    continue;
+                }
+                CassandraLogger.error(e, "Write behind: could not write %d events (%s)", events.size(), work);
+                _failed.addAndGet(events.size());
+                deadLetter(events, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return TRUE if the unit of work saves counters or sets a counter column
+     */
+    private static boolean writesCounters(UnitOfWork work) {
+        if ( !work.getSaves(true).isEmpty() ) {
+            return true;
+        }
+        for ( Map.Entry<UnitOfWork.RowKey, Map<String, Object>> row : work.getColumns().entrySet() ) {
+            ModelReflector reflector = ModelReflector.reflectorFor(row.getKey().getType());
+            for ( String column : row.getValue().keySet() ) {
+                ColumnField field = reflector.getColumnField(column);
+                if ( null != field && field.isCounter() ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void deadLetter(List<WriteEvent> events, Throwable cause) {
+        if ( null == _deadLetters ) {
+            return;
+        }
+        try {
+            _deadLetters.onDeadLetter(events, cause);
+        } catch (RuntimeException e) {
+            CassandraLogger.error(e, "Write behind: dead letter handler failed on %d events", events.size());
+        }
+    }
+
+    private void publish(WriteEvent event) {
+        acquire();
+        _published.incrementAndGet();
+        partitionFor(event.getKey()).publish(event);
+    }
 
-        _deleteFiber = new ThreadFiber();
-        _deleteFiber.start();
-        _writeFiber = new ThreadFiber();
-        _writeFiber.start();
+    private void acquire() {
+        if ( _disposed ) {
+            throw new DatabaseException("Write behind is stopped");
+        }
+        try {
+            boolean queued = _failOnOverflow ? _queue.tryAcquire() : _queue.tryAcquire(_timeout, TimeUnit.MILLISECONDS);
+            if ( !queued ) {
+                throw new DatabaseException(String.format("Write behind queue is full (%d writes)", _capacity));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while waiting for the write behind queue", e);
+        }
+    }
 
-        _writeChannel = new MemoryChannel<WriteEvent>();
-        _deleteChannel = new MemoryChannel<play.modules.cassandra.jetlang.DeleteEvent>();
+    /**
+     * Deletes every row of the column family once the writes queued before were written. The
+     * writes queued meanwhile wait for the rows to be deleted.
+     */
+    public void deleteAll(ColumnFamily<String, String> cf) {
+        long timeout = Long.parseLong(Play.configuration.getProperty("cassandra.writebehind.stoptimeout", "30000"));
+        CountDownLatch deleted = new CountDownLatch(1);
+        try {
+            if ( !barrier(timeout, deleted) ) {
+                throw new DatabaseException(String.format("Write behind: writes queued before were not written in %dms, not deleting %s", timeout, cf.getName()));
+            }
+            _ds.deleteAll(cf);
+        } finally {
+            deleted.countDown();
+        }
+    }
 
-        Callback<DeleteEvent> onDeleteMsg = new Callback<play.modules.cassandra.jetlang.DeleteEvent>() {
+    /**
+     * Publishes a barrier to every write fiber and waits until each one wrote the events
+     * published before it
+     *
+     * @param timeout Milliseconds to wait at most
+     * @param release Latch the fibers wait for once they reached the barrier; null to let them go on
+     * @return TRUE if every fiber reached the barrier in time
+     */
+    private boolean barrier(long timeout, final CountDownLatch release) {
+        final CountDownLatch arrived = new CountDownLatch(_partitions.length);
+        Runnable barrier = new Runnable() {
             @Override
-            public void onMessage(play.modules.cassandra.jetlang.DeleteEvent deleteEvent) {
-                _ds.deleteAll(deleteEvent.cf);
+            public void run() {
+                arrived.countDown();
+                if ( null != release ) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
             }
         };
+        for ( Partition partition : _partitions ) {
+            partition.publish(WriteEvent.barrier(barrier));
+        }
+        try {
+            return arrived.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
-        Callback<play.modules.cassandra.jetlang.WriteEvent> onMsg = new Callback<play.modules.cassandra.jetlang.WriteEvent>() {
-            @Override
-            public void onMessage(play.modules.cassandra.jetlang.WriteEvent writeEvent) {
-                ModelReflector reflector = ModelReflector.reflectorFor(writeEvent.model.getClass());
+    public void publishDelete(Model o) {
+        publish(WriteEvent.delete(o));
+    }
 
-                // Cassandra
-                _ds.save(writeEvent.model, reflector.getColumnFamily(), writeEvent.saveCounters);
+    /**
+     * Publishes a copy of the model. With saveCounters the counters of the model are taken as
+     * written, the next save of the model increments them from there.
+     */
+    public void publishSave(Model o, Boolean saveCounters) {
+        ModelReflector reflector = ModelReflector.reflectorFor(o.getClass());
+        WriteEvent event;
+        try {
+            event = WriteEvent.save(reflector.<Model>detach(o), saveCounters);
+            if ( saveCounters && reflector.hasCounters() ) {
+                o._setCounters(reflector.counterValues(o));
             }
-        };
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+        publish(event);
+    }
 
-        _writeChannel.subscribe(_writeFiber, onMsg);
-        _deleteChannel.subscribe(_deleteFiber, onDeleteMsg);
+    /**
+     * Publishes a column value, written in order with the saves and deletes of the row
+     *
+     * @param type Model class
+     * @param id Key of the row
+     * @param column Column name
+     * @param value Value to write
+     */
+    public void publishSet(Class<?> type, String id, String column, Object value) {
+        publish(WriteEvent.set(new UnitOfWork.RowKey(type, id), column, value));
     }
 
-    public void publishDelete(ColumnFamily<String, String> cf) {
-        play.modules.cassandra.jetlang.DeleteEvent deleteEvent = new play.modules.cassandra.jetlang.DeleteEvent();
-        deleteEvent.cf = cf;
-        _deleteChannel.publish(deleteEvent);
+    /**
+     * Waits until every write published so far was written
+     *
+     * @param timeout Milliseconds to wait at most
+     * @return TRUE if the writes were written in time
+     */
+    public boolean flush(long timeout) {
+        return barrier(timeout, null);
     }
 
-    public void publishSave(Model o, Boolean saveCounters) {
-        play.modules.cassandra.jetlang.WriteEvent event = new play.modules.cassandra.jetlang.WriteEvent();
-        event.model = o;
-        event.saveCounters = saveCounters;
-        _writeChannel.publish(event);
+    /**
+     * @return Writes published and not written yet
+     */
+    public int getQueueDepth() {
+        return _capacity - _queue.availablePermits();
+    }
+
+    /**
+     * @return Writes queued on each write fiber
+     */
+    public int[] getPartitionDepths() {
+        int[] depths = new int[_partitions.length];
+        for ( int i = 0; i < _partitions.length; i++ ) {
+            depths[i] = _partitions[i].depth.get();
+        }
+        return depths;
+    }
+
+    public int getCapacity() {
+        return _capacity;
+    }
+
+    public long getPublished() {
+        return _published.get();
+    }
+
+    /**
+     * @return Writes written, counting each coalesced write
+     */
+    public long getWritten() {
+        return _written.get();
+    }
+
+    public long getFailed() {
+        return _failed.get();
+    }
+
+    /**
+     * @return Batches written again after a failure
+     */
+    public long getRetried() {
+        return _retried.get();
+    }
+
+    public long getBatches() {
+        return _batches.get();
+    }
+
+    /**
+     * @return Milliseconds the oldest write of the last batch waited before it was written
+     */
+    public long getLastLag() {
+        return _lastLag.get();
+    }
+
+    public long getMaxLag() {
+        return _maxLag.get();
     }
 
     @Override
     public void dispose() {
-        _deleteFiber.dispose();
-        _deleteFiber = null;
+        _disposed = true;
+        long timeout = Long.parseLong(Play.configuration.getProperty("cassandra.writebehind.stoptimeout", "30000"));
+        if ( !flush(timeout) ) {
+            CassandraLogger.error("Write behind: %d writes were not written before stopping", getQueueDepth());
+        }
 
-        _writeFiber.dispose();
-        _writeFiber = null;
+        for ( Partition partition : _partitions ) {
+            partition.fiber.dispose();
+        }
     }
 }
@@ -0,0 +1,15 @@
+package play.modules.cassandra.jetlang;
+
+import java.util.List;
+
+/**
+ * Receives the writes the write behind queue gave up on, to store them elsewhere or publish
+ * them again. Named by cassandra.writebehind.deadletter; it is called on a write fiber.
+ */
+public interface DeadLetterHandler {
+    /**
+     * @param events Writes which could not be written, in publishing order
+     * @param cause Error of the last attempt
+     */
+    void onDeadLetter(List<WriteEvent> events, Throwable cause);
+}
@@ -1,6 +1,95 @@
 package play.modules.cassandra.jetlang;
 
+import play.modules.cassandra.Model;
+import play.modules.cassandra.UnitOfWork;
+
+/**
+ * Save, delete or column set published to the write behind queue. Events are immutable: a save
+ * holds a copy of the model taken when it was published, see ModelReflector.detach().
+ */
 public class WriteEvent {
-    play.modules.cassandra.Model model;
-    boolean saveCounters;
+    private final UnitOfWork.RowKey key;
+    private final Model model;
+    private final boolean saveCounters;
+    private final String column;
+    private final Object value;
+    private final long published = System.currentTimeMillis();
+    // Run by the write fiber once the events published before it are written
+    final Runnable barrier;
+
+    private WriteEvent(UnitOfWork.RowKey key, Model model, boolean saveCounters, String column, Object value, Runnable barrier) {
+        this.key = key;
+        this.model = model;
+        this.saveCounters = saveCounters;
+        this.column = column;
+        this.value = value;
+        this.barrier = barrier;
+    }
+
+    static WriteEvent save(Model copy, boolean saveCounters) {
+        return new WriteEvent(new UnitOfWork.RowKey(copy.getClass(), copy._key()), copy, saveCounters, null, null, null);
+    }
+
+    static WriteEvent delete(Model o) {
+        return new WriteEvent(new UnitOfWork.RowKey(o.getClass(), o._key()), null, false, null, null, null);
+    }
+
+    static WriteEvent set(UnitOfWork.RowKey key, String column, Object value) {
+        return new WriteEvent(key, null, false, column, value, null);
+    }
+
+    static WriteEvent barrier(Runnable barrier) {
+        return new WriteEvent(null, null, false, null, null, barrier);
+    }
+
+    boolean isBarrier() {
+        return null != barrier;
+    }
+
+    /**
+     * @return Row written or deleted
+     */
+    public UnitOfWork.RowKey getKey() {
+        return key;
+    }
+
+    /**
+     * @return Copy of the model saved; null for a delete or a set
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    public boolean isDelete() {
+        return null == model && null == column && null == barrier;
+    }
+
+    public boolean isSet() {
+        return null != column;
+    }
+
+    /**
+     * @return Column set; null unless isSet()
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * @return Value the column is set to
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    public boolean isSaveCounters() {
+        return saveCounters;
+    }
+
+    /**
+     * @return Time the event was published, in milliseconds
+     */
+    public long getPublished() {
+        return published;
+    }
 }
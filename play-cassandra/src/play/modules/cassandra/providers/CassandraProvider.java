@@ -1,6 +1,6 @@
 package play.modules.cassandra.providers;
 
-import com.google.gson.Gson;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.astyanax.*;
 import com.netflix.astyanax.connectionpool.HostConnectionPool;
 import com.netflix.astyanax.connectionpool.NodeDiscoveryType;
@@ -12,21 +12,24 @@ import com.netflix.astyanax.connectionpool.impl.ConnectionPoolType;
 import com.netflix.astyanax.connectionpool.impl.CountingConnectionPoolMonitor;
 import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
 import com.netflix.astyanax.model.*;
+import com.netflix.astyanax.query.RowQuery;
 import com.netflix.astyanax.retry.ExponentialBackoff;
 import com.netflix.astyanax.serializers.AnnotatedCompositeSerializer;
+import com.netflix.astyanax.serializers.CompositeRangeBuilder;
 import com.netflix.astyanax.serializers.StringSerializer;
 import com.netflix.astyanax.thrift.ThriftFamilyFactory;
 import com.netflix.astyanax.util.RangeBuilder;
-import org.joda.time.DateTime;
 import play.Logger;
 import play.Play;
 import play.exceptions.DatabaseException;
+import play.libs.Codec;
 import play.exceptions.UnexpectedException;
 import play.modules.cassandra.*;
+import play.modules.cassandra.codecs.ColumnCodec;
 
-import java.math.BigDecimal;
-import java.nio.ByteBuffer;
+import java.io.UnsupportedEncodingException;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static play.modules.cassandra.CassandraLogger.*;
 
@@ -37,6 +40,9 @@ public class CassandraProvider implements CassandraDB {
 	private static ConnectionPoolConfigurationImpl _pool = null;
 	private static AstyanaxConfigurationImpl _asConfig = null;
 	private AstyanaxContext<Keyspace> _context = null;
+    private static ExecutorService _multiGetExecutor = null;
+    private static ExecutorService _batchExecutor = null;
+    private ScanEngine _scanEngine = null;
 
     static AnnotatedCompositeSerializer<CompositeJoinOrdinals> joinSerializer
             = new AnnotatedCompositeSerializer<CompositeJoinOrdinals>(CompositeJoinOrdinals.class);
@@ -91,26 +97,32 @@ public class CassandraProvider implements CassandraDB {
 
     /**
      * @param clazz Class type for model instantiation
-     * @return List of all models in column family
+     * @return Cursor streaming all models in column family
      */
-    public List<? extends play.db.Model> all(Class<? extends play.db.Model> clazz) {
-        ColumnFamily<String, String> cf = ModelReflector.reflectorFor(clazz).getColumnFamily();
-        Rows<String, String> rows = getAllRows(cf);
-        List<Model> modelList = new ModelRowsList<Model>(rows, clazz);
-        return modelList;
+    public ModelCursor<? extends play.db.Model> all(Class<? extends play.db.Model> clazz) {
+        return new ModelRowCursor<Model>(clazz, "");
     }
 
-    private Rows<String, String> getAllRows(ColumnFamily<String, String> cf) {
-        try {
-            Keyspace keyspace = getKeyspace();
-            OperationResult<Rows<String, String>> results = keyspace.prepareQuery(cf)
-                    .getAllRows()
-                    .execute();
+    /**
+     * @param clazz Class type for model instantiation
+     * @param pageToken Token from ModelCursor.getPageToken(); null to start from the first row
+     * @return Cursor over the models following the token
+     */
+    public ModelCursor<? extends play.db.Model> all(Class<? extends play.db.Model> clazz, String pageToken) {
+        return new ModelRowCursor<Model>(clazz, decodePageToken(pageToken));
+    }
 
-            return results.getResult();
-        } catch ( ConnectionException e ) {
-            throw new UnexpectedException(e);
+    /**
+     * @param clazz Class type for model instantiation
+     * @return Spliterator over all models in column family, split by token range; it can not be split
+     *         when the token ranges of the ring can not be computed (see TokenRanges)
+     */
+    public ModelSpliterator<? extends play.db.Model> spliterator(Class<? extends play.db.Model> clazz) {
+        List<TokenRanges.Range> ranges = TokenRanges.split(getKeyspace(), 1);
+        if ( null == ranges ) {
+            return new KeyOrderSpliterator<Model>(new ModelRowCursor<Model>(clazz, "").iterator());
         }
+        return new TokenRangeSpliterator<Model>(clazz, ranges);
     }
 
     /**
@@ -139,88 +151,43 @@ public class CassandraProvider implements CassandraDB {
      *
      * @param cf Column family containing models for deletion
      */
-    public void deleteAll(ColumnFamily<String, String> cf) {
-        try {
-            //Rows<String, String> rows = getAllRows(cf);
-            final Keyspace keyspace = getKeyspace();
-
-            // TruncateColumnFamily too slow - much faster to use Range of indexes with callback using getAllRows special query
-            //keyspace.truncateColumnFamily(cf);
-            final ColumnFamily<String, String> innerCf = cf;
-            final MutationBatch mb = keyspace.prepareMutationBatch();
-            final int[] mbCount = {0,0};
-            keyspace.prepareQuery(cf)
-                    .getAllRows()
-                    .setRowLimit(100)
-                    .setRepeatLastToken(true)
-                    .withColumnRange(new RangeBuilder().setLimit(2).build())
-                    .executeWithCallback(new RowCallback<String, String>() {
-                        @Override
-                        public void success(Rows<String, String> rows) {
-                            for (Row<String, String> row : rows) {
-                                mbCount[1]++;
-                                if ( !row.getColumns().isEmpty() ) {
-                                    String rowKey = row.getKey();
-                                    mb.withRow(innerCf, rowKey).delete();
-                                    mbCount[0]++;
-                                    if ( mbCount[0] >= 80 ) {
-                                        try {
-                                            mbCount[0] = 0;
-                                            mb.execute();
-                                            mb.discardMutations();
-                                            debug("Executed DELETE mutation");
-                                        } catch (ConnectionException e) {
-                                            error(e, "Unable to execute mutationBatch while in Callback");
-                                        }
-                                    }
-                                }
-                            }
-                        }
-
-                        @Override
-                        public boolean failure(ConnectionException e) {
-                            return false;
-                        }
-                    });
+    public void deleteAll(final ColumnFamily<String, String> cf) {
+        final Keyspace keyspace = getKeyspace();
 
-            if ( !mb.isEmpty() ) {
+        // TruncateColumnFamily too slow - much faster to delete the rows of each token range in parallel,
+        // one mutation batch per page
+        //keyspace.truncateColumnFamily(cf);
+        scanEngine().scan(cf, 1, 0, new RowVisitor() {
+            @Override
+            public boolean visit(List<Row<String, String>> rows) throws ConnectionException {
+                MutationBatch mb = keyspace.prepareMutationBatch();
+                for ( Row<String, String> row : rows ) {
+                    mb.withRow(cf, row.getKey()).delete();
+                }
                 mb.execute();
+                debug("Executed DELETE mutation of %d rows", rows.size());
+                return true;
             }
-            // Determine if we have any counters
-            ModelReflector reflector = ModelReflector.reflectorFor(cf.getName());
-            if ( reflector.hasCounters() ) {
-                final ColumnFamily<String, String> counterColumnFamily = reflector.getCounterColumnFamily();
-                //keyspace.truncateColumnFamily(counterColumnFamily);
-                keyspace.prepareQuery(counterColumnFamily)
-                        .getAllRows()
-                        .setRowLimit(100)
-                        .setRepeatLastToken(true)
-                        .withColumnRange(new RangeBuilder().setLimit(25).build())
-                        .executeWithCallback(new RowCallback<String, String>() {
-                            @Override
-                            public void success(Rows<String, String> rows) {
-                                for ( Row<String, String>  row : rows ) {
-                                    for ( Column<String> column : row.getColumns() ) {
-                                        try {
-                                            keyspace.prepareColumnMutation(counterColumnFamily, row.getKey(), column.getName())
-                                                    .deleteCounterColumn()
-                                                    .execute();
-                                        } catch (ConnectionException e) {
-                                            throw new DatabaseException(e.getMessage());
-                                        }
-                                    }
-                                }
-                            }
-
-                            @Override
-                            public boolean failure(ConnectionException e) {
-                                return false;
-                            }
-                        });
-            }
-        } catch ( ConnectionException e ) {
-            CassandraLogger.error(e, "Error deleting models");
-            throw new UnexpectedException(e);
+        }, null);
+
+        // Determine if we have any counters
+        ModelReflector reflector = ModelReflector.reflectorFor(cf.getName());
+        if ( reflector.hasCounters() ) {
+            final ColumnFamily<String, String> counterColumnFamily = reflector.getCounterColumnFamily();
+            //keyspace.truncateColumnFamily(counterColumnFamily);
+            // Whole counter rows are deleted, one mutation batch per page like the rows above
+            scanEngine().scan(counterColumnFamily, 1, 0, new RowVisitor() {
+                @Override
+                public boolean visit(List<Row<String, String>> rows) throws ConnectionException {
+                    MutationBatch mb = keyspace.prepareMutationBatch();
+                    for ( Row<String, String> row : rows ) {
+                        mb.withRow(counterColumnFamily, row.getKey()).delete();
+                    }
+                    mb.execute();
+                    debug("Executed DELETE mutation of %d counter rows", rows.size());
+                    return true;
+                }
+            }, null);
         }
     }
 
@@ -233,44 +200,75 @@ public class CassandraProvider implements CassandraDB {
      * @return Populated model from column result
      */
     private <T extends play.db.Model> T parseColumns(Class<? extends play.db.Model> modelClazz, ColumnList<String> columns, String cfName, Object id) {
+        return parseColumns(modelClazz, columns, null, new RelationBatch(), cfName, id);
+    }
+
+    /**
+     * @param modelClazz Class of type model
+     * @param columns Column results from query
+     * @param counterColumns Counters row of the model when it was read along with other rows; null to read it here
+     * @param relations Batch collecting the lazy references and relation lists of the result set
+     * @param cfName Name of column family
+     * @param id Unique object identifier
+     * @param <T> Class of type Model
+     * @return Populated model from column result
+     */
+    private <T extends play.db.Model> T parseColumns(Class<? extends play.db.Model> modelClazz, ColumnList<String> columns, ColumnList<String> counterColumns, RelationBatch relations, String cfName, Object id) {
         try {
             // Detect tombstone (empty column list)
             if ( columns.isEmpty() ) {
                 return null;
             }
 
-            T model = (T)modelClazz.newInstance();
+            ModelReflector reflector = ModelReflector.reflectorFor(modelClazz);
+            T model = reflector.<T>newInstance();
             if ( null == model ) {
                 return null;
             }
 
-            ModelReflector reflector = ModelReflector.reflectorFor(modelClazz);
-            Set<ColumnField> fields = reflector.getColumnFields();
-            for (ColumnField field : fields ) {
-                if ( field.isCounter() ) {
-                    Object value = field.parseValue(getCounterColumn(cfName, id.toString(), field.getName()));
+            if ( reflector.hasCounters() ) {
+                if ( null == counterColumns ) {
+                    counterColumns = getCounterRow(reflector, id.toString());
+                }
+                for ( ColumnField field : reflector.getCounterFields() ) {
+                    com.netflix.astyanax.model.Column<String> counter = counterColumns.getColumnByName(field.getName());
+                    Object value = field.parseValue(null == counter ? null : counter.getLongValue());
                     if ( null != value ) {
                         field.set(model, value);
                     }
-                } else {
-                    if ( field.isList() && MapModel.class.isAssignableFrom(field.genericType())) {
-                        Class<? extends MapModel> mapClazz = (Class<? extends MapModel>)field.genericType();
-                        List<? extends MapModel> mapModels = findComposites(mapClazz, id.toString());
-                        field.set(model, mapModels);
-                    } else {
-                        com.netflix.astyanax.model.Column<String> column = columns.getColumnByName(field.getName());
-                        if ( null != column) {
-                            getColumn(id.toString(), model, field, columns.getColumnByName(field.getName()));
-                        } else if ( field.getName().equals("games")) {
-                            throw new UnexpectedException("WHAT GIVES: " + field.getName());
+                }
+                // Saving the counters increments them by the change from these values
+                ((Model)model)._setCounters(reflector.counterValues(model));
+            }
+            for ( ColumnField field : reflector.getMapModelFields() ) {
+                Class<? extends MapModel> mapClazz = (Class<? extends MapModel>)field.genericType();
+                List<? extends MapModel> mapModels = findComposites(mapClazz, id.toString());
+                field.set(model, mapModels);
+            }
+            for ( ColumnField field : reflector.getValueFields() ) {
+                com.netflix.astyanax.model.Column<String> column = columns.getColumnByName(field.getName());
+                if ( null != column && field.isLazy() ) {
+                    String relationId = column.getStringValue();
+                    if ( !relationId.isEmpty() ) {
+                        ((Model)model)._setLazyRelation(relations.add(field, relationId));
+                    }
+                } else if ( null != column) {
+                    getColumn(id.toString(), model, field, column);
+                    if ( field.isRelation() && field.isList() ) {
+                        Object list = field.get(model);
+                        if ( list instanceof RelationList ) {
+                            ((RelationList) list).batchWith(relations);
                         }
                     }
+                } else if ( field.getName().equals("games")) {
+                    throw new UnexpectedException("WHAT GIVES: " + field.getName());
                 }
             }
             ((Model)model).onLoad();
+            if ( dirtyCheck() ) {
+                ((Model)model)._setSnapshot(reflector.snapshot(model));
+            }
             return model;
-        } catch (InstantiationException e) {
-            throw new DatabaseException("Instantiation exception: " + modelClazz.getName(), e);
         } catch (IllegalAccessException e) {
             throw new DatabaseException("Illegal access exception: " + modelClazz.getName(), e);
         } catch (ConnectionException e) {
@@ -285,75 +283,252 @@ public class CassandraProvider implements CassandraDB {
 
     public <T extends MapModel> List<T> findComposites(String cfName, String key, Class<? extends MapModel> modelClazz) {
         List<T> models = new ArrayList<T>();
-        HashMap<String, T> modelMap = new HashMap<String, T>();
-        try
-        {
-            Keyspace keyspace = getKeyspace();
-            ColumnFamily<String, CompositeJoinOrdinals> cf = new ColumnFamily<String, CompositeJoinOrdinals>(cfName,
-                    StringSerializer.get(), joinSerializer);
+        for ( T model : this.<T>iterateComposites(cfName, key, modelClazz) ) {
+            models.add(model);
+        }
+        return models;
+    }
 
-            if ( null == cfName ) {
-                Logger.warn("cfName is Null");
-                return models;
-            }
+    public <T extends MapModel> Iterable<T> iterateComposites(Class<? extends MapModel> clazz, String key) {
+        String cfName = ModelReflector.reflectorFor(clazz).getColumnFamily().getName();
+        return iterateComposites(cfName, key, clazz);
+    }
 
-            if ( null == key ) {
-                Logger.warn("key is Null");
-                return models;
+    /**
+     * Dictionaries of a composite row, one MapModel at a time. The row is read with
+     * cassandra.columns.pagesize columns per query while iterating, a model is complete when
+     * the columns of the next dictionary start. Only the model being built and one page of
+     * columns are held in memory.
+     *
+     * @return Models in dictionary name order; each iterator reads the row again
+     */
+    public <T extends MapModel> Iterable<T> iterateComposites(final String cfName, final String key, final Class<? extends MapModel> modelClazz) {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                if ( null == cfName ) {
+                    Logger.warn("cfName is Null");
+                    return Collections.<T>emptyList().iterator();
+                }
+                if ( null == key ) {
+                    Logger.warn("key is Null");
+                    return Collections.<T>emptyList().iterator();
+                }
+                return new CompositeIterator<T>(compositeColumnFamily(cfName), key, modelClazz);
             }
+        };
+    }
 
-            OperationResult<ColumnList<CompositeJoinOrdinals>> result  = keyspace.prepareQuery(cf)
+    private class CompositeIterator<T extends MapModel> implements Iterator<T> {
+        private final String _key;
+        private final ModelReflector _reflector;
+        private final RowQuery<String, CompositeJoinOrdinals> _query;
+        private final int _pageSize = columnPageSize();
+        private Iterator<com.netflix.astyanax.model.Column<CompositeJoinOrdinals>> _page = null;
+        private boolean _lastPage = false;
+        // Column read ahead, the first of the next model
+        private com.netflix.astyanax.model.Column<CompositeJoinOrdinals> _pending = null;
+
+        CompositeIterator(ColumnFamily<String, CompositeJoinOrdinals> cf, String key, Class<? extends MapModel> modelClazz) {
+            _key = key;
+            _reflector = ModelReflector.reflectorFor(modelClazz);
+            _query = getKeyspace().prepareQuery(cf)
                     .getKey(key)
-                    .execute();
+                    .autoPaginate(true)
+                    .withColumnRange(new RangeBuilder().setLimit(_pageSize).build());
+        }
 
-            ColumnList<CompositeJoinOrdinals> columns = result.getResult();
-            for ( com.netflix.astyanax.model.Column<CompositeJoinOrdinals> column : columns ) {
-                CompositeJoinOrdinals join = column.getName();
-                T model = modelMap.get(join.dictionaryName);
-                if ( null == model ) {
-                    model = (T) modelClazz.newInstance();
-                    model.setKey1(key);
-                    model.setKey2(join.dictionaryName);
+        private com.netflix.astyanax.model.Column<CompositeJoinOrdinals> nextColumn() {
+            if ( null != _pending ) {
+                com.netflix.astyanax.model.Column<CompositeJoinOrdinals> column = _pending;
+                _pending = null;
+                return column;
+            }
+            while ( null == _page || !_page.hasNext() ) {
+                if ( _lastPage ) {
+                    return null;
                 }
-                model.put(join.key, column.getStringValue());
-                modelMap.put(join.dictionaryName, model);
+                ColumnList<CompositeJoinOrdinals> columns;
+                try {
+                    columns = _query.execute().getResult();
+                } catch (ConnectionException e) {
+                    throw new DatabaseException(String.format("Key:%s, %s", _key, e.getMessage()), e);
+                }
+                _lastPage = columns.size() < _pageSize;
+                _page = columns.iterator();
             }
-            for ( T model : modelMap.values()) {
-                models.add(model);
+            return _page.next();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if ( null == _pending ) {
+                _pending = nextColumn();
             }
-        } catch (ConnectionException e) {
-            throw new DatabaseException(String.format("Key:%s, %s", key, e.getMessage()), e);
-        } catch (InstantiationException e) {
-            throw new UnexpectedException("Unable to cast MapModel", e);
-        } catch (IllegalAccessException e) {
-            throw new UnexpectedException("Unable to cast MapModel", e);
+            return null != _pending;
+        }
+
+        @Override
+        public T next() {
+            com.netflix.astyanax.model.Column<CompositeJoinOrdinals> column = nextColumn();
+            if ( null == column ) {
+                throw new NoSuchElementException();
+            }
+            String dictionaryName = column.getName().dictionaryName;
+            T model = _reflector.<T>newInstance();
+            model.setKey1(_key);
+            model.setKey2(dictionaryName);
+            while ( null != column ) {
+                if ( !dictionaryName.equals(column.getName().dictionaryName) ) {
+                    _pending = column;
+                    break;
+                }
+                model.put(column.getName().key, column.getStringValue());
+                column = nextColumn();
+            }
+            model._clearChanges();
+            return model;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
         }
-        return models;
     }
 
+    /**
+     * Names of the dictionaries of a composite row, read lazily. Each page reads up to
+     * cassandra.columns.pagesize columns and the next page starts after the last dictionary
+     * seen, so the columns of a large dictionary are read at most one page at a time and no
+     * MapModel is built.
+     *
+     * @param cfName Composite column family
+     * @param key Row key
+     * @return Dictionary names in column order; each iterator reads the row again
+     */
+    public Iterable<String> getDictionaryKeys(final String cfName, final String key) {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new DictionaryKeyIterator(compositeColumnFamily(cfName), key);
+            }
+        };
+    }
+
+    private class DictionaryKeyIterator implements Iterator<String> {
+        private final ColumnFamily<String, CompositeJoinOrdinals> _cf;
+        private final String _key;
+        private final int _pageSize = columnPageSize();
+        private Iterator<String> _page = Collections.<String>emptyList().iterator();
+        private String _last = null;
+        private boolean _done = false;
+
+        DictionaryKeyIterator(ColumnFamily<String, CompositeJoinOrdinals> cf, String key) {
+            _cf = cf;
+            _key = key;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while ( !_page.hasNext() && !_done ) {
+                fetch();
+            }
+            return _page.hasNext();
+        }
+
+        @Override
+        public String next() {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            return _page.next();
+        }
+
+        private void fetch() {
+            CompositeRangeBuilder range = joinSerializer.buildRange();
+            if ( null != _last ) {
+                // Skips the rest of the last dictionary seen
+                range.greaterThan(_last);
+            }
+            ColumnList<CompositeJoinOrdinals> columns;
+            try {
+                columns = getKeyspace().prepareQuery(_cf)
+                        .getKey(_key)
+                        .withColumnRange(range.limit(_pageSize).build())
+                        .execute()
+                        .getResult();
+            } catch (ConnectionException e) {
+                throw new DatabaseException(String.format("Key:%s, %s", _key, e.getMessage()), e);
+            }
+            Set<String> names = new LinkedHashSet<String>();
+            for ( com.netflix.astyanax.model.Column<CompositeJoinOrdinals> column : columns ) {
+                names.add(column.getName().dictionaryName);
+            }
+            _done = columns.size() < _pageSize || names.isEmpty();
+            for ( String name : names ) {
+                _last = name;
+            }
+            _page = names.iterator();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Reads a whole row, cassandra.columns.pagesize columns per query. Rows smaller than a
+     * page, such as most model rows, take a single query.
+     */
+    private <C> ColumnList<C> readRow(Keyspace keyspace, ColumnFamily<String, C> cf, String key) throws ConnectionException {
+        int pageSize = columnPageSize();
+        return readPages(keyspace.prepareQuery(cf)
+                .getKey(key)
+                .autoPaginate(true)
+                .withColumnRange(new RangeBuilder().setLimit(pageSize).build()), pageSize);
+    }
+
+    /**
+     * @param query Paginating row query, limited to pageSize columns
+     * @return Every column of the query
+     */
+    private static <C> ColumnList<C> readPages(RowQuery<String, C> query, int pageSize) throws ConnectionException {
+        ColumnList<C> page = query.execute().getResult();
+        if ( page.size() < pageSize ) {
+            return page;
+        }
+        PagedColumnList<C> columns = new PagedColumnList<C>();
+        while ( !page.isEmpty() ) {
+            columns.addAll(page);
+            if ( page.size() < pageSize ) {
+                break;
+            }
+            page = query.execute().getResult();
+        }
+        return columns;
+    }
+
+    /**
+     * @return Columns read per query from wide rows (cassandra.columns.pagesize)
+     */
+    static int columnPageSize() {
+        return Math.max(1, Integer.parseInt(Play.configuration.getProperty("cassandra.columns.pagesize", "1000")));
+    }
+
+    /**
+     * Reads one dictionary of a composite row with a slice on the dictionary name prefix,
+     * the other dictionaries of the row are not read
+     */
     public Map<String, String> findComposite(String cfName, String key, String subkey) {
         HashMap<String, String> map = new HashMap<String, String>();
         try
         {
-            Keyspace keyspace = getKeyspace();
-            ColumnFamily<String, CompositeJoinOrdinals> cf = new ColumnFamily<String, CompositeJoinOrdinals>(cfName,
-                    StringSerializer.get(), joinSerializer);
-
-            // Querying cassandra for an entire row
-            OperationResult<ColumnList<CompositeJoinOrdinals>> result = keyspace.prepareQuery(cf)
-                    .getKey(key)
-                    .execute();
-
             CassandraLogger.debug("Executing on %s:%s", key, subkey);
-            ColumnList<CompositeJoinOrdinals> columns = result.getResult();
+            ColumnList<CompositeJoinOrdinals> columns = readComposite(compositeColumnFamily(cfName), key, subkey, null);
             CassandraLogger.debug("Result: %d", columns.size());
             for ( com.netflix.astyanax.model.Column<CompositeJoinOrdinals> column : columns ) {
-                CompositeJoinOrdinals join = column.getName();
-                // NOTE: Using this instead of getColumnRange because this way lets us return all fields
-                if ( join.dictionaryName.equals(subkey)) {
-                    CassandraLogger.trace("Parsing a row");
-                    map.put(join.key, column.getStringValue());
-                }
+                map.put(column.getName().key, column.getStringValue());
             }
         } catch (ConnectionException e) {
             throw new DatabaseException(String.format("Key:%s, %s", key, e.getMessage()), e);
@@ -361,46 +536,123 @@ public class CassandraProvider implements CassandraDB {
         return map;
     }
 
+    /**
+     * Deletes a dictionary, or one key of it, with a single mutation. Only the columns of the
+     * dictionary (or the key) are read first, to count them.
+     *
+     * @param dictKey Key to delete; null to delete the whole dictionary
+     * @return Number of columns deleted
+     */
     public int deleteComposite(String cfName, String key, String subkey, String dictKey) {
-        int deletedColumns = 0;
         try
         {
-            Keyspace keyspace = getKeyspace();
-            ColumnFamily<String, CompositeJoinOrdinals> cf = new ColumnFamily<String, CompositeJoinOrdinals>(cfName,
-                    StringSerializer.get(), joinSerializer);
-
-            // Querying cassandra for an entire row
-            OperationResult<ColumnList<CompositeJoinOrdinals>> result = keyspace.prepareQuery(cf)
-                    .getKey(key)
-                    .execute();
-
-            ConsistencyLevel writeConsistencyLevel = config().getDefaultWriteConsistencyLevel();
-
+            ColumnFamily<String, CompositeJoinOrdinals> cf = compositeColumnFamily(cfName);
             CassandraLogger.debug("Executing on %s:%s", key, subkey);
-            ColumnList<CompositeJoinOrdinals> columns = result.getResult();
+            ColumnList<CompositeJoinOrdinals> columns = readComposite(cf, key, subkey, dictKey);
             CassandraLogger.debug("Result: %d", columns.size());
+            if ( columns.isEmpty() ) {
+                return 0;
+            }
+
+            MutationBatch mutationBatch = getKeyspace().prepareMutationBatch();
+            mutationBatch.setConsistencyLevel(config().getDefaultWriteConsistencyLevel());
+            ColumnListMutation<CompositeJoinOrdinals> mutation = mutationBatch.withRow(cf, key);
             for ( com.netflix.astyanax.model.Column<CompositeJoinOrdinals> column : columns ) {
-                CompositeJoinOrdinals joinOrdinals = column.getName();
-                if ( null == dictKey || dictKey.equals(joinOrdinals.key)) {
-                    keyspace.prepareColumnMutation(cf, key, joinOrdinals)
-                            .setConsistencyLevel(writeConsistencyLevel)
-                            .deleteColumn()
-                            .execute();
-                    deletedColumns++;
-                }
+                mutation.deleteColumn(column.getName());
             }
+            mutationBatch.execute();
+            return columns.size();
         } catch (ConnectionException e) {
             throw new DatabaseException(String.format("Key:%s, %s", key, e.getMessage()), e);
         }
-        return deletedColumns;
     }
 
-    // TODO: Perform this function in a single mutation
+    /**
+     * @param dictionaryName First component of the columns read
+     * @param dictKey Second component of the column read; null for every column of the dictionary
+     * @return Columns of the composite row matching the prefix
+     */
+    private ColumnList<CompositeJoinOrdinals> readComposite(ColumnFamily<String, CompositeJoinOrdinals> cf, String key, String dictionaryName, String dictKey) throws ConnectionException {
+        int pageSize = columnPageSize();
+        return readPages(getKeyspace().prepareQuery(cf)
+                .getKey(key)
+                .autoPaginate(true)
+                .withColumnRange(dictionaryRange(dictionaryName, dictKey, pageSize)), pageSize);
+    }
+
+    /**
+     * A prefix alone (Equality.EQUAL) ends before the columns which extend it, so the last
+     * component given is bounded inclusively on both sides instead
+     *
+     * @return Slice of the columns of a dictionary, or of one key of it
+     */
+    private static ByteBufferRange dictionaryRange(String dictionaryName, String dictKey, int limit) {
+        if ( null == dictKey ) {
+            return joinSerializer.buildRange()
+                    .greaterThanEquals(dictionaryName)
+                    .lessThanEquals(dictionaryName)
+                    .limit(limit)
+                    .build();
+        }
+        return joinSerializer.buildRange()
+                .withPrefix(dictionaryName)
+                .greaterThanEquals(dictKey)
+                .lessThanEquals(dictKey)
+                .limit(limit)
+                .build();
+    }
+
+    /**
+     * Writes the keys put and deletes the keys removed since the map was read or last written,
+     * with a single mutation
+     *
+     * @param model Map to write
+     */
     public void writeComposite(MapModel model) {
+        try {
+            MutationBatch mutationBatch = getKeyspace().prepareMutationBatch();
+            mutationBatch.setConsistencyLevel(config().getDefaultWriteConsistencyLevel());
+            if ( prepareComposite(mutationBatch, model) > 0 ) {
+                mutationBatch.execute();
+            }
+            model._clearChanges();
+        } catch (ConnectionException e) {
+            throw new DatabaseException(String.format("Key:%s, %s", model.getKey1(), e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Adds the changes of a map to a mutation batch, which may hold the row of the model owning
+     * it: a column for each key put and a tombstone for each key removed
+     *
+     * @param mutationBatch Batch the columns are added to
+     * @param model Map to write
+     * @return Number of columns added or deleted
+     */
+    private int prepareComposite(MutationBatch mutationBatch, MapModel model) {
+        if ( model.getPuts().isEmpty() && model.getRemoves().isEmpty() ) {
+            return 0;
+        }
         String cfName = ModelReflector.reflectorFor(model.getClass()).getColumnFamily().getName();
-        for ( String key : model.keySet() ) {
-            writeComposite(cfName, model.getKey1(), model.getKey2(), key, model.get(key));
+        ColumnListMutation<CompositeJoinOrdinals> mutation = mutationBatch.withRow(compositeColumnFamily(cfName), model.getKey1());
+        for ( String key : model.getPuts() ) {
+            mutation.putColumn(joinOrdinals(model.getKey2(), key), model.get(key), null);
+        }
+        for ( String key : model.getRemoves() ) {
+            mutation.deleteColumn(joinOrdinals(model.getKey2(), key));
         }
+        return model.getPuts().size() + model.getRemoves().size();
+    }
+
+    private static CompositeJoinOrdinals joinOrdinals(String dictionaryName, String key) {
+        CompositeJoinOrdinals joinOrdinals = new CompositeJoinOrdinals();
+        joinOrdinals.dictionaryName = dictionaryName;
+        joinOrdinals.key = key;
+        return joinOrdinals;
+    }
+
+    private static ColumnFamily<String, CompositeJoinOrdinals> compositeColumnFamily(String cfName) {
+        return new ColumnFamily<String, CompositeJoinOrdinals>(cfName, StringSerializer.get(), joinSerializer);
     }
 
     /**
@@ -441,11 +693,7 @@ public class CassandraProvider implements CassandraDB {
         {
             Keyspace keyspace = getKeyspace();
 
-            OperationResult<ColumnList<String>> result =
-                    keyspace.prepareQuery(cf)
-                            .getKey(id.toString())
-                            .execute();
-            ColumnList<String> columns = result.getResult();
+            ColumnList<String> columns = readRow(keyspace, cf, id.toString());
 
             if ( !columns.isEmpty() ) {
                 CassandraLogger.debug("Found row seeking ID %s", id.toString());
@@ -457,6 +705,111 @@ public class CassandraProvider implements CassandraDB {
         return model;
     }
 
+    /**
+     * Loads several models with key slice queries instead of one query per id. Key sets larger than
+     * cassandra.multiget.chunksize are split into chunks which are queried in parallel.
+     *
+     * @param clazz Class of the models
+     * @param cf Column family the models belong to
+     * @param ids Ids of the models; duplicates and nulls are ignored
+     * @return Models in the order of their ids; ids with no row are reported as missing
+     */
+    public <T extends play.db.Model> MultiGetResult<T> findMany(Class<? extends play.db.Model> clazz, final ColumnFamily<String, String> cf, Collection<?> ids) {
+        Map<String, Object> idsByKey = new LinkedHashMap<String, Object>();
+        for ( Object id : ids ) {
+            if ( null != id && !idsByKey.containsKey(id.toString()) ) {
+                idsByKey.put(id.toString(), id);
+            }
+        }
+        MultiGetResult<T> models = new MultiGetResult<T>(idsByKey.size());
+        if ( idsByKey.isEmpty() ) {
+            return models;
+        }
+
+        List<String> keys = new ArrayList<String>(idsByKey.keySet());
+        final ModelReflector reflector = ModelReflector.reflectorFor(clazz);
+        int chunkSize = Math.max(1, Integer.parseInt(Play.configuration.getProperty("cassandra.multiget.chunksize", "100")));
+        KeySlice slice = new KeySlice();
+        try {
+            if ( keys.size() <= chunkSize ) {
+                readKeySlice(cf, reflector, keys, slice);
+            } else {
+                List<Future<KeySlice>> chunks = new ArrayList<Future<KeySlice>>();
+                for ( int i = 0; i < keys.size(); i += chunkSize ) {
+                    final List<String> chunk = keys.subList(i, Math.min(i + chunkSize, keys.size()));
+                    chunks.add(multiGetExecutor().submit(new Callable<KeySlice>() {
+                        @Override
+                        public KeySlice call() throws ConnectionException {
+                            KeySlice chunkSlice = new KeySlice();
+                            readKeySlice(cf, reflector, chunk, chunkSlice);
+                            return chunkSlice;
+                        }
+                    }));
+                }
+                for ( Future<KeySlice> chunk : chunks ) {
+                    KeySlice chunkSlice = chunk.get();
+                    slice.rows.putAll(chunkSlice.rows);
+                    slice.counters.putAll(chunkSlice.counters);
+                }
+            }
+        } catch (ConnectionException e) {
+            throw new DatabaseException(String.format("Keys:%d, %s", keys.size(), e.getMessage()), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while reading " + cf.getName(), e);
+        } catch (ExecutionException e) {
+            throw new DatabaseException(String.format("Keys:%d, %s", keys.size(), e.getCause().getMessage()), e.getCause());
+        }
+
+        RelationBatch relations = new RelationBatch();
+        for ( Map.Entry<String, Object> entry : idsByKey.entrySet() ) {
+            ColumnList<String> columns = slice.rows.get(entry.getKey());
+            T model = null;
+            if ( null != columns && !columns.isEmpty() ) {
+                model = this.<T>parseColumns(clazz, columns, slice.counters.get(entry.getKey()), relations, cf.getName(), entry.getKey());
+            }
+            if ( null == model ) {
+                models.addMissing(entry.getValue());
+            } else {
+                models.add(model);
+            }
+        }
+        return models;
+    }
+
+    /**
+     * Rows and counter rows read by one key slice
+     */
+    private static class KeySlice {
+        final Map<String, ColumnList<String>> rows = new HashMap<String, ColumnList<String>>();
+        final Map<String, ColumnList<String>> counters = new HashMap<String, ColumnList<String>>();
+    }
+
+    private void readKeySlice(ColumnFamily<String, String> cf, ModelReflector reflector, Collection<String> keys, KeySlice slice) throws ConnectionException {
+        OperationResult<Rows<String, String>> result = getKeyspace().prepareQuery(cf)
+                .getKeySlice(keys)
+                .execute();
+        List<String> foundKeys = new ArrayList<String>();
+        for ( Row<String, String> row : result.getResult() ) {
+            slice.rows.put(row.getKey(), row.getColumns());
+            if ( !row.getColumns().isEmpty() ) {
+                foundKeys.add(row.getKey());
+            }
+        }
+        slice.counters.putAll(getCounterRows(reflector, foundKeys));
+    }
+
+    private static synchronized ExecutorService multiGetExecutor() {
+        if ( null == _multiGetExecutor ) {
+            int threads = Integer.parseInt(Play.configuration.getProperty("cassandra.multiget.threads", "4"));
+            _multiGetExecutor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                    .setNameFormat("cassandra-multiget-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return _multiGetExecutor;
+    }
+
     public List<? extends Model> findByKey(Class<? extends play.db.Model> clazz, ColumnFamily<String, String> cf, String key, Object value) {
         ModelReflector mf = ModelReflector.reflectorFor(clazz);
         List<Model> models = new ArrayList<Model>();
@@ -472,13 +825,21 @@ public class CassandraProvider implements CassandraDB {
                             .execute();
 
             Rows<String,String> rows = result.getResult();
+            List<String> rowKeys = new ArrayList<String>();
+            for ( Row<String,String> row : rows ) {
+                if ( !row.getColumns().isEmpty() ) {
+                    rowKeys.add(row.getKey());
+                }
+            }
+            Map<String, ColumnList<String>> counterRows = getCounterRows(mf, rowKeys);
+            RelationBatch relations = new RelationBatch();
             for ( Row<String,String> row : rows ) {
                 ColumnList<String> columns = row.getColumns();
                 String id = columns.getColumnByName(mf.getIdentityField()).getStringValue();
 
                 if ( !columns.isEmpty() ) {
                     CassandraLogger.debug("Found row seeking Key %s with value %s: ID - %s", key, value.toString(), id);
-                    Model model = parseColumns(clazz, columns, cf.getName(), id);
+                    Model model = parseColumns(clazz, columns, counterRows.get(row.getKey()), relations, cf.getName(), id);
                     models.add(model);
                 }
             }
@@ -512,49 +873,513 @@ public class CassandraProvider implements CassandraDB {
      */
     public void save(Model o, ColumnFamily<String, String> cf, boolean saveCounters) {
         try {
-            ConsistencyLevel writeConsistencyLevel = config().getDefaultWriteConsistencyLevel();
             CassandraLogger.trace("Saving a cassandra model");
+            PreparedRow row = prepareSave(o, cf, false);
+            if ( 0 == row.columns ) {
+                trace("No column of %s changed, nothing to write", o.getId());
+            } else {
+                row.batch.execute();
+                row.written(o);
+            }
+            // Counters are only incremented once the row is written, a failed save can be retried
+            if ( saveCounters ) {
+                saveCounters(o, cf);
+            }
+        } catch (Exception e) {
+            CassandraLogger.error(e, "Could not save a Cassandra object");
+            throw new UnexpectedException(e);
+        }
+    }
+
+    /**
+     * Saves many models with one mutation batch per chunk of rows. Chunks are closed at
+     * cassandra.batch.rows rows or cassandra.batch.bytes serialized bytes and executed in
+     * parallel on cassandra.batch.threads threads. When a chunk fails its rows are retried
+     * one by one, so a bad row only fails itself.
+     *
+     * @param models Models to save, of any entity class
+     * @param saveCounters TRUE if counters should be explicitly set, as for new models; these rows
+     *                     are written with the cassandra.concurrency.write.model consistency level
+     * @return Number of models saved and the models which failed
+     */
+    public SaveResult saveAll(Collection<? extends Model> models, final boolean saveCounters) {
+        final SaveResult result = new SaveResult();
+        int maxRows = Math.max(1, Integer.parseInt(Play.configuration.getProperty("cassandra.batch.rows", "100")));
+        long maxBytes = Math.max(1, Long.parseLong(Play.configuration.getProperty("cassandra.batch.bytes", "1048576")));
+        // Bounds the rows held by chunks waiting for a thread
+        final Semaphore inFlight = new Semaphore(batchThreads() * 2);
+
+        Map<ConsistencyLevel, SaveChunk> chunks = new HashMap<ConsistencyLevel, SaveChunk>();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for ( Model o : models ) {
+                PreparedRow row;
+                int size;
+                try {
+                    ColumnFamily<String, String> cf = null == o ? null : ModelReflector.reflectorFor(o.getClass()).getColumnFamily();
+                    row = prepareSave(o, cf, saveCounters);
+                    size = row.batch.serialize().remaining();
+                } catch (Exception e) {
+                    CassandraLogger.warn("Could not prepare a Cassandra object for saving: %s", e.getMessage());
+                    result.addFailure(o, e);
+                    continue;
+                }
+                if ( 0 == row.columns && !saveCounters ) {
+                    result.addUnchanged(1);
+                    continue;
+                }
+                ConsistencyLevel consistencyLevel = writeConsistencyLevel(o, saveCounters);
+                SaveChunk chunk = chunks.get(consistencyLevel);
+                if ( null != chunk && (chunk.models.size() >= maxRows || chunk.bytes + size > maxBytes) ) {
+                    futures.add(submit(chunk, result, inFlight));
+                    chunk = null;
+                }
+                if ( null == chunk ) {
+                    chunk = new SaveChunk(consistencyLevel, saveCounters);
+                    chunks.put(consistencyLevel, chunk);
+                }
+                chunk.add(o, row, size);
+            }
+            for ( SaveChunk chunk : chunks.values() ) {
+                futures.add(submit(chunk, result, inFlight));
+            }
+            for ( Future<?> future : futures ) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while saving models", e);
+        } catch (ExecutionException e) {
+            // Chunks report their own failures, this is a bug
+            throw new UnexpectedException(e.getCause());
+        }
+        CassandraLogger.debug("Saved %d models in %d batches, %d failed", result.getSaved(), result.getBatches(), result.getFailures().size());
+        return result;
+    }
+
+    /**
+     * Writes a unit of work: one mutation batch for the deletes, batched saves (see saveAll),
+     * one mutation batch for the column sets and one counter batch for the increments, in that
+     * order. Counter columns set to a value are written on their own, as setColumnValue does.
+     * A failure stops the flush with a DatabaseException naming the phases already written.
+     *
+     * @param work Writes to flush
+     */
+    public void flush(UnitOfWork work) {
+        List<String> written = new ArrayList<String>();
+        try {
+            Keyspace keyspace = getKeyspace();
+            if ( !work.getDeletes().isEmpty() ) {
+                MutationBatch mb = keyspace.prepareMutationBatch();
+                for ( UnitOfWork.RowKey key : work.getDeletes() ) {
+                    mb.withRow(ModelReflector.reflectorFor(key.getType()).getColumnFamily(), key.getId()).delete();
+                }
+                mb.execute();
+                written.add("deletes");
+            }
+
+            if ( !work.getSaves(true).isEmpty() || !work.getSaves(false).isEmpty() ) {
+                assertSaved(saveAll(work.getSaves(true), true));
+                assertSaved(saveAll(work.getSaves(false), false));
+                written.add("saves");
+            }
+
+            if ( !work.getColumns().isEmpty() ) {
+                MutationBatch mb = keyspace.prepareMutationBatch();
+                for ( Map.Entry<UnitOfWork.RowKey, Map<String, Object>> row : work.getColumns().entrySet() ) {
+                    ModelReflector reflector = ModelReflector.reflectorFor(row.getKey().getType());
+                    String rowKey = row.getKey().getId();
+                    ColumnListMutation<String> mutation = mb.withRow(reflector.getColumnFamily(), rowKey);
+                    for ( Map.Entry<String, Object> column : row.getValue().entrySet() ) {
+                        ColumnField columnField = reflector.getColumnField(column.getKey());
+                        Object value = column.getValue();
+                        if ( columnField.isCounter() ) {
+                            putCounterColumn(reflector.getColumnFamily().getName(), rowKey, columnField.getName(), columnField.toLong(value), 1);
+                        } else if ( Long.class.isAssignableFrom(columnField.getType()) || Long.TYPE.isAssignableFrom(columnField.getType()) ) {
+                            mutation.putColumn(columnField.getName(), columnField.toLong(value).longValue(), null);
+                        } else {
+                            mutation.putColumn(columnField.getName(), value.toString(), null);
+                        }
+                    }
+                }
+                if ( !mb.isEmpty() ) {
+                    mb.execute();
+                }
+                written.add("sets");
+            }
+
+            if ( !work.getIncrements().isEmpty() ) {
+                MutationBatch mb = keyspace.prepareMutationBatch();
+                for ( Map.Entry<UnitOfWork.RowKey, Map<String, Long>> row : work.getIncrements().entrySet() ) {
+                    ModelReflector reflector = ModelReflector.reflectorFor(row.getKey().getType());
+                    ColumnListMutation<String> mutation = mb.withRow(reflector.getCounterColumnFamily(), row.getKey().getId());
+                    for ( Map.Entry<String, Long> column : row.getValue().entrySet() ) {
+                        mutation.incrementCounterColumn(column.getKey(), column.getValue());
+                    }
+                }
+                mb.execute();
+            }
+        } catch (ConnectionException e) {
+            throw flushFailure(written, e);
+        } catch (DatabaseException e) {
+            throw flushFailure(written, e);
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    /**
+     * @param written Phases of the unit of work written before the failure
+     */
+    private static DatabaseException flushFailure(List<String> written, Exception e) {
+        String message = String.format("Could not flush the unit of work, written before the failure: %s",
+                written.isEmpty() ? "nothing" : written);
+        CassandraLogger.error(e, "%s", message);
+        return new DatabaseException(message, e);
+    }
 
-            if ( null == o) {
-                throw new UnexpectedException("Model is null");
+    private static void assertSaved(SaveResult result) {
+        if ( !result.isSuccess() ) {
+            Map.Entry<play.db.Model, Throwable> failure = result.getFailures().entrySet().iterator().next();
+            throw new DatabaseException(String.format("Could not save %d models, first %s", result.getFailures().size(), failure.getKey()), failure.getValue());
+        }
+    }
+
+    private Future<?> submit(final SaveChunk chunk, final SaveResult result, final Semaphore inFlight) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            return batchExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        chunk.execute(result);
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Rows saved together in one mutation batch
+     */
+    private class SaveChunk {
+        final ConsistencyLevel consistencyLevel;
+        final boolean saveCounters;
+        final List<Model> models = new ArrayList<Model>();
+        final List<PreparedRow> rows = new ArrayList<PreparedRow>();
+        long bytes = 0;
+
+        SaveChunk(ConsistencyLevel consistencyLevel, boolean saveCounters) {
+            this.consistencyLevel = consistencyLevel;
+            this.saveCounters = saveCounters;
+        }
+
+        void add(Model o, PreparedRow row, int size) {
+            models.add(o);
+            rows.add(row);
+            bytes += size;
+        }
+
+        /**
+         * Writes the rows with one mutation batch, then the counter increments of the rows
+         * written with one counter batch. Counters of a row which could not be written are not
+         * incremented. A counter batch is not retried: it may have been applied in part, so its
+         * models are reported failed with their rows written and their counters left as they
+         * were before the save.
+         */
+        void execute(SaveResult result) {
+            MutationBatch batch = getKeyspace().prepareMutationBatch();
+            batch.setConsistencyLevel(consistencyLevel);
+            List<Model> batched = new ArrayList<Model>();
+            List<PreparedRow> batchedRows = new ArrayList<PreparedRow>();
+            List<CounterDelta> batchedCounters = new ArrayList<CounterDelta>();
+            for ( int i = 0; i < models.size(); i++ ) {
+                Model o = models.get(i);
+                CounterDelta counters = null;
+                if ( saveCounters ) {
+                    try {
+                        counters = prepareCounters(o, ModelReflector.reflectorFor(o.getClass()).getColumnFamily());
+                    } catch (Exception e) {
+                        CassandraLogger.warn("Could not read the counters of %s: %s", o.getId(), e.getMessage());
+                        result.addFailure(o, e);
+                        continue;
+                    }
+                }
+                batch.mergeShallow(rows.get(i).batch);
+                batched.add(o);
+                batchedRows.add(rows.get(i));
+                batchedCounters.add(counters);
+            }
+            if ( batched.isEmpty() ) {
+                return;
             }
 
-            if ( null == o.getId() ) {
-                throw new UnexpectedException("ID is null");
+            List<Integer> written = new ArrayList<Integer>();
+            try {
+                batch.execute();
+                for ( int i = 0; i < batched.size(); i++ ) {
+                    written.add(i);
+                }
+                trace("Saved a batch of %d rows", batched.size());
+            } catch (ConnectionException e) {
+                CassandraLogger.warn("Batch of %d rows failed, saving them one at a time: %s", batched.size(), e.getMessage());
+                for ( int i = 0; i < batched.size(); i++ ) {
+                    try {
+                        batchedRows.get(i).batch.execute();
+                        written.add(i);
+                    } catch (ConnectionException rowFailure) {
+                        CassandraLogger.error(rowFailure, "Could not save a Cassandra object");
+                        result.addFailure(batched.get(i), rowFailure);
+                    }
+                }
+            }
+            if ( written.isEmpty() ) {
+                return;
+            }
+
+            MutationBatch counterBatch = getKeyspace().prepareMutationBatch();
+            counterBatch.setConsistencyLevel(consistencyLevel);
+            for ( int i : written ) {
+                batchedRows.get(i).written(batched.get(i));
+                CounterDelta counters = batchedCounters.get(i);
+                if ( null != counters ) {
+                    counters.addTo(counterBatch);
+                }
+            }
+            ConnectionException counterFailure = null;
+            if ( !counterBatch.isEmpty() ) {
+                try {
+                    counterBatch.execute();
+                } catch (ConnectionException e) {
+                    CassandraLogger.error(e, "Rows of %d models were saved, their counters could not be incremented", written.size());
+                    counterFailure = e;
+                }
+            }
+            int saved = 0;
+            for ( int i : written ) {
+                CounterDelta counters = batchedCounters.get(i);
+                if ( null != counterFailure && null != counters && counters.isChanged() ) {
+                    result.addFailure(batched.get(i), counterFailure);
+                    continue;
+                }
+                if ( null != counters ) {
+                    counters.written(batched.get(i));
+                }
+                saved++;
             }
+            result.addSaved(saved);
+        }
+    }
+
+    /**
+     * Row of a model ready to be written
+     */
+    private static class PreparedRow {
+        final MutationBatch batch;
+        // Installed on the model once the row is written; null without dirty checking
+        final Object[] snapshot;
+        // Columns written, MapModel entries included
+        final int columns;
+        // Maps whose changes are in the batch
+        final List<MapModel> mapModels;
+
+        PreparedRow(MutationBatch batch, Object[] snapshot, int columns, List<MapModel> mapModels) {
+            this.batch = batch;
+            this.snapshot = snapshot;
+            this.columns = columns;
+            this.mapModels = mapModels;
+        }
 
-            if ( null == cf ) {
-                throw new UnexpectedException("ColumnFamily is null");
+        /**
+         * Records on the model that the batch was written
+         */
+        void written(Model o) {
+            o._setSnapshot(snapshot);
+            for ( MapModel mapModel : mapModels ) {
+                mapModel._clearChanges();
             }
+        }
+    }
+
+    /**
+     * With cassandra.save.dirtycheck (the default) a model read from the data store or already
+     * saved only writes the columns which changed since, compared with its snapshot (see
+     * ModelReflector.snapshot()). Values which can not be compared are always written.
+     * New models and models of another row write every column.
+     *
+     * @return Row of the model in a mutation batch, not executed yet
+     */
+    @SuppressWarnings("unchecked")
+    private PreparedRow prepareSave(Model o, ColumnFamily<String, String> cf, boolean saveCounters) throws IllegalAccessException, ConnectionException {
+        if ( null == o) {
+            throw new UnexpectedException("Model is null");
+        }
+
+        if ( null == o.getId() ) {
+            throw new UnexpectedException("ID is null");
+        }
+
+        if ( null == cf ) {
+            throw new UnexpectedException("ColumnFamily is null");
+        }
+
+        Keyspace keyspace = getKeyspace();
+        MutationBatch mutationBatch = keyspace.prepareMutationBatch();
+        mutationBatch.setConsistencyLevel(writeConsistencyLevel(o, saveCounters));
+        ColumnListMutation<String> columnListMutation = mutationBatch.withRow(cf, o.getId().toString());
+
+        // Inserting data
+        ModelReflector reflector = ModelReflector.reflectorFor(cf.getName());
+        Object[] snapshot = dirtyCheck() ? reflector.snapshot(o) : null;
+        Object[] before = o._getSnapshot();
+        // The last element of a snapshot is the row key
+        boolean changedOnly = null != snapshot && null != before && before.length == snapshot.length
+                && !ColumnField.isChanged(before[before.length - 1], snapshot[snapshot.length - 1]);
+        List<ColumnField> valueFields = reflector.getValueFields();
+        int columns = 0;
+        for ( int i = 0; i < valueFields.size(); i++ ) {
+            if ( changedOnly && !ColumnField.isChanged(before[i], snapshot[i]) ) {
+                continue;
+            }
+            ColumnField field = valueFields.get(i);
+            putColumn(o, columnListMutation, field.getName(), field);
+            columns++;
+        }
+        // Changed MapModels are written with the row
+        List<MapModel> changedMaps = new ArrayList<MapModel>();
+        for ( ColumnField field : reflector.getMapModelFields() ) {
+            List<MapModel> mapModels = (List<MapModel>) field.get(o);
+            if ( null != mapModels ) {
+                for ( MapModel mapModel : mapModels ) {
+                    if ( mapModel.isChanged() ) {
+                        columns += prepareComposite(mutationBatch, mapModel);
+                        changedMaps.add(mapModel);
+                    }
+                }
+            }
+        }
+        return new PreparedRow(mutationBatch, snapshot, columns, changedMaps);
+    }
+
+    /**
+     * Sets the counters of the row to the values of the model, see prepareCounters()
+     */
+    private void saveCounters(Model o, ColumnFamily<String, String> cf) throws IllegalAccessException, ConnectionException {
+        CounterDelta counters = prepareCounters(o, cf);
+        if ( null == counters ) {
+            return;
+        }
+        if ( counters.isChanged() ) {
+            MutationBatch mutationBatch = getKeyspace().prepareMutationBatch();
+            counters.addTo(mutationBatch);
+            mutationBatch.execute();
+        }
+        counters.written(o);
+    }
+
+    /**
+     * Increments setting the counters of a row to the values of its model
+     */
+    private static class CounterDelta {
+        final ColumnFamily<String, String> cf;
+        final String rowKey;
+        final List<String> columns = new ArrayList<String>();
+        final List<Long> deltas = new ArrayList<Long>();
+        // Installed on the model once the increments are written
+        final long[] values;
+
+        CounterDelta(ColumnFamily<String, String> cf, String rowKey, long[] values) {
+            this.cf = cf;
+            this.rowKey = rowKey;
+            this.values = values;
+        }
+
+        boolean isChanged() {
+            return !columns.isEmpty();
+        }
+
+        void addTo(MutationBatch batch) {
+            if ( isChanged() ) {
+                ColumnListMutation<String> mutation = batch.withRow(cf, rowKey);
+                for ( int i = 0; i < columns.size(); i++ ) {
+                    mutation.incrementCounterColumn(columns.get(i), deltas.get(i));
+                }
+            }
+        }
+
+        void written(Model o) {
+            o._setCounters(values);
+        }
+    }
+
+    /**
+     * Computes the increments setting the counters of the row to the values of the model. Each
+     * counter is incremented by the change since the model last read or wrote it, so increments
+     * made by others in the meantime are kept. Counters of a model which never read them (a new
+     * model for instance) are read once, with cassandra.concurrency.read.counter, to compute
+     * the change. Nothing is written.
+     *
+     * @return Increments of the row; null if the model has no counters
+     */
+    private CounterDelta prepareCounters(Model o, ColumnFamily<String, String> cf) throws IllegalAccessException, ConnectionException {
+        ModelReflector reflector = ModelReflector.reflectorFor(cf.getName());
+        if ( !reflector.hasCounters() ) {
+            return null;
+        }
+        String rowKey = o.getId().toString();
+        List<ColumnField> fields = reflector.getCounterFields();
+        long[] values = reflector.counterValues(o);
+        long[] stored = o._getCounters();
+        if ( null == stored || stored.length != values.length ) {
+            ColumnList<String> counterColumns = getCounterRow(reflector, rowKey,
+                    ConsistencyLevel.valueOf(Play.configuration.getProperty("cassandra.concurrency.read.counter", "CL_QUORUM")));
+            stored = new long[fields.size()];
+            for ( int i = 0; i < fields.size(); i++ ) {
+                com.netflix.astyanax.model.Column<String> counter = counterColumns.getColumnByName(fields.get(i).getName());
+                stored[i] = null == counter ? 0L : counter.getLongValue();
+            }
+        }
+
+        CounterDelta counters = new CounterDelta(reflector.getCounterColumnFamily(), rowKey, values);
+        for ( int i = 0; i < fields.size(); i++ ) {
+            long diff = values[i] - stored[i];
+            if ( 0 != diff ) {
+                trace("saveCounters: [%s::%s] %s - incrementing by %d", cf.getName(), rowKey, fields.get(i).getName(), diff);
+                counters.columns.add(fields.get(i).getName());
+                counters.deltas.add(diff);
+            }
+        }
+        return counters;
+    }
+
+    private ConsistencyLevel writeConsistencyLevel(Model o, boolean saveCounters) {
+        if ( saveCounters || o.isNew() ) {
+            return ConsistencyLevel.valueOf(Play.configuration.getProperty("cassandra.concurrency.write.model", "CL_QUORUM"));
+        }
+        return config().getDefaultWriteConsistencyLevel();
+    }
 
-            if ( o.isNew() ) {
-                writeConsistencyLevel = ConsistencyLevel.valueOf(Play.configuration.getProperty("cassandra.concurrency.write.model", "CL_QUORUM"));
-            }
+    private static boolean dirtyCheck() {
+        return Boolean.parseBoolean(Play.configuration.getProperty("cassandra.save.dirtycheck", "true"));
+    }
 
-            Keyspace keyspace = getKeyspace();
-            MutationBatch mutationBatch = keyspace.prepareMutationBatch();
-            mutationBatch.setConsistencyLevel(writeConsistencyLevel);
-            ColumnListMutation<String> columnListMutation = mutationBatch.withRow(cf, o.getId().toString());
-
-            // Inserting data
-            ModelReflector reflector = ModelReflector.reflectorFor(cf.getName());
-            Set<ColumnField> fields = reflector.getColumnFields();
-            for (ColumnField field : fields ) {
-                String columnName = field.getName();
-                if ( field.isCounter() ) {
-                    if ( saveCounters ) {
-                        putCounterColumn(o, cf.getName(), o.getId().toString(), columnName, field);
-                    }
-                } else {
-                    putColumn(o, columnListMutation, columnName, field);
-                }
-            }
+    private static int batchThreads() {
+        return Math.max(1, Integer.parseInt(Play.configuration.getProperty("cassandra.batch.threads", "4")));
+    }
 
-            mutationBatch.execute();
-        } catch (Exception e) {
-            CassandraLogger.error(e, "Could not save a Cassandra object");
-            throw new UnexpectedException(e);
+    private static synchronized ExecutorService batchExecutor() {
+        if ( null == _batchExecutor ) {
+            _batchExecutor = Executors.newFixedThreadPool(batchThreads(), new ThreadFactoryBuilder()
+                    .setNameFormat("cassandra-batch-%d")
+                    .setDaemon(true)
+                    .build());
         }
+        return _batchExecutor;
     }
 
     /**
@@ -566,28 +1391,47 @@ public class CassandraProvider implements CassandraDB {
      * @return long Number of models in family
      */
     public long count(ColumnFamily<String, String> cf) {
-        try {
-            Keyspace keyspace = getKeyspace();
-
-            OperationResult<Rows<String, String>> results = keyspace.prepareQuery(cf)
-                    .getAllRows()
-                    .execute();
-
-            Rows<String, String> rows = results.getResult();
+        return count(cf, 0, null).getCount();
+    }
 
-            long result = 0;
-            //noinspection UnusedDeclaration,UnusedDeclaration
-            for ( Row<String, String> row : rows ) {
-                if ( ! row.getColumns().isEmpty() ) {
-                    result++;
-                }
+    /**
+     * Counts the non-empty rows of a column family reading a single column per row, see ScanEngine.
+     *
+     * NOTE: Deleted rows stay behind as empty rows until they are compacted away, so empty rows are not counted.
+     *
+     * @param cf Column family being counted
+     * @param timeBudget Milliseconds after which counting stops and an estimate is returned; 0 for no limit
+     * @param listener Notified after every page of rows; may be null
+     * @return Count, complete unless the time budget ran out
+     */
+    public CountResult count(ColumnFamily<String, String> cf, long timeBudget, CountListener listener) {
+        return scanEngine().scan(cf, 1, timeBudget, new RowVisitor() {
+            @Override
+            public boolean visit(List<Row<String, String>> rows) {
+                return true;
             }
+        }, listener);
+    }
 
-            return result;
-        } catch ( ConnectionException e ) {
-            CassandraLogger.error(e, "Could not count a Cassandra object");
-            throw new UnexpectedException(e);
+    /**
+     * Visits every non-empty row of a column family, token ranges in parallel
+     *
+     * @param cf Column family being scanned
+     * @param columnLimit Columns read per row; 0 to read every column
+     * @param timeBudget Milliseconds after which the scan stops; 0 for no limit
+     * @param visitor Receives the rows one page at a time, concurrently from the scan threads
+     * @param listener Notified after every page of rows; may be null
+     * @return Rows visited, complete unless the time budget ran out or the visitor stopped the scan
+     */
+    public CountResult scan(ColumnFamily<String, String> cf, int columnLimit, long timeBudget, RowVisitor visitor, CountListener listener) {
+        return scanEngine().scan(cf, columnLimit, timeBudget, visitor, listener);
+    }
+
+    private ScanEngine scanEngine() {
+        if ( null == _scanEngine ) {
+            _scanEngine = new ScanEngine(getKeyspace());
         }
+        return _scanEngine;
     }
 
     /**
@@ -617,70 +1461,19 @@ public class CassandraProvider implements CassandraDB {
 	}
 
 	/**
-	 * Passes values in as close to primitive types as possible. Other types (such as BigDecimal, UUI) which may
-	 * require special processing to read are passed as strings
+	 * Writes the field through the codec resolved for it when the model was compiled. MapModel lists
+	 * live in their own column family, prepareSave() adds them to the batch of the row.
 	 *
 	 * @param o Reference to model being updated
 	 * @param columnListMutation Reference to affected query
 	 * @param columnName Name of column being saved
 	 * @param modelField Field property from model - this is being inspected for type, value and name
 	 */
+	@SuppressWarnings("unchecked")
 	private void putColumn(Model o, ColumnListMutation<String> columnListMutation, String columnName, ColumnField modelField) {
+        ColumnCodec codec = modelField.getCodec();
 		try {
-            Object initialValue = modelField.get(o);
-            if ( null == initialValue) {
-                columnListMutation.putEmptyColumn(columnName, null);
-                return;
-            }
-			Class<?> objClazz = modelField.getType();
-			if ( play.db.Model.class.isAssignableFrom(objClazz) ) {
-				play.db.Model model = (play.db.Model)initialValue;
-                columnListMutation.putColumn(columnName, model._key().toString(), null);
-            } else if ( modelField.isList() ) {
-                if ( play.db.Model.class.isAssignableFrom(modelField.genericType())) {
-                    List<String> idList = new ArrayList<String>();
-                    List<play.db.Model> relations = (List<play.db.Model>)initialValue;
-                    if ( null != relations ) {
-                        for ( play.db.Model model : relations ) {
-                            if ( null != model && null != model._key() ) {
-                                idList.add(model._key().toString());
-                            }
-                        }
-                    }
-                    columnListMutation.putColumn(columnName, new Gson().toJson(idList), null);
-                } else if ( MapModel.class.isAssignableFrom(modelField.genericType())) {
-                    List<MapModel> mapModels = (List<MapModel>)initialValue;
-                    for ( MapModel mapModel : mapModels ) {
-                        if ( mapModel.isChanged() ) {
-                            writeComposite(mapModel);
-                        }
-                    }
-                }
-            } else if ( Date.class.isAssignableFrom(objClazz) ) {
-				columnListMutation.putColumn(columnName, (Date)initialValue, null);
-			} else if ( objClazz.isAssignableFrom(Boolean.TYPE)) {
-				columnListMutation.putColumn(columnName, modelField.getBoolean(o), null);
-            } else if ( objClazz.isAssignableFrom(Boolean.class)) {
-                columnListMutation.putColumn(columnName, (Boolean)modelField.get(o), null);
-            } else if ( objClazz.isAssignableFrom(Double.TYPE)) {
-				columnListMutation.putColumn(columnName, modelField.getDouble(o), null);
-            } else if ( objClazz.isAssignableFrom(Double.class)) {
-                columnListMutation.putColumn(columnName, (Double)modelField.get(o), null);
-            } else if ( objClazz.isAssignableFrom(Integer.TYPE)) {
-				columnListMutation.putColumn(columnName, modelField.getInt(o), null);
-            } else if ( objClazz.isAssignableFrom(Integer.class)) {
-                columnListMutation.putColumn(columnName, (Integer)modelField.get(o), null);
-            } else if ( Long.TYPE.isAssignableFrom(objClazz) || Long.class.isAssignableFrom(objClazz)) {
-                trace("putColumn: [%s] - Handling as long %d", columnName, modelField.toLong(initialValue));
-                columnListMutation.putColumn(columnName, modelField.toLong(initialValue), null);
-            } else {
-				Object value = modelField.get(o);
-				if ( null == value ) {
-					columnListMutation.putEmptyColumn(columnName, null);
-				} else {
-					columnListMutation.putColumn(columnName, value.toString(), null);
-				}
-			}
+            codec.write(o, modelField, columnListMutation);
 		} catch ( NullPointerException e) {
 			columnListMutation.putEmptyColumn(columnName, null);
 		} catch ( IllegalAccessException e ) {
@@ -688,68 +1481,9 @@ public class CassandraProvider implements CassandraDB {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	private void getColumn(String rowKey, Object o, ColumnField field, com.netflix.astyanax.model.Column<String> column) throws IllegalArgumentException, IllegalAccessException {
-        Class<?> objClazz = field.getType();
         try {
-			String value = column.getStringValue();
-			if ( play.db.Model.class.isAssignableFrom(objClazz) ) {
-				Object relationValue = play.db.Model.Manager.factoryFor(ModelReflector.reflectorFor(objClazz).getType()).findById(value);
-				field.set(o, relationValue);
-            } else if ( Collection.class.isAssignableFrom(objClazz) ) {
-                RelationList list = new RelationList();
-                String [] ids = new Gson().fromJson(value, String[].class);
-                for ( String id : ids ) {
-                    list.add(new Relation(field.genericType().getName(), id));
-                }
-                field.set(o, list);
-            } else if ( Date.class.isAssignableFrom(objClazz) ) {
-				Date dateValue = column.getDateValue();
-				field.set(o, dateValue);
-			} else if ( BigDecimal.class.isAssignableFrom(objClazz) ) {
-				if ( null != value ) {
-					try {
-						field.set(o, new BigDecimal(value));
-					} catch ( NumberFormatException e) {
-						// Let it slide, Model constructor generates default value
-					}
-				}
-			} else if ( objClazz.isAssignableFrom(Boolean.TYPE)  ||  objClazz.isAssignableFrom(Boolean.class)) {
-				boolean iValue = column.getBooleanValue();
-				field.set(o, iValue);
-			} else if ( objClazz.isAssignableFrom(Double.TYPE)  ||  objClazz.isAssignableFrom(Double.class)) {
-				double iValue = column.getDoubleValue();
-				field.set(o, iValue);
-			} else if ( objClazz.isAssignableFrom(Integer.TYPE) ||  objClazz.isAssignableFrom(Integer.class)) {
-				int iValue = column.getIntegerValue();
-				field.set(o, iValue);
-			} else if ( objClazz.isAssignableFrom(Long.TYPE) ||  objClazz.isAssignableFrom(Long.class)) {
-				long dValue = column.getLongValue();
-				field.set(o, dValue);
-			} else if ( objClazz.isAssignableFrom(UUID.class)) {
-				UUID uuidValue = column.getUUIDValue();
-				field.set(o, uuidValue);
-			} else if ( objClazz.isAssignableFrom(ByteBuffer.class)) {
-				ByteBuffer bbValue = column.getByteBufferValue();
-				field.set(o, bbValue);
-            }
-            else if ( objClazz.isAssignableFrom(DateTime.class)) {
-                DateTime dtValue = null;
-                if ( !value.isEmpty() ) {
-                    dtValue = DateTime.parse(value);
-                }
-                field.set(o, dtValue);
-            } else if ( objClazz.isEnum() ) {
-                if ( null != value && !value.toString().isEmpty() ) {
-                    try {
-                        field.set(o, Enum.valueOf((Class<Enum>) field.getType(), value));
-                    } catch ( IllegalArgumentException e ) {
-                        // do nothing - allow fallback to default value
-                    }
-                }
-			} else {
-				field.set(o, value);
-			}
+            field.getCodec().read(o, field, column);
 		} catch (IllegalAccessException e) {
 			throw new DatabaseException("Unable to read column - IllegalAccessException");
 		} catch (NullPointerException e) {
@@ -777,17 +1511,14 @@ public class CassandraProvider implements CassandraDB {
     /**
      * TODO: Analyze the flow of this - should we keep retrying until the results are as expected; can this create a dangerous recursive deadlock situation?
      * TODO: Not DRY - getCounterColumn repeats part of this functionality
-     * @param o Reference to object sending the counter
+     * Used by set() on a counter column, saved models go through saveCounters()
      * @param cfName Name of column family
-     * @param rowKey Unique identifier of object(o) in column family
+     * @param rowKey Unique identifier of the row in column family
      * @param columnName Name of column being changed
-     * @param modelField Reference to class field which the operation is being done on. TODO: This is silly, we should be passing in the value here
+     * @param targetValue Value the counter should have
+     * @param attempt Number of this attempt, starting at 1
      * @throws IllegalAccessException Occurs when a column is accessed inappropriately (for example, attempting to save to a null)
      */
-    private void putCounterColumn(Object o, String cfName, String rowKey, String columnName, ColumnField modelField) throws IllegalAccessException, ConnectionException {
-        putCounterColumn(cfName, rowKey, columnName, modelField.toLong(modelField.get(o)), 1);
-    }
-
     private void putCounterColumn(String cfName, String rowKey, String columnName, Long targetValue, Integer attempt) throws IllegalAccessException, ConnectionException {
         trace("PutCounter: [%s::%s] %s - Attempt %d", cfName, rowKey, columnName, attempt);
         Long counterValue;
@@ -844,7 +1575,7 @@ public class CassandraProvider implements CassandraDB {
      * @return Value from counter (must always be Long)
 	 */
     private Long getCounterColumn(String cfName, String rowKey, String columnName) throws ConnectionException {
-        return getCounterColumn(cfName, rowKey, columnName, config().getDefaultWriteConsistencyLevel());
+        return getCounterColumn(cfName, rowKey, columnName, config().getDefaultReadConsistencyLevel());
     }
 
     private Long getCounterColumn(String cfName, String rowKey, String columnName, ConsistencyLevel consistencyLevel) throws ConnectionException {
@@ -870,6 +1601,52 @@ public class CassandraProvider implements CassandraDB {
         return value;
 	}
 
+    /**
+     * Reads every counter of a model with a single query
+     *
+     * @param reflector Reflector of the model
+     * @param rowKey Key of the model
+     * @return Counter columns of the row; empty if the model has no counters stored
+     */
+    private ColumnList<String> getCounterRow(ModelReflector reflector, String rowKey) throws ConnectionException {
+        return getCounterRow(reflector, rowKey, config().getDefaultReadConsistencyLevel());
+    }
+
+    private ColumnList<String> getCounterRow(ModelReflector reflector, String rowKey, ConsistencyLevel consistencyLevel) throws ConnectionException {
+        trace("getCounterRow: [%s::%s] - START", reflector.getCounterColumnFamily().getName(), rowKey);
+        return getKeyspace().prepareQuery(reflector.getCounterColumnFamily())
+                .setConsistencyLevel(consistencyLevel)
+                .getKey(rowKey)
+                .withColumnSlice(reflector.getCounterColumnNames())
+                .execute()
+                .getResult();
+    }
+
+    /**
+     * Reads the counters of several models with a single key slice query
+     *
+     * @param reflector Reflector of the models
+     * @param rowKeys Keys of the models
+     * @return Counter columns by row key; empty if the models have no counters
+     */
+    private Map<String, ColumnList<String>> getCounterRows(ModelReflector reflector, Collection<String> rowKeys) throws ConnectionException {
+        Map<String, ColumnList<String>> counterRows = new HashMap<String, ColumnList<String>>();
+        if ( !reflector.hasCounters() || rowKeys.isEmpty() ) {
+            return counterRows;
+        }
+        trace("getCounterRows: [%s] %d rows - START", reflector.getCounterColumnFamily().getName(), rowKeys.size());
+        Rows<String, String> rows = getKeyspace().prepareQuery(reflector.getCounterColumnFamily())
+                .setConsistencyLevel(config().getDefaultReadConsistencyLevel())
+                .getKeySlice(rowKeys)
+                .withColumnSlice(reflector.getCounterColumnNames())
+                .execute()
+                .getResult();
+        for ( Row<String, String> row : rows ) {
+            counterRows.put(row.getKey(), row.getColumns());
+        }
+        return counterRows;
+    }
+
     private Keyspace getKeyspace() {
         return _context.getEntity();
     }
@@ -966,225 +1743,516 @@ public class CassandraProvider implements CassandraDB {
         return  sb.toString();
     }
 
-    private class ModelRowsList<T extends play.db.Model> implements List<T> {
-        private int size = -1;
-        private ColumnFamily<String, String> cf;
-        private final Rows<String, String> rows;
+    private static String encodePageToken(String rowKey) {
+        try {
+            return Codec.encodeBASE64(rowKey.getBytes("UTF-8"));
+        } catch ( UnsupportedEncodingException e ) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    private static String decodePageToken(String pageToken) {
+        if ( null == pageToken || pageToken.isEmpty() ) {
+            return "";
+        }
+        try {
+            return new String(Codec.decodeBASE64(pageToken), "UTF-8");
+        } catch ( UnsupportedEncodingException e ) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    /**
+     * Streams the rows of a column family page by page (cassandra.scan.pagesize rows per key range
+     * query). Size, contains and indexOf only read row keys; get(i) continues from the previous call
+     * when indexes increase so indexed loops read the column family once.
+     */
+    private class ModelRowCursor<T extends play.db.Model> extends AbstractList<T> implements ModelCursor<T> {
         private final Class<? extends play.db.Model> clazz;
-        private final List<String> ignoredKeys = new ArrayList<String>();
+        private final ModelReflector reflector;
+        private final ColumnFamily<String, String> cf;
+        private final String startKey;
+        private final int pageSize;
+        private final Set<String> ignoredKeys = new HashSet<String>();
+        private int size = -1;
+        private String pageToken = null;
 
-        public ModelRowsList(Rows<String, String> rows, Class<? extends play.db.Model> clazz) {
-            this.rows = rows;
+        private ModelRowIterator positional = null;
+        private int positionalIndex = -1;
+        private T positionalModel = null;
+        // Key after which page n of positional access starts, for the pages reached so far
+        private final List<String> pageStarts = new ArrayList<String>();
+
+        public ModelRowCursor(Class<? extends play.db.Model> clazz, String startKey) {
             this.clazz = clazz;
-            this.cf = ModelReflector.reflectorFor(clazz).getColumnFamily();
+            this.reflector = ModelReflector.reflectorFor(clazz);
+            this.cf = reflector.getColumnFamily();
+            this.startKey = startKey;
+            this.pageSize = ScanEngine.pageSize();
+            pageStarts.add(startKey);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new ModelRowIterator();
         }
 
-        // TODO: Create a count iterator that does not parse rows into domain objects
         @Override
         public int size() {
             if ( size < 0 ) {
-                size = 0;
-                for ( Object obj : this ) {
-                    size++;
+                int count = 0;
+                RowIterator rows = new RowIterator(true);
+                while ( rows.hasNext() ) {
+                    rows.next();
+                    count++;
                 }
+                size = count;
             }
             return size;
         }
 
         @Override
         public boolean isEmpty() {
-            return ( size() == 0);
+            if ( size >= 0 ) {
+                return size == 0;
+            }
+            return !new RowIterator(true).hasNext();
         }
 
         @Override
-        public boolean contains(Object o) {
-            for ( Object model : this ) {
-                if ( model.equals(o)) {
-                    return true;
+        public T get(int i) {
+            if ( i < 0 ) {
+                throw new IndexOutOfBoundsException("Index: " + i);
+            }
+            if ( i == positionalIndex && null != positionalModel ) {
+                return positionalModel;
+            }
+            // Going back, or ahead to a page reached before, starts reading at that page
+            int page = Math.min(i / pageSize, pageStarts.size() - 1);
+            int pageIndex = page * pageSize - 1;
+            if ( null == positional || i < positionalIndex || pageIndex > positionalIndex ) {
+                positional = new ModelRowIterator(pageStarts.get(page), Integer.MAX_VALUE);
+                positionalIndex = pageIndex;
+                positionalModel = null;
+            }
+            while ( positionalIndex < i ) {
+                if ( !positional.hasNext() ) {
+                    throw new IndexOutOfBoundsException("Index: " + i);
+                }
+                positionalModel = positional.next();
+                positionalIndex++;
+                if ( (positionalIndex + 1) % pageSize == 0 && (positionalIndex + 1) / pageSize == pageStarts.size() ) {
+                    pageStarts.add(positional.currentKey());
                 }
             }
-            return false;
+            return positionalModel;
         }
 
-        @Override
-        public Iterator<T> iterator() {
-            return new ModelRowsListIterator(rows.iterator());
+        /**
+         * Rows removed through an iterator shift the positions of the rows after them
+         */
+        private void forgetPositions() {
+            positional = null;
+            positionalIndex = -1;
+            positionalModel = null;
+            pageStarts.subList(1, pageStarts.size()).clear();
         }
 
         @Override
-        public Object[] toArray() {
-            throw new UnsupportedOperationException();
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
         }
 
         @Override
-        public <T> T[] toArray(T[] ts) {
-            throw new UnsupportedOperationException();
+        public int indexOf(Object o) {
+            String key = keyOf(o);
+            if ( null == key ) {
+                return -1;
+            }
+            int index = 0;
+            RowIterator rows = new RowIterator(true);
+            while ( rows.hasNext() ) {
+                if ( rows.next().getKey().equals(key) ) {
+                    return index;
+                }
+                index++;
+            }
+            return -1;
         }
 
         @Override
-        public boolean add(T t) {
-            throw new UnsupportedOperationException();
+        public int lastIndexOf(Object o) {
+            // Row keys are unique
+            return indexOf(o);
         }
 
-        @Override
-        public boolean remove(Object o) {
-            throw new UnsupportedOperationException();
+        private String keyOf(Object o) {
+            if ( !clazz.isInstance(o) ) {
+                return null;
+            }
+            Object key = ((play.db.Model) o)._key();
+            return null == key ? null : key.toString();
         }
 
         @Override
-        public boolean containsAll(Collection<?> objects) {
-            throw new UnsupportedOperationException();
+        public List<T> fetch(int max) {
+            return fetch(0, max);
         }
 
         @Override
-        public boolean addAll(Collection<? extends T> ts) {
-            throw new UnsupportedOperationException();
+        public List<T> fetch(int offset, int max) {
+            List<T> models = new ArrayList<T>();
+            if ( max <= 0 ) {
+                return models;
+            }
+            String start = startKey;
+            if ( offset > 0 ) {
+                RowIterator keys = new RowIterator(true, start, offset);
+                int skipped = 0;
+                while ( skipped < offset && keys.hasNext() ) {
+                    start = keys.next().getKey();
+                    skipped++;
+                }
+                if ( skipped < offset ) {
+                    return models;
+                }
+            }
+            Iterator<T> iterator = new ModelRowIterator(start, max);
+            while ( iterator.hasNext() ) {
+                models.add(iterator.next());
+            }
+            return models;
         }
 
         @Override
-        public boolean addAll(int i, Collection<? extends T> ts) {
-            throw new UnsupportedOperationException();
+        public String getPageToken() {
+            return pageToken;
         }
 
         @Override
-        public boolean removeAll(Collection<?> objects) {
-            throw new UnsupportedOperationException();
+        public ModelCursor<T> resume(String pageToken) {
+            return new ModelRowCursor<T>(clazz, decodePageToken(pageToken));
         }
 
-        @Override
-        public boolean retainAll(Collection<?> objects) {
-            throw new UnsupportedOperationException();
-        }
+        /**
+         * Iterates over the non-empty rows of the column family, one key range query per page
+         */
+        private class RowIterator implements Iterator<Row<String, String>> {
+            private final boolean keysOnly;
+            private final LinkedList<Row<String, String>> buffer = new LinkedList<Row<String, String>>();
+            private String nextStart;
+            private int remaining;
+            private boolean exhausted = false;
+
+            RowIterator(boolean keysOnly) {
+                this(keysOnly, startKey, Integer.MAX_VALUE);
+            }
 
-        @Override
-        public void clear() {
-            throw new UnsupportedOperationException();
-        }
+            /**
+             * @param start Key after which rows are returned; empty to start from the first row
+             * @param limit Maximum number of rows returned, pages are shortened to read no more than that
+             */
+            RowIterator(boolean keysOnly, String start, int limit) {
+                this.keysOnly = keysOnly;
+                this.nextStart = start;
+                this.remaining = limit;
+            }
 
-        @Override
-        public boolean equals(Object o) {
-            return rows.equals(o);
-        }
+            private void fill() {
+                while ( buffer.isEmpty() && !exhausted ) {
+                    if ( remaining <= 0 ) {
+                        exhausted = true;
+                        break;
+                    }
+                    // The start key is inclusive and was returned already, ask for one more row
+                    int wanted = Math.min(pageSize, remaining);
+                    int count = nextStart.isEmpty() ? wanted : wanted + 1;
+                    Rows<String, String> rows;
+                    try {
+                        rows = scanEngine().readKeyPage(cf, nextStart, count, keysOnly ? 1 : 0);
+                    } catch (ConnectionException e) {
+                        throw new DatabaseException("Connection exception: " + cf.getName(), e);
+                    }
+                    int returned = 0;
+                    String lastKey = null;
+                    for ( Row<String, String> row : rows ) {
+                        returned++;
+                        lastKey = row.getKey();
+                        if ( row.getKey().equals(nextStart) ) {
+                            continue;
+                        }
+                        // Empty rows are tombstones
+                        if ( !row.getColumns().isEmpty() && !ignoredKeys.contains(row.getKey()) && buffer.size() < remaining ) {
+                            buffer.add(row);
+                        }
+                    }
+                    remaining -= buffer.size();
+                    if ( returned < count || null == lastKey ) {
+                        exhausted = true;
+                    } else {
+                        nextStart = lastKey;
+                    }
+                }
+            }
 
-        @Override
-        public int hashCode() {
-            return rows.hashCode();
-        }
+            @Override
+            public boolean hasNext() {
+                fill();
+                return !buffer.isEmpty();
+            }
 
-        @Override
-        public T get(int i) {
-            int j = 0;
-            for ( T model : this ) {
-                if ( j == i ) {
-                    return model;
+            @Override
+            public Row<String, String> next() {
+                fill();
+                if ( buffer.isEmpty() ) {
+                    throw new NoSuchElementException();
                 }
-                j++;
+                return buffer.removeFirst();
             }
-            return null;
-        }
 
-        @Override
-        public T set(int i, T t) {
-            throw new UnsupportedOperationException();
+            /**
+             * @return Rows left in the current page, reading the next page if it is exhausted
+             */
+            List<Row<String, String>> nextPage() {
+                fill();
+                List<Row<String, String>> page = new ArrayList<Row<String, String>>(buffer);
+                buffer.clear();
+                return page;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
         }
 
-        @Override
-        public void add(int i, T t) {
-            throw new UnsupportedOperationException();
+        /**
+         * Parses one page at a time so the counters of the page come back in one key slice,
+         * and the lazy references of the page are resolved together
+         */
+        private class ModelRowIterator implements Iterator<T> {
+            private final RowIterator rows;
+            private final LinkedList<Row<String, String>> page = new LinkedList<Row<String, String>>();
+            private Map<String, ColumnList<String>> counterRows = new HashMap<String, ColumnList<String>>();
+            private RelationBatch relations = new RelationBatch();
+            private Row<String, String> current;
+
+            ModelRowIterator() {
+                rows = new RowIterator(false);
+            }
+
+            ModelRowIterator(String start, int limit) {
+                rows = new RowIterator(false, start, limit);
+            }
+
+            private void fill() {
+                if ( !page.isEmpty() || !rows.hasNext() ) {
+                    return;
+                }
+                page.addAll(rows.nextPage());
+                List<String> keys = new ArrayList<String>();
+                for ( Row<String, String> row : page ) {
+                    keys.add(row.getKey());
+                }
+                relations = new RelationBatch();
+                try {
+                    counterRows = getCounterRows(reflector, keys);
+                } catch (ConnectionException e) {
+                    throw new DatabaseException("Connection exception: " + clazz.getName(), e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                fill();
+                return !page.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                fill();
+                if ( page.isEmpty() ) {
+                    throw new NoSuchElementException();
+                }
+
+                current = page.removeFirst();
+                pageToken = encodePageToken(current.getKey());
+                return parseColumns(clazz, current.getColumns(), counterRows.get(current.getKey()), relations, cf.getName(), current.getKey());
+            }
+
+            /**
+             * @return Key of the row returned by the last next()
+             */
+            String currentKey() {
+                return current.getKey();
+            }
+
+            @Override
+            public void remove() {
+                if ( null == current ) {
+                    throw new IllegalStateException();
+                }
+                ignoredKeys.add(current.getKey());
+                if ( size >= 0 ) {
+                    --size;
+                }
+                forgetPositions();
+            }
         }
+    }
 
-        @Override
-        public T remove(int i) {
-            throw new UnsupportedOperationException();
+    /**
+     * Reads the token ranges it holds one after the other, a page at a time. Splitting hands
+     * over half of the ranges not started yet or, with a single range left, the second half
+     * of the part of it not read yet.
+     */
+    private class TokenRangeSpliterator<T extends play.db.Model> implements ModelSpliterator<T> {
+        private final Class<? extends play.db.Model> clazz;
+        private final ModelReflector reflector;
+        private final ColumnFamily<String, String> cf;
+        private final int pageSize;
+        private final LinkedList<TokenRanges.Range> ranges;
+        private String startToken = null;
+        private final LinkedList<Row<String, String>> page = new LinkedList<Row<String, String>>();
+        private Map<String, ColumnList<String>> counterRows = new HashMap<String, ColumnList<String>>();
+        private RelationBatch relations = null;
+
+        TokenRangeSpliterator(Class<? extends play.db.Model> clazz, List<TokenRanges.Range> ranges) {
+            this.clazz = clazz;
+            this.reflector = ModelReflector.reflectorFor(clazz);
+            this.cf = reflector.getColumnFamily();
+            this.pageSize = ScanEngine.pageSize();
+            this.ranges = new LinkedList<TokenRanges.Range>(ranges);
         }
 
-        @Override
-        public int indexOf(Object o) {
-            int indexNum = 0;
-            for ( Object model : this ) {
-                if ( model.equals(this)) {
-                    return indexNum;
+        private void fill() {
+            if ( !page.isEmpty() ) {
+                return;
+            }
+            while ( page.isEmpty() && !ranges.isEmpty() ) {
+                TokenRanges.Range range = ranges.getFirst();
+                String start = null == startToken ? range.start : startToken;
+                Rows<String, String> rows;
+                try {
+                    rows = scanEngine().readTokenPage(cf, start, range.end, pageSize, 0);
+                } catch (ConnectionException e) {
+                    throw new DatabaseException("Connection exception: " + cf.getName(), e);
+                }
+                int returned = 0;
+                String lastKey = null;
+                for ( Row<String, String> row : rows ) {
+                    returned++;
+                    lastKey = row.getKey();
+                    // Empty rows are tombstones
+                    if ( !row.getColumns().isEmpty() ) {
+                        page.add(row);
+                    }
+                }
+                // Start tokens are exclusive, the next page starts right after the last key
+                startToken = null == lastKey ? null : TokenRanges.tokenFor(lastKey);
+                if ( returned < pageSize || null == startToken || startToken.equals(range.end) ) {
+                    ranges.removeFirst();
+                    startToken = null;
+                }
+            }
+            if ( !page.isEmpty() ) {
+                // Counters and lazy references of a page are read together
+                relations = new RelationBatch();
+                List<String> keys = new ArrayList<String>();
+                for ( Row<String, String> row : page ) {
+                    keys.add(row.getKey());
+                }
+                try {
+                    counterRows = getCounterRows(reflector, keys);
+                } catch (ConnectionException e) {
+                    throw new DatabaseException("Connection exception: " + clazz.getName(), e);
                 }
-                indexNum++;
             }
-            return -1;
         }
 
         @Override
-        public int lastIndexOf(Object o) {
-            int foundNum = -1;
-            int indexNum = 0;
-            for ( Object model : this ) {
-                if ( model.equals(this)) {
-                    foundNum = indexNum;
+        public ModelSpliterator<T> trySplit() {
+            if ( ranges.size() > 1 ) {
+                // The first range may be partly read already, it stays here
+                List<TokenRanges.Range> tail = ranges.subList((ranges.size() + 1) / 2, ranges.size());
+                TokenRangeSpliterator<T> split = new TokenRangeSpliterator<T>(clazz, new ArrayList<TokenRanges.Range>(tail));
+                tail.clear();
+                return split;
+            }
+            if ( ranges.size() == 1 ) {
+                TokenRanges.Range range = ranges.getFirst();
+                String start = null == startToken ? range.start : startToken;
+                String middle = TokenRanges.midpoint(start, range.end);
+                if ( null == middle ) {
+                    return null;
                 }
-                indexNum++;
+                // Rows already paged in come before the start token, they stay here
+                ranges.set(0, new TokenRanges.Range(range.start, middle));
+                return new TokenRangeSpliterator<T>(clazz, Collections.singletonList(new TokenRanges.Range(middle, range.end)));
             }
-            return foundNum;
+            return null;
         }
 
         @Override
-        public ListIterator<T> listIterator() {
-            throw new UnsupportedOperationException();
+        public long estimateSize() {
+            return ranges.isEmpty() ? page.size() : Long.MAX_VALUE;
         }
 
         @Override
-        public ListIterator<T> listIterator(int i) {
-            throw new UnsupportedOperationException();
+        public boolean hasNext() {
+            fill();
+            return !page.isEmpty();
         }
 
         @Override
-        public List<T> subList(int i, int i1) {
-            throw new UnsupportedOperationException();
-        }
-
-        private class ModelRowsListIterator<T extends Model> implements Iterator<T> {
-            private Row<String, String> current;
-            private Row<String, String> next;
-            private Iterator<Row<String, String>> rowIterator;
-            public ModelRowsListIterator(Iterator<Row<String, String>> iterator) {
-                rowIterator = iterator;
-                primeNext();
+        public T next() {
+            fill();
+            if ( page.isEmpty() ) {
+                throw new NoSuchElementException();
             }
+            Row<String, String> row = page.removeFirst();
+            return (T) parseColumns(clazz, row.getColumns(), counterRows.get(row.getKey()), relations, cf.getName(), row.getKey());
+        }
 
-            @Override
-            public boolean hasNext() {
-                return (null != next);
-            }
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 
-            private void primeNext() {
-                next = null;
-                while ( rowIterator.hasNext() ) {
-                    Row<String, String> row = rowIterator.next();
-                    ColumnList<String> columns = row.getColumns();
-                    if ( !columns.isEmpty() && !ignoredKeys.contains(row.getKey())) {
-                        next = row;
-                        break;
-                    }
-                }
-            }
+    /**
+     * Spliterator over the key ordered rows of a column family, which can not be split
+     */
+    private static class KeyOrderSpliterator<T extends play.db.Model> implements ModelSpliterator<T> {
+        private final Iterator<T> models;
 
-            @Override
-            public T next() {
-                if ( null == next ) {
-                    throw new NoSuchElementException();
-                }
+        KeyOrderSpliterator(Iterator<T> models) {
+            this.models = models;
+        }
 
-                current = next;
-                ColumnList<String> columns = next.getColumns();
-                T model = parseColumns(clazz, columns, cf.getName(), next.getKey());
+        @Override
+        public ModelSpliterator<T> trySplit() {
+            return null;
+        }
 
-                primeNext();
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
 
-                return model;
-            }
+        @Override
+        public boolean hasNext() {
+            return models.hasNext();
+        }
 
-            @Override
-            public void remove() {
-                ignoredKeys.add(current.getKey());
-                --size;
-            }
+        @Override
+        public T next() {
+            return models.next();
         }
 
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 }
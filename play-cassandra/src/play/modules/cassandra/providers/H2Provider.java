@@ -4,7 +4,6 @@ import com.google.gson.Gson;
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.serializers.StringSerializer;
-import org.joda.time.DateTime;
 import play.Logger;
 import play.Play;
 import play.db.*;
@@ -145,69 +144,72 @@ public class H2Provider implements CassandraDB {
         return model;
     }
 
+    public <T extends play.db.Model> MultiGetResult<T> findMany(Class<? extends play.db.Model> clazz, ColumnFamily<String, String> cf, Collection<?> ids) {
+        Map<String, Object> idsByKey = new LinkedHashMap<String, Object>();
+        for ( Object id : ids ) {
+            if ( null != id && !idsByKey.containsKey(id.toString()) ) {
+                idsByKey.put(id.toString(), id);
+            }
+        }
+        MultiGetResult<T> models = new MultiGetResult<T>(idsByKey.size());
+        if ( idsByKey.isEmpty() ) {
+            return models;
+        }
+        ModelReflector reflector = ModelReflector.reflectorFor(clazz);
+        Map<String, T> modelsByKey = new HashMap<String, T>();
+        Connection conn = getConnection();
+        String table = clazz.getSimpleName();
+        String idField = reflector.getIdentityField();
+        try {
+            assertTable(table);
+            StringBuilder params = new StringBuilder();
+            for ( int i = 0; i < idsByKey.size(); i++ ) {
+                params.append(i == 0 ? "?" : ", ?");
+            }
+            String stmt = String.format("SELECT * FROM `%s` WHERE %s IN (%s);", table, idField, params);
+            PreparedStatement pStmt = conn.prepareStatement(stmt);
+            int index = 1;
+            for ( String key : idsByKey.keySet() ) {
+                pStmt.setString(index++, key);
+            }
+            ResultSet rs = pStmt.executeQuery();
+            while ( rs.next() ) {
+                modelsByKey.put(rs.getString(idField), this.<T>parseRow(clazz, rs));
+            }
+        } catch (Exception e) {
+            throw new UnexpectedException(e);
+        } finally {
+            closeConnection(conn);
+        }
+        for ( Map.Entry<String, Object> entry : idsByKey.entrySet() ) {
+            T model = modelsByKey.get(entry.getKey());
+            if ( null == model ) {
+                models.addMissing(entry.getValue());
+            } else {
+                models.add(model);
+            }
+        }
+        return models;
+    }
+
     private <T extends play.db.Model> T parseRow(Class<? extends play.db.Model> clazz, ResultSet rs) {
         try {
-            T model = (T) clazz.newInstance();
             ModelReflector reflector = ModelReflector.reflectorFor(clazz);
+            T model = reflector.<T>newInstance();
             String modelId = rs.getString(reflector.getIdentityField());
             for (ColumnField field : reflector.getColumnFields()) {
-                Object value;
                 String sValue = rs.getString(field.getName());
-                Class objClazz = field.getType();
                 if (sValue == null) {
                     if (!field.allowNull()) {
                         throw new UnexpectedException(clazz.getName() + "." + field.getName() + " specified as NotNull but DB value is null!");
                     }
                 }
-                if ( play.db.Model.class.isAssignableFrom(objClazz) ) {
-                    String vType = objClazz.getName();
-                    if (!vType.startsWith("models.")) {
-                        vType = "models." + vType;
-                    }
-                    Class<? extends play.db.Model> vClazz = (Class<? extends play.db.Model>)Play.classloader.loadClass(vType);
-
-                    value = play.db.Model.Manager.factoryFor(vClazz).findById(sValue);
-                } else if ( field.getType().isAssignableFrom(Boolean.TYPE) || field.getType().isAssignableFrom(Boolean.class)) {
-                    value = (sValue == null) ? false : Boolean.parseBoolean(sValue);
-                } else if ( field.getType().isAssignableFrom(Long.TYPE) || field.getType().isAssignableFrom(Long.class)) {
-                    value = (sValue == null) ? 0L : Long.parseLong(sValue);
-                } else if ( field.getType().isAssignableFrom(Integer.TYPE) || field.getType().isAssignableFrom(Integer.class)) {
-                    value = (sValue == null) ? 0 : Integer.parseInt(sValue);
-                } else if (BigDecimal.class.isAssignableFrom(field.getType())) {
-                    if ( null != sValue ) {
-                        value = new BigDecimal(sValue);
-                    } else {
-                        value = null;
-                    }
-                } else if ( field.isList()) {
-                    if ( MapModel.class.isAssignableFrom(field.genericType())) {
-                        Class<? extends MapModel> mapClazz = (Class<? extends MapModel>)field.genericType();
-                        List<? extends MapModel> mapModels = findComposites(mapClazz, modelId);
-                        value = mapModels;
-                    } else {
-                        Class<?> listClass = field.genericType();
-                        RelationList list = new RelationList();
-                        String [] ids = new Gson().fromJson(sValue, String[].class);
-                        for ( String id : ids ) {
-                            list.add(new Relation(listClass.getName(), id));
-                        }
-                        value = list;
-                    }
-                } else if (DateTime.class.isAssignableFrom(field.getType())) {
-                    value = (sValue == null) ? new DateTime(0L) : DateTime.parse(sValue);
-                } else if ( objClazz.isEnum() ) {
-                    if ( null != sValue && !sValue.toString().isEmpty() ) {
-                        try {
-                            field.set(model, Enum.valueOf((Class<Enum>) field.getType(), sValue));
-                        } catch ( IllegalArgumentException e ) {
-                        }
-                    }
-                    continue;
+                if ( field.isMapModelList() ) {
+                    Class<? extends MapModel> mapClazz = (Class<? extends MapModel>)field.genericType();
+                    field.set(model, findComposites(mapClazz, modelId));
                 } else {
-                    value = sValue;
+                    field.getCodec().readString(model, field, sValue);
                 }
-
-                field.set(model, value);
             }
             ((Model)model).onLoad();
             return model;
@@ -216,14 +218,23 @@ public class H2Provider implements CassandraDB {
         }
     }
 
-    public List<? extends play.db.Model> all(Class<? extends play.db.Model> clazz) {
+    public ModelCursor<? extends play.db.Model> all(Class<? extends play.db.Model> clazz, String pageToken) {
+        return all(clazz).resume(pageToken);
+    }
+
+    public ModelSpliterator<? extends play.db.Model> spliterator(Class<? extends play.db.Model> clazz) {
+        return new ListModelSpliterator<play.db.Model>((List<play.db.Model>) all(clazz));
+    }
+
+    public ModelCursor<? extends play.db.Model> all(Class<? extends play.db.Model> clazz) {
         List<Model> models = new ArrayList<Model>();
 
         Connection conn = getConnection();
         String table = clazz.getSimpleName();
         this.assertTable(table);
         try {
-            String stmt = String.format("SELECT * FROM `%s`;", table);
+            // Ordered so page tokens (offsets) stay valid between calls
+            String stmt = String.format("SELECT * FROM `%s` ORDER BY %s;", table, ModelReflector.reflectorFor(clazz).getIdentityField());
             ResultSet rs = conn.createStatement().executeQuery(stmt);
             while ( rs.next() ) {
                 Model model = parseRow(clazz, rs);
@@ -237,17 +248,54 @@ public class H2Provider implements CassandraDB {
             closeConnection(conn);
         }
 
-        return models;
+        return new ListModelCursor<Model>(models);
     }
 
     public void save(Model o, ColumnFamily<String, String> cf) {
         save(o, cf, false);
     }
 
+    public void flush(UnitOfWork work) {
+        for ( UnitOfWork.RowKey key : work.getDeletes() ) {
+            delete(key.getType(), ModelReflector.reflectorFor(key.getType()).getColumnFamily(), key.getId());
+        }
+        for ( Model o : work.getSaves(true) ) {
+            save(o, ModelReflector.reflectorFor(o.getClass()).getColumnFamily(), true);
+        }
+        for ( Model o : work.getSaves(false) ) {
+            save(o, ModelReflector.reflectorFor(o.getClass()).getColumnFamily(), false);
+        }
+        for ( Map.Entry<UnitOfWork.RowKey, Map<String, Object>> row : work.getColumns().entrySet() ) {
+            String cfName = ModelReflector.reflectorFor(row.getKey().getType()).getColumnFamily().getName();
+            for ( Map.Entry<String, Object> column : row.getValue().entrySet() ) {
+                setColumnValue(cfName, row.getKey().getId(), column.getKey(), column.getValue());
+            }
+        }
+        for ( Map.Entry<UnitOfWork.RowKey, Map<String, Long>> row : work.getIncrements().entrySet() ) {
+            String cfName = ModelReflector.reflectorFor(row.getKey().getType()).getColumnFamily().getName();
+            for ( Map.Entry<String, Long> column : row.getValue().entrySet() ) {
+                increment(row.getKey().getId(), cfName, column.getKey(), column.getValue());
+            }
+        }
+    }
+
+    public SaveResult saveAll(Collection<? extends Model> models, boolean saveCounters) {
+        SaveResult result = new SaveResult();
+        for ( Model o : models ) {
+            try {
+                save(o, ModelReflector.reflectorFor(o.getClass()).getColumnFamily(), saveCounters);
+                result.addSaved(1);
+            } catch (RuntimeException e) {
+                result.addFailure(o, e);
+            }
+        }
+        return result;
+    }
+
     public void save(Model o, ColumnFamily<String, String> cf, boolean saveCounters) {
         Connection conn = getConnection();
         ModelReflector reflector = ModelReflector.reflectorFor(o.getClass());
-        Set<ColumnField> columnFields = reflector.getColumnFields();
+        List<ColumnField> columnFields = reflector.getColumnFields();
         try {
             assertTable(o.getClass());
             String table = o.getClass().getSimpleName();
@@ -375,6 +423,15 @@ public class H2Provider implements CassandraDB {
         }
     }
 
+    public CountResult count(ColumnFamily<String, String> cf, long timeBudget, CountListener listener) {
+        long started = System.currentTimeMillis();
+        long count = count(cf);
+        if ( null != listener ) {
+            listener.progress(count, 1, 1);
+        }
+        return new CountResult(count, count, true, System.currentTimeMillis() - started, 1, 1);
+    }
+
     public long count(ColumnFamily<String, String> cf) {
         long results = 0;
         Connection conn = getConnection();
@@ -592,10 +649,9 @@ public class H2Provider implements CassandraDB {
             ModelReflector reflector = ModelReflector.reflectorFor(clazz);
             Model o = find(clazz, cf, id);
             if ( null != o) {
-                for ( ColumnField field : reflector.getColumnFields()) {
-                    if ( field.getName().equals(columnName) ) {
-                        return (T)field.get(o);
-                    }
+                ColumnField field = reflector.getColumnField(columnName);
+                if ( null != field ) {
+                    return (T)field.get(o);
                 }
             }
         } catch (Exception e) {
@@ -615,12 +671,10 @@ public class H2Provider implements CassandraDB {
             ModelReflector reflector = ModelReflector.reflectorFor(clazz);
             Model o = find(clazz, cf, id);
             if ( null != o) {
-                for ( ColumnField field : reflector.getColumnFields()) {
-                    if ( field.getName().equals(columnName) ) {
-                        field.set(o, value);
-                        save(o, cf, true);
-                        return;
-                    }
+                ColumnField field = reflector.getColumnField(columnName);
+                if ( null != field ) {
+                    field.set(o, value);
+                    save(o, cf, true);
                 }
             }
         } catch (Exception e) {
@@ -635,9 +689,13 @@ public class H2Provider implements CassandraDB {
         if ( null == reflector ) return;
         ColumnFamily<String, String> cf = reflector.getColumnFamily();
         String cfName = cf.getName();
-        for ( String key : model.keySet() ) {
+        for ( String key : model.getPuts() ) {
             writeComposite(cfName, model.getKey1(), model.getKey2(), key, model.get(key), null);
         }
+        for ( String key : model.getRemoves() ) {
+            deleteComposite(cfName, model.getKey1(), model.getKey2(), key);
+        }
+        model._clearChanges();
     }
 
 
@@ -710,6 +768,32 @@ public class H2Provider implements CassandraDB {
         return rowsAffected;
     }
 
+    @SuppressWarnings("unchecked")
+    public <T extends MapModel> Iterable<T> iterateComposites(Class<? extends MapModel> clazz, String key) {
+        return (List<T>) findComposites(clazz, key);
+    }
+
+    public Iterable<String> getDictionaryKeys(String cfName, String key) {
+        List<String> keys = new ArrayList<String>();
+        Connection conn = getConnection();
+        try {
+            assertTable(cfName);
+            String stmt = String.format("SELECT DISTINCT dictionaryKey FROM `%s` WHERE rowKey = ? ORDER BY dictionaryKey;", cfName);
+            PreparedStatement pstmt = conn.prepareStatement(stmt);
+            pstmt.setString(1, key);
+            ResultSet rs = pstmt.executeQuery();
+            while ( rs.next() ) {
+                keys.add(rs.getString(1));
+            }
+            conn.commit();
+        } catch ( Exception e ) {
+            throw new UnexpectedException(e);
+        } finally {
+            closeConnection(conn);
+        }
+        return keys;
+    }
+
     public List<? extends MapModel> findComposites(Class<? extends MapModel> clazz, String key) {
         String cfName = ModelReflector.reflectorFor(clazz).getColumnFamily().getName();
         return findComposites(cfName, key, clazz);
@@ -732,13 +816,16 @@ public class H2Provider implements CassandraDB {
                 String value = rs.getString(4);
                 T model = modelMap.get(dictionaryKey);
                 if ( null == model ) {
-                    model = (T) modelClazz.newInstance();
+                    model = ModelReflector.reflectorFor(modelClazz).<T>newInstance();
                     model.setKey1(rowKey);
                     model.setKey2(dictionaryKey);
                 }
                 model.put(keyName,value);
                 modelMap.put(dictionaryKey, model);
             }
+            for ( T model : modelMap.values() ) {
+                model._clearChanges();
+            }
             conn.commit();
         } catch ( Exception e ) {
             throw new UnexpectedException(e);
@@ -0,0 +1,82 @@
+package play.modules.cassandra.providers;
+
+import com.netflix.astyanax.Serializer;
+import com.netflix.astyanax.model.AbstractColumnList;
+import com.netflix.astyanax.model.Column;
+
+import java.util.*;
+
+/**
+ * Columns of a row read in several pages, joined back into one column list. The typed
+ * accessors (getStringValue() and so on) come from AbstractColumnList; the super column
+ * methods are still abstract in ColumnList and only rejected here.
+ */
+class PagedColumnList<C> extends AbstractColumnList<C> {
+    private final List<Column<C>> _columns = new ArrayList<Column<C>>();
+    private Map<C, Column<C>> _byName = null;
+
+    void addAll(Iterable<Column<C>> page) {
+        for ( Column<C> column : page ) {
+            _columns.add(column);
+        }
+        _byName = null;
+    }
+
+    @Override
+    public Collection<C> getColumnNames() {
+        List<C> names = new ArrayList<C>(_columns.size());
+        for ( Column<C> column : _columns ) {
+            names.add(column.getName());
+        }
+        return names;
+    }
+
+    @Override
+    public Column<C> getColumnByName(C columnName) {
+        if ( null == _byName ) {
+            _byName = new HashMap<C, Column<C>>();
+            for ( Column<C> column : _columns ) {
+                _byName.put(column.getName(), column);
+            }
+        }
+        return _byName.get(columnName);
+    }
+
+    @Override
+    public Column<C> getColumnByIndex(int idx) {
+        return _columns.get(idx);
+    }
+
+    @Deprecated
+    @Override
+    public <C2> Column<C2> getSuperColumn(C columnName, Serializer<C2> colSer) {
+        throw new UnsupportedOperationException("Super columns are not paged");
+    }
+
+    @Deprecated
+    @Override
+    public <C2> Column<C2> getSuperColumn(int idx, Serializer<C2> colSer) {
+        throw new UnsupportedOperationException("Super columns are not paged");
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return _columns.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return _columns.size();
+    }
+
+    @Deprecated
+    @Override
+    public boolean isSuperColumn() {
+        return false;
+    }
+
+    @Override
+    public Iterator<Column<C>> iterator() {
+        return Collections.unmodifiableList(_columns).iterator();
+    }
+}
@@ -0,0 +1,427 @@
+package play.modules.cassandra.providers;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
+import com.netflix.astyanax.query.RowSliceQuery;
+import com.netflix.astyanax.util.RangeBuilder;
+import play.Play;
+import play.exceptions.DatabaseException;
+import play.modules.cassandra.CassandraLogger;
+import play.modules.cassandra.CountListener;
+import play.modules.cassandra.CountResult;
+import play.modules.cassandra.ModelSpliterator;
+import play.modules.cassandra.ModelVisitor;
+import play.modules.cassandra.RowVisitor;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a {@link RowVisitor} over every non-empty row of a column family.
+ *
+ * The ring is split into token ranges (see TokenRanges) which are scanned in parallel on a
+ * pool of cassandra.scan.threads threads shared by all scans, and on the calling thread.
+ * The caller takes the ranges no scan thread has started, so a scan started from a visitor,
+ * or while every scan thread is busy with other scans, completes instead of waiting for a
+ * thread which never frees up. Each range is read one page at a time and every page is
+ * visited on the thread which read it. A page read failing with a connection error
+ * is retried cassandra.scan.retries times from the last key of the previous page; any other
+ * failure, or a page still failing, stops the scan.
+ *
+ * When the ring can not be split the rows are paged through by key on the calling thread.
+ */
+public class ScanEngine {
+    private static final long RETRY_DELAY = 250;
+    private static ExecutorService _executor = null;
+
+    private final Keyspace _keyspace;
+
+    public ScanEngine(Keyspace keyspace) {
+        _keyspace = keyspace;
+    }
+
+    /**
+     * @param cf Column family being scanned
+     * @param columnLimit Columns read per row; 0 to read every column
+     * @param timeBudget Milliseconds after which the scan stops; 0 for no limit
+     * @param visitor Receives the non-empty rows, one page at a time
+     * @param listener Notified after every page; may be null
+     * @return Rows visited. When the scan is incomplete the estimate extrapolates them to the whole ring
+     */
+    public CountResult scan(ColumnFamily<String, String> cf, int columnLimit, long timeBudget, RowVisitor visitor, CountListener listener) {
+        long started = System.currentTimeMillis();
+        long deadline = timeBudget > 0 ? started + timeBudget : Long.MAX_VALUE;
+
+        List<TokenRanges.Range> ranges = TokenRanges.split(_keyspace, threads());
+        if ( null == ranges ) {
+            Scan scan = new Scan(cf, columnLimit, deadline, visitor, listener, 1);
+            boolean complete;
+            try {
+                complete = scanByKey(scan);
+            } catch (ConnectionException e) {
+                CassandraLogger.error(e, "Could not scan %s", cf.getName());
+                throw new DatabaseException("Connection exception: " + cf.getName(), e);
+            }
+            long visited = scan.visited.get();
+            return new CountResult(visited, visited, complete, System.currentTimeMillis() - started, complete ? 1 : 0, 1);
+        }
+
+        final Scan scan = new Scan(cf, columnLimit, deadline, visitor, listener, ranges.size());
+        List<Callable<BigInteger>> tasks = new ArrayList<Callable<BigInteger>>();
+        for ( final TokenRanges.Range range : ranges ) {
+            tasks.add(new Callable<BigInteger>() {
+                @Override
+                public BigInteger call() throws Exception {
+                    try {
+                        return scanRange(scan, range);
+                    } catch (Exception e) {
+                        scan.stopped = true;
+                        throw e;
+                    }
+                }
+            });
+        }
+
+        Tasks<BigInteger> run = new Tasks<BigInteger>(tasks);
+        try {
+            run.run();
+        } catch (InterruptedException e) {
+            scan.stopped = true;
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while scanning " + cf.getName(), e);
+        }
+        if ( null != run.failure ) {
+            TokenRanges.invalidate();
+            CassandraLogger.error(run.failure, "Could not scan %s", cf.getName());
+            throw new DatabaseException("Scan of " + cf.getName() + " failed", run.failure);
+        }
+        BigInteger covered = BigInteger.ZERO;
+        for ( BigInteger span : run.results ) {
+            if ( null != span ) {
+                covered = covered.add(span);
+            }
+        }
+
+        long visited = scan.visited.get();
+        int rangesDone = scan.rangesDone.get();
+        boolean complete = rangesDone == scan.rangesTotal;
+        long estimate = visited;
+        if ( !complete && covered.signum() > 0 ) {
+            estimate = BigInteger.valueOf(visited).multiply(TokenRanges.RING_SIZE).divide(covered).longValue();
+        }
+        return new CountResult(visited, estimate, complete, System.currentTimeMillis() - started, rangesDone, scan.rangesTotal);
+    }
+
+    /**
+     * Splits the spliterator into cassandra.scan.threads parts, as far as it can be split, and
+     * visits the models of every part on the scan threads and the calling thread.
+     *
+     * @param spliterator Models to visit
+     * @param visitor Receives every model, concurrently from the scan threads
+     * @return Number of models visited
+     */
+    public static <T extends play.db.Model> long visit(ModelSpliterator<T> spliterator, final ModelVisitor<? super T> visitor) {
+        List<ModelSpliterator<T>> parts = new ArrayList<ModelSpliterator<T>>();
+        parts.add(spliterator);
+        int threads = threads();
+        boolean split = true;
+        while ( parts.size() < threads && split ) {
+            split = false;
+            for ( int i = 0, n = parts.size(); i < n && parts.size() < threads; i++ ) {
+                ModelSpliterator<T> half = parts.get(i).trySplit();
+                if ( null != half ) {
+                    parts.add(half);
+                    split = true;
+                }
+            }
+        }
+
+        final AtomicLong visited = new AtomicLong();
+        final AtomicBoolean stopped = new AtomicBoolean();
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for ( final ModelSpliterator<T> part : parts ) {
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    try {
+                        while ( !stopped.get() && part.hasNext() ) {
+                            visited.incrementAndGet();
+                            if ( !visitor.visit(part.next()) ) {
+                                stopped.set(true);
+                            }
+                        }
+                        return null;
+                    } catch (RuntimeException e) {
+                        stopped.set(true);
+                        throw e;
+                    }
+                }
+            });
+        }
+
+        Tasks<Object> run = new Tasks<Object>(tasks);
+        try {
+            run.run();
+        } catch (InterruptedException e) {
+            stopped.set(true);
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while visiting models", e);
+        }
+        if ( null != run.failure ) {
+            CassandraLogger.error(run.failure, "Could not visit models");
+            throw new DatabaseException("Visiting models failed", run.failure);
+        }
+        return visited.get();
+    }
+
+    /**
+     * @return Number of tokens of the range which were scanned
+     */
+    private BigInteger scanRange(Scan scan, TokenRanges.Range range) throws ConnectionException {
+        int pageSize = pageSize();
+        String startToken = range.start;
+        while ( true ) {
+            if ( scan.isStopped() ) {
+                return startToken.equals(range.start) ? BigInteger.ZERO : TokenRanges.span(range.start, startToken);
+            }
+            Rows<String, String> rows = readTokenPage(scan.cf, startToken, range.end, pageSize, scan.columnLimit);
+            int returned = 0;
+            String lastKey = null;
+            List<Row<String, String>> page = new ArrayList<Row<String, String>>();
+            for ( Row<String, String> row : rows ) {
+                returned++;
+                lastKey = row.getKey();
+                // Empty rows are tombstones
+                if ( !row.getColumns().isEmpty() ) {
+                    page.add(row);
+                }
+            }
+            long visited = scan.visit(page);
+            if ( returned < pageSize || null == lastKey ) {
+                scan.notifyProgress(visited, scan.rangesDone.incrementAndGet());
+                return range.span();
+            }
+            // Start tokens are exclusive, the next page starts right after the last key
+            startToken = TokenRanges.tokenFor(lastKey);
+            if ( startToken.equals(range.end) ) {
+                scan.notifyProgress(visited, scan.rangesDone.incrementAndGet());
+                return range.span();
+            }
+            scan.notifyProgress(visited, scan.rangesDone.get());
+        }
+    }
+
+    /**
+     * @return TRUE if every row was visited
+     */
+    private boolean scanByKey(Scan scan) throws ConnectionException {
+        int pageSize = pageSize();
+        String startKey = "";
+        while ( true ) {
+            if ( scan.isStopped() ) {
+                return false;
+            }
+            // The start key is inclusive and was visited already, ask for one more row
+            int count = startKey.isEmpty() ? pageSize : pageSize + 1;
+            Rows<String, String> rows = readKeyPage(scan.cf, startKey, count, scan.columnLimit);
+            int returned = 0;
+            String lastKey = null;
+            List<Row<String, String>> page = new ArrayList<Row<String, String>>();
+            for ( Row<String, String> row : rows ) {
+                returned++;
+                lastKey = row.getKey();
+                if ( !row.getKey().equals(startKey) && !row.getColumns().isEmpty() ) {
+                    page.add(row);
+                }
+            }
+            long visited = scan.visit(page);
+            if ( returned < count || null == lastKey ) {
+                scan.notifyProgress(visited, 1);
+                return !scan.stopped;
+            }
+            scan.notifyProgress(visited, 0);
+            startKey = lastKey;
+        }
+    }
+
+    /**
+     * Reads count rows of the token range (startToken, endToken], retrying connection errors
+     *
+     * @param columnLimit Columns read per row; 0 to read every column
+     */
+    Rows<String, String> readTokenPage(ColumnFamily<String, String> cf, String startToken, String endToken, int count, int columnLimit) throws ConnectionException {
+        RowSliceQuery<String, String> query = _keyspace.prepareQuery(cf).getKeyRange(null, null, startToken, endToken, count);
+        if ( columnLimit > 0 ) {
+            query = query.withColumnRange(new RangeBuilder().setLimit(columnLimit).build());
+        }
+        return read(query, String.format("%s (%s, %s]", cf.getName(), startToken, endToken));
+    }
+
+    /**
+     * Reads count rows starting at startKey, inclusive, in key order, retrying connection errors
+     *
+     * @param columnLimit Columns read per row; 0 to read every column
+     */
+    Rows<String, String> readKeyPage(ColumnFamily<String, String> cf, String startKey, int count, int columnLimit) throws ConnectionException {
+        RowSliceQuery<String, String> query = _keyspace.prepareQuery(cf).getKeyRange(startKey, "", null, null, count);
+        if ( columnLimit > 0 ) {
+            query = query.withColumnRange(new RangeBuilder().setLimit(columnLimit).build());
+        }
+        return read(query, cf.getName() + " from key " + startKey);
+    }
+
+    private static Rows<String, String> read(RowSliceQuery<String, String> query, String what) throws ConnectionException {
+        int retries = retries();
+        for ( int attempt = 1; ; attempt++ ) {
+            try {
+                return query.execute().getResult();
+            } catch (ConnectionException e) {
+                if ( attempt > retries ) {
+                    throw e;
+                }
+                CassandraLogger.warn("Retrying page of %s after failure %d of %d: %s", what, attempt, retries, e.getMessage());
+                try {
+                    Thread.sleep(RETRY_DELAY * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    static int pageSize() {
+        return Math.max(1, Integer.parseInt(Play.configuration.getProperty("cassandra.scan.pagesize", "100")));
+    }
+
+    static int threads() {
+        return Math.max(1, Integer.parseInt(Play.configuration.getProperty("cassandra.scan.threads", "4")));
+    }
+
+    static int retries() {
+        return Math.max(0, Integer.parseInt(Play.configuration.getProperty("cassandra.scan.retries", "3")));
+    }
+
+    private static synchronized ExecutorService executor() {
+        if ( null == _executor ) {
+            _executor = Executors.newFixedThreadPool(threads(), new ThreadFactoryBuilder()
+                    .setNameFormat("cassandra-scan-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return _executor;
+    }
+
+    /**
+     * Tasks of one scan, run by the scan threads and the calling thread. Every thread takes
+     * tasks not started yet until none is left, then the caller waits for the tasks started
+     * by scan threads. Tasks waiting in a queue are never waited for, so the caller can not
+     * block on a scan thread busy with the visitor which started this scan.
+     */
+    private static class Tasks<V> {
+        private final List<Callable<V>> tasks;
+        private final ConcurrentLinkedQueue<Integer> pending = new ConcurrentLinkedQueue<Integer>();
+        private final CountDownLatch done;
+        final List<V> results;
+        volatile Throwable failure = null;
+
+        Tasks(List<Callable<V>> tasks) {
+            this.tasks = tasks;
+            this.done = new CountDownLatch(tasks.size());
+            this.results = new ArrayList<V>(Collections.<V>nCopies(tasks.size(), null));
+            for ( int i = 0; i < tasks.size(); i++ ) {
+                pending.add(i);
+            }
+        }
+
+        void run() throws InterruptedException {
+            int helpers = Math.min(threads(), tasks.size() - 1);
+            for ( int i = 0; i < helpers; i++ ) {
+                executor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain();
+                    }
+                });
+            }
+            drain();
+            done.await();
+        }
+
+        private void drain() {
+            Integer index;
+            while ( null != (index = pending.poll()) ) {
+                try {
+                    V result = tasks.get(index).call();
+                    synchronized (results) {
+                        results.set(index, result);
+                    }
+                } catch (Throwable e) {
+                    synchronized (this) {
+                        if ( null == failure ) {
+                            failure = e;
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+    }
+
+    /**
+     * State shared by the ranges of one scan
+     */
+    private static class Scan {
+        final ColumnFamily<String, String> cf;
+        final int columnLimit;
+        final long deadline;
+        final RowVisitor visitor;
+        final CountListener listener;
+        final int rangesTotal;
+        final AtomicLong visited = new AtomicLong();
+        final AtomicInteger rangesDone = new AtomicInteger();
+        volatile boolean stopped = false;
+
+        Scan(ColumnFamily<String, String> cf, int columnLimit, long deadline, RowVisitor visitor, CountListener listener, int rangesTotal) {
+            this.cf = cf;
+            this.columnLimit = columnLimit;
+            this.deadline = deadline;
+            this.visitor = visitor;
+            this.listener = listener;
+            this.rangesTotal = rangesTotal;
+        }
+
+        boolean isStopped() {
+            return stopped || System.currentTimeMillis() > deadline;
+        }
+
+        /**
+         * @return Rows visited so far by the scan
+         */
+        long visit(List<Row<String, String>> page) throws ConnectionException {
+            if ( !page.isEmpty() && !visitor.visit(page) ) {
+                stopped = true;
+            }
+            return visited.addAndGet(page.size());
+        }
+
+        void notifyProgress(long visited, int done) {
+            if ( null != listener ) {
+                synchronized (listener) {
+                    listener.progress(visited, done, rangesTotal);
+                }
+            }
+        }
+    }
+}
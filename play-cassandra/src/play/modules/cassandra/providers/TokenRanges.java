@@ -0,0 +1,158 @@
+package play.modules.cassandra.providers;
+
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.connectionpool.TokenRange;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import play.Play;
+import play.modules.cassandra.CassandraLogger;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits the ring into token ranges which can be scanned independently.
+ *
+ * Tokens are computed client side, which requires knowing the partitioner of the cluster
+ * (cassandra.partitioner). Only RandomPartitioner, the Cassandra 1.1 default, is supported;
+ * for other partitioners {@link #split(Keyspace, int)} returns null and callers scan the
+ * column family by key instead.
+ *
+ * The ring described by the cluster is kept for cassandra.scan.ringcache milliseconds, and
+ * described again as soon as a scan fails.
+ */
+class TokenRanges {
+    static final BigInteger RING_SIZE = BigInteger.valueOf(2).pow(127);
+
+    private static Keyspace _ringKeyspace = null;
+    private static List<TokenRange> _ring = null;
+    private static long _ringExpires = 0;
+
+    /**
+     * Token range (start, end] - the start token is exclusive, as in Cassandra key ranges
+     */
+    static class Range {
+        final String start;
+        final String end;
+
+        Range(String start, String end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return Number of tokens in the range
+         */
+        BigInteger span() {
+            return TokenRanges.span(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("(%s, %s]", start, end);
+        }
+    }
+
+    static boolean isSupported() {
+        String partitioner = Play.configuration.getProperty("cassandra.partitioner", "RandomPartitioner");
+        return partitioner.endsWith("RandomPartitioner");
+    }
+
+    /**
+     * @param key Row key
+     * @return Token of the key under RandomPartitioner
+     */
+    static String tokenFor(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            return new BigInteger(digest.digest(key.getBytes("UTF-8"))).abs().toString();
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException(e);
+        } catch ( UnsupportedEncodingException e ) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return Number of tokens in (start, end]; the whole ring when start equals end
+     */
+    static BigInteger span(String start, String end) {
+        BigInteger span = new BigInteger(end).subtract(new BigInteger(start)).mod(RING_SIZE);
+        return span.signum() == 0 ? RING_SIZE : span;
+    }
+
+    /**
+     * @return Token halfway through (start, end]; null if the range has less than two tokens
+     */
+    static String midpoint(String start, String end) {
+        BigInteger half = span(start, end).shiftRight(1);
+        if ( half.signum() == 0 ) {
+            return null;
+        }
+        return new BigInteger(start).add(half).mod(RING_SIZE).toString();
+    }
+
+    /**
+     * Splits the ranges owned by the nodes of the ring so that there are at least minRanges of them
+     *
+     * @param keyspace Keyspace being scanned
+     * @param minRanges Minimum number of ranges wanted
+     * @return Ranges covering the whole ring; null if the ring can not be split
+     */
+    static List<Range> split(Keyspace keyspace, int minRanges) {
+        if ( !isSupported() ) {
+            return null;
+        }
+        List<TokenRange> ring;
+        try {
+            ring = describeRing(keyspace);
+        } catch ( ConnectionException e ) {
+            CassandraLogger.warn("Unable to describe the ring, scanning by key: %s", e.getMessage());
+            return null;
+        }
+        if ( null == ring || ring.isEmpty() ) {
+            return null;
+        }
+        int splits = Math.max(1, (minRanges + ring.size() - 1) / ring.size());
+        List<Range> ranges = new ArrayList<Range>();
+        try {
+            for ( TokenRange tokenRange : ring ) {
+                BigInteger start = new BigInteger(tokenRange.getStartToken());
+                BigInteger step = span(tokenRange.getStartToken(), tokenRange.getEndToken()).divide(BigInteger.valueOf(splits));
+                String splitStart = tokenRange.getStartToken();
+                for ( int i = 1; i < splits && step.signum() > 0; i++ ) {
+                    String splitEnd = start.add(step.multiply(BigInteger.valueOf(i))).mod(RING_SIZE).toString();
+                    ranges.add(new Range(splitStart, splitEnd));
+                    splitStart = splitEnd;
+                }
+                ranges.add(new Range(splitStart, tokenRange.getEndToken()));
+            }
+        } catch ( NumberFormatException e ) {
+            CassandraLogger.warn("Ring tokens are not RandomPartitioner tokens, scanning by key");
+            return null;
+        }
+        Collections.shuffle(ranges);
+        return ranges;
+    }
+
+    private static synchronized List<TokenRange> describeRing(Keyspace keyspace) throws ConnectionException {
+        long now = System.currentTimeMillis();
+        if ( keyspace != _ringKeyspace || null == _ring || now >= _ringExpires ) {
+            _ring = keyspace.describeRing();
+            _ringKeyspace = keyspace;
+            _ringExpires = now + Long.parseLong(Play.configuration.getProperty("cassandra.scan.ringcache", "60000"));
+        }
+        return _ring;
+    }
+
+    /**
+     * Describes the ring again on the next split, the ranges it gave may be outdated
+     */
+    static synchronized void invalidate() {
+        _ring = null;
+    }
+}